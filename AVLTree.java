@@ -1,18 +1,53 @@
 
+import java.lang.management.ManagementFactory;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 
 import java.util.Iterator;
-
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 /**@author mariol96
  * Class of the AVL tree. An AVL tree is a binary search tree that implements the rotations to make the tree balanced.
  *  */
 public class AVLTree<E extends Comparable<E>> {
 
-	public class Node<E> {
+	/**
+	 * Node of the tree. It is a static class, so the node doesn't keep a
+	 * reference to its tree, and the height is kept in a byte (the height of
+	 * an AVL tree with 2^31 elements is at most 45). It keeps only what the
+	 * balancing needs: the trees that count the elements, aggregate them or
+	 * associate values to them create the subclasses below with creaNodo().
+	 */
+	public static class Node<E> {
 		/** Value inside the node */
 		private E data;
 		/** Node from which the aiming node is generated */
@@ -22,7 +57,7 @@ public class AVLTree<E extends Comparable<E>> {
 		 * Height of the node, in particular it refers to the height of the
 		 * tree(or subtree) with the node as root.
 		 */
-		private int height;
+		private byte height;
 		/** Left subtree */
 		private Node<E> leftChild;
 		/** Right subtree */
@@ -56,6 +91,101 @@ public class AVLTree<E extends Comparable<E>> {
 
 	}
 
+	/**
+	 * Node that counts the elements of its subtree, used by the sets, the
+	 * multisets and the maps for the ranks and the range counts.
+	 */
+	private static class SizeNode<E> extends Node<E> {
+		/**
+		 * Number of occurrences of the value, greater than 1 only in a
+		 * multiset, 0 if the node has been removed with the lazy deletion
+		 * (tombstone).
+		 */
+		private int count = 1;
+		/**
+		 * Number of the elements of the subtree with the node as root, the
+		 * occurrences included.
+		 */
+		private int size = 1;
+
+		private SizeNode(E value) {
+			super(value);
+		}
+	}
+
+	/** Node that keeps the aggregate of its subtree, for the trees with a monoid. */
+	private static final class AggregateNode<E> extends SizeNode<E> {
+		/** Aggregate of the elements of the subtree with the node as root. */
+		private Object aggregate;
+
+		private AggregateNode(E value) {
+			super(value);
+		}
+	}
+
+	/**
+	 * Node of a map: it keeps the value associated to its key and it is the
+	 * entry of the map itself.
+	 */
+	private static final class MapNode<E> extends SizeNode<E> implements Map.Entry<E, Object> {
+		/** Value associated to the element. */
+		private Object value;
+
+		private MapNode(E value) {
+			super(value);
+		}
+
+		/** Returns the element of the node, that is the key in a map. */
+		@Override
+		public E getKey() {
+			return ((Node<E>) this).data;
+		}
+
+		/** Returns the value associated to the element in a map. */
+		@Override
+		public Object getValue() {
+			return value;
+		}
+
+		/**
+		 * Replaces the value associated to the element in a map.
+		 * 
+		 * @param value
+		 *            the new value.
+		 * @return the old value.
+		 */
+		@Override
+		public Object setValue(Object value) {
+			Object old = this.value;
+			this.value = value;
+			return old;
+		}
+
+		/**
+		 * Compares the node with an entry of a map: they are equal if they
+		 * have equal keys and values.
+		 */
+		@Override
+		public boolean equals(Object o) {
+			if (o == this)
+				return true;
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return ((Node<E>) this).data.equals(e.getKey()) && Objects.equals(value, e.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return ((Node<E>) this).data.hashCode() ^ Objects.hashCode(value);
+		}
+
+		@Override
+		public String toString() {
+			return ((Node<E>) this).data + "=" + value;
+		}
+	}
+
 	/**
 	 * String representation of the tree.
 	 * 
@@ -70,6 +200,70 @@ public class AVLTree<E extends Comparable<E>> {
 	/** Root of the tree */
 	private Node<E> root;
 
+	/**
+	 * Monoid whose aggregate is kept in every node, null if the nodes carry
+	 * only the number of elements.
+	 */
+	private Monoid<E, Object> monoid;
+
+	/**
+	 * True if the tree is a multiset: the insertion of an element already
+	 * present increments its number of occurrences.
+	 */
+	private boolean multiset;
+
+	/**
+	 * True if the tree is used by a map: the insertion of an element already
+	 * present returns its node instead of failing.
+	 */
+	private boolean upsert;
+
+	/** Node found or created by the last insertion in a map. */
+	private Node<E> inserito;
+
+	/** Value of the node removed by the last extraction. */
+	private Object valoreEstratto;
+
+	/** Node removed by the last extraction, null if not found. */
+	private Node<E> estratto;
+
+	/** Node with the lowest element, null if the tree is empty. */
+	private Node<E> minimo;
+
+	/** Node with the highest element, null if the tree is empty. */
+	private Node<E> massimo;
+
+	/** Number of the nodes removed with the lazy deletion (tombstones). */
+	private int tombstones;
+
+	/** Ordering of the elements, null for the natural ordering. */
+	private Comparator<? super E> comparatore;
+
+	/**
+	 * How compara() compares the elements: one of the ORDINE constants. With
+	 * the natural ordering it is chosen at the first comparison, from the
+	 * class of the elements.
+	 */
+	private int ordine;
+
+	/** The ordering has not been chosen yet. */
+	private static final int ORDINE_DA_RILEVARE = 0;
+	/** Natural ordering of generic elements, through compareTo(). */
+	private static final int ORDINE_NATURALE = 1;
+	/** Natural ordering of Integer elements. */
+	private static final int ORDINE_INTEGER = 2;
+	/** Natural ordering of Long elements. */
+	private static final int ORDINE_LONG = 3;
+	/** Natural ordering of String elements. */
+	private static final int ORDINE_STRING = 4;
+	/** Ordering of the comparator of the tree. */
+	private static final int ORDINE_COMPARATORE = 5;
+
+	/** Operation counters, null if the metrics are not enabled. */
+	private AVLTreeMetrics metrics;
+	/** Name under which the metrics are registered on JMX. */
+	private ObjectName metricsName;
+
 	/** Creates an empty tree */
 	public AVLTree() {
 		root = null;
@@ -86,11 +280,14 @@ public class AVLTree<E extends Comparable<E>> {
 	 *            element of the right child
 	 */
 	public AVLTree(E el, E left, E right) {
-		root = new Node<E>(el);
-		root.leftChild = new Node<E>(left);
-		root.rightChild = new Node<E>(right);
+		root = creaNodo(el);
+		root.leftChild = creaNodo(left);
+		root.rightChild = creaNodo(right);
 		root.leftChild.parent = root;
 		root.rightChild.parent = root;
+		root.height = 1;
+		aggiorna(root);
+		estremi();
 
 	}
 
@@ -101,7 +298,149 @@ public class AVLTree<E extends Comparable<E>> {
 	 *            - Value of the tree's root
 	 */
 	public AVLTree(E value) {
-		root = new Node<E>(value);
+		root = creaNodo(value);
+		estremi();
+	}
+
+	/**
+	 * Creates an empty tree ordered by the specified comparator instead of the
+	 * natural ordering of the elements. All the insertions, searches,
+	 * removals and ranges of the tree use the comparator.
+	 * 
+	 * @param comparator
+	 *            the ordering of the elements, null for the natural ordering.
+	 */
+	public AVLTree(Comparator<? super E> comparator) {
+		this.comparatore = comparator;
+		this.ordine = comparator == null ? ORDINE_DA_RILEVARE : ORDINE_COMPARATORE;
+	}
+
+	/**
+	 * Creates an empty tree whose nodes carry the aggregate of their subtree
+	 * computed with the specified monoid, so that rangeAggregate() can be
+	 * answered without visiting the elements of the range.
+	 * 
+	 * @param monoid
+	 *            the monoid used to aggregate the elements.
+	 */
+	@SuppressWarnings("unchecked")
+	public AVLTree(Monoid<? super E, ?> monoid) {
+		if (monoid == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		this.monoid = (Monoid<E, Object>) monoid;
+	}
+
+	/**
+	 * A monoid used to aggregate the elements of a range: an associative
+	 * operation (combine) with an identity element. The elements are combined
+	 * in ascending order, so the operation doesn't need to be commutative.
+	 * 
+	 * @param <V>
+	 *            type of the elements.
+	 * @param <A>
+	 *            type of the aggregate.
+	 */
+	public interface Monoid<V, A> {
+
+		/** Returns the aggregate of no elements. */
+		A identity();
+
+		/**
+		 * Returns the aggregate of a single element.
+		 * 
+		 * @param el
+		 *            the element.
+		 * @return the aggregate of el.
+		 */
+		A lift(V el);
+
+		/**
+		 * Combines two aggregates, a of the lower elements and b of the
+		 * higher ones.
+		 * 
+		 * @param a
+		 *            aggregate of the lower elements.
+		 * @param b
+		 *            aggregate of the higher elements.
+		 * @return the aggregate of all the elements.
+		 */
+		A combine(A a, A b);
+
+		/** Returns the monoid of the sum of numbers, as long. */
+		static <V extends Number> Monoid<V, Long> longSum() {
+			return new Monoid<V, Long>() {
+				public Long identity() {
+					return 0L;
+				}
+
+				public Long lift(V el) {
+					return el.longValue();
+				}
+
+				public Long combine(Long a, Long b) {
+					return a + b;
+				}
+			};
+		}
+
+		/** Returns the monoid of the sum of numbers, as double. */
+		static <V extends Number> Monoid<V, Double> doubleSum() {
+			return new Monoid<V, Double>() {
+				public Double identity() {
+					return 0.0;
+				}
+
+				public Double lift(V el) {
+					return el.doubleValue();
+				}
+
+				public Double combine(Double a, Double b) {
+					return a + b;
+				}
+			};
+		}
+
+		/** Returns the monoid of the minimum, null if there aren't elements. */
+		static <V extends Comparable<V>> Monoid<V, V> min() {
+			return new Monoid<V, V>() {
+				public V identity() {
+					return null;
+				}
+
+				public V lift(V el) {
+					return el;
+				}
+
+				public V combine(V a, V b) {
+					if (a == null)
+						return b;
+					if (b == null)
+						return a;
+					return a.compareTo(b) <= 0 ? a : b;
+				}
+			};
+		}
+
+		/** Returns the monoid of the maximum, null if there aren't elements. */
+		static <V extends Comparable<V>> Monoid<V, V> max() {
+			return new Monoid<V, V>() {
+				public V identity() {
+					return null;
+				}
+
+				public V lift(V el) {
+					return el;
+				}
+
+				public V combine(V a, V b) {
+					if (a == null)
+						return b;
+					if (b == null)
+						return a;
+					return a.compareTo(b) >= 0 ? a : b;
+				}
+			};
+		}
 	}
 
 	/**
@@ -109,31 +448,173 @@ public class AVLTree<E extends Comparable<E>> {
 	 */
 	public void clear() {
 		root = null;
+		minimo = null;
+		massimo = null;
+		tombstones = 0;
 	}
 
 	/**
-	 * It updates the parents of the node and the other node beneath the node
-	 * 
-	 * @param node
-	 *            - node from which the update starts.
-	 * @return the node with the updated parent.
+	 * Enables the operation counters of this tree and registers them on the
+	 * platform MBean server as AVLTree:type=AVLTree,name=(name), so that they
+	 * can be read with any JMX client. The counters start from zero, while
+	 * the size is read from the tree, so it includes the elements already
+	 * present.
 	 * 
+	 * @param name
+	 *            the name of the tree, it must be unique among the trees with
+	 *            enabled metrics.
+	 * @return the counters of this tree.
+	 * @throws IllegalStateException
+	 *             if the metrics are already enabled or the name is already
+	 *             used.
 	 */
-	private Node<E> setPadre(Node<E> node) {
+	public AVLTreeMetrics enableMetrics(String name) {
+		if (name == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		if (metrics != null)
+			throw new IllegalStateException("Error: the metrics are already enabled");
+		AVLTreeMetrics m = new AVLTreeMetrics(this);
+		try {
+			ObjectName objectName = new ObjectName("AVLTree:type=AVLTree,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(m, objectName);
+			metricsName = objectName;
+		} catch (JMException e) {
+			throw new IllegalStateException("Error: the metrics can't be registered with the name " + name, e);
+		}
+		metrics = m;
+		return m;
+	}
 
-		if (node.leftChild != null) {
+	/**
+	 * Disables the operation counters of this tree and removes them from
+	 * the platform MBean server.
+	 */
+	public void disableMetrics() {
+		if (metrics == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+		} catch (JMException e) {
+			// The MBean has already been removed by someone else.
+		}
+		metrics = null;
+		metricsName = null;
+	}
 
-			node.leftChild.parent = node;
+	/**
+	 * Returns the operation counters of this tree.
+	 * 
+	 * @return the counters, null if the metrics are not enabled.
+	 */
+	public AVLTreeMetrics getMetrics() {
+		return metrics;
+	}
 
-			setPadre(node.leftChild);
+	/**
+	 * Compares two elements; all the comparisons of the tree go through this
+	 * method, so that they can be counted. The Integer, Long and String
+	 * elements in natural ordering are compared with a direct call, that the
+	 * JIT can inline, instead of the compareTo() of an unknown class.
+	 * 
+	 * @param a
+	 *            the first element.
+	 * @param b
+	 *            the second element.
+	 * @return a negative number, zero or a positive number if a is less than,
+	 *         equal to or greater than b.
+	 */
+	private int compara(E a, E b) {
+		if (metrics != null)
+			metrics.comparisons.increment();
+		switch (ordine) {
+		case ORDINE_INTEGER:
+			return Integer.compare((Integer) a, (Integer) b);
+		case ORDINE_LONG:
+			return Long.compare((Long) a, (Long) b);
+		case ORDINE_STRING:
+			return ((String) a).compareTo((String) b);
+		case ORDINE_COMPARATORE:
+			return comparatore.compare(a, b);
+		case ORDINE_DA_RILEVARE:
+			ordine = rilevaOrdine(a);
+			return a.compareTo(b);
+		default:
+			return a.compareTo(b);
 		}
-		if (node.rightChild != null) {
+	}
 
-			node.rightChild.parent = node;
+	/**
+	 * Compares an element with the element of a node. The descents of the
+	 * tree (search, insertion, removal and ranges) compare through this
+	 * method, so a subclass whose nodes keep more information about their
+	 * element can decide the comparison without reading it.
+	 * 
+	 * @param el
+	 *            the element searched.
+	 * @param node
+	 *            the node reached by the descent.
+	 * @return a negative number, zero or a positive number if el is less
+	 *         than, equal to or greater than the element of node.
+	 */
+	int confronta(E el, Node<E> node) {
+		return compara(el, node.data);
+	}
 
-			setPadre(node.rightChild);
-		}
+	/**
+	 * Creates the node of an element inserted in the tree; a subclass can
+	 * return a node that keeps more information about the element. A plain
+	 * tree uses the smallest node, or a node with the aggregate if it has a
+	 * monoid.
+	 * 
+	 * @param el
+	 *            the element inserted.
+	 * @return the new node.
+	 */
+	Node<E> creaNodo(E el) {
+		return monoid != null ? new AggregateNode<E>(el) : new Node<E>(el);
+	}
+
+	/**
+	 * Chooses how the elements in natural ordering are compared.
+	 * 
+	 * @param el
+	 *            an element of the tree.
+	 * @return one of the ORDINE constants.
+	 */
+	private static int rilevaOrdine(Object el) {
+		Class<?> c = el.getClass();
+		if (c == Integer.class)
+			return ORDINE_INTEGER;
+		if (c == Long.class)
+			return ORDINE_LONG;
+		if (c == String.class)
+			return ORDINE_STRING;
+		return ORDINE_NATURALE;
+	}
+
+	/**
+	 * Returns the comparator that orders the elements of the tree.
+	 * 
+	 * @return the comparator, null if the natural ordering is used.
+	 */
+	public Comparator<? super E> getComparator() {
+		return comparatore;
+	}
 
+	/**
+	 * It updates the parent of the children of the node. The nodes beneath
+	 * the children already have the right parent.
+	 * 
+	 * @param node
+	 *            - node whose children are updated.
+	 * @return the node.
+	 * 
+	 */
+	private Node<E> setPadre(Node<E> node) {
+		if (node.leftChild != null)
+			node.leftChild.parent = node;
+		if (node.rightChild != null)
+			node.rightChild.parent = node;
 		return node;
 	}
 
@@ -202,106 +683,422 @@ public class AVLTree<E extends Comparable<E>> {
 	 * @return the height of the subtree(or the tree) with node as root.
 	 */
 	private int getHeight(Node<E> node) {
-		// If there isn't any element in the node
-		if (node == null) {
-			return -1;
-		} else {
-			/*
-			 * The height of the subtree(or the tree in case node is the root of
-			 * the tree itself) is calculated taking the max height between the
-			 * right and the left side of node.
-			 */
-			return 1 + Math.max(getHeight(node.leftChild), getHeight(node.rightChild));
-		}
-
+		/*
+		 * The height is kept in the node and updated after every insertion,
+		 * removal and rotation, so it is not calculated again.
+		 */
+		return node == null ? -1 : node.height;
 	}
 
 	/**
-	 * Returns the height of the tree.
+	 * Returns the number of elements of the subtree with node as root.
 	 * 
-	 * @return the height of the tree.
+	 * @param node
+	 *            the root of the subtree.
+	 * @return the number of elements, 0 if node is null.
 	 */
-	public int height() {
-
-		return getHeight(root);
+	private int dimensione(Node<E> node) {
+		if (node == null)
+			return 0;
+		if (node instanceof SizeNode)
+			return ((SizeNode<E>) node).size;
+		// A plain tree doesn't keep the sizes of the subtrees: they are counted.
+		return 1 + dimensione(node.leftChild) + dimensione(node.rightChild);
 	}
 
 	/**
-	 * Checks if the tree is empty or not.
+	 * Returns the number of occurrences of the element of a node.
 	 * 
-	 * @return true if the tree is empty,false if it is not.
+	 * @param node
+	 *            a node of the tree.
+	 * @return the occurrences, 0 for a tombstone, always 1 if the node
+	 *         doesn't count them.
 	 */
-	public boolean isEmpty() {
-		return root == null;
+	private static int occorrenze(Node<?> node) {
+		return node instanceof SizeNode ? ((SizeNode<?>) node).count : 1;
 	}
 
 	/**
-	 * Returns the minimum value of the tree.
-	 * 
-	 * @return the minimum value of the tree
-	 * @exception NullPointerException
-	 *                if the tree is empty
+	 * Returns the number of elements of the tree, for the metrics. It is
+	 * computed only when the metrics are read: it is O(1) for the sets, the
+	 * multisets and the maps, whose nodes keep the sizes of the subtrees, and
+	 * O(n) for a plain tree.
 	 */
-	public E minimum() {
-
-		if (root == null)
-			throw new NullPointerException("Error: no elements are present.");
-		// Starts from the tree's root
-		Node<E> node = root;
-		// While the left child is present it goes down to the left.
-		while (node.leftChild != null) {
-			node = node.leftChild;
-		}
-		return node.data;
+	int elementi() {
+		return dimensione(root);
 	}
 
 	/**
-	 * Returns the minimum value compared to node, this is useful to get the
-	 * successor.
+	 * Updates the number of elements and the aggregate of a node from the
+	 * ones of its children. It has to be called every time the children of a
+	 * node change, from the bottom to the top of the tree.
 	 * 
 	 * @param node
-	 *            the node of which the minimum node has to be known.
-	 * @return the node with the minimum value.
-	 * @throws IllegalArgumentException
-	 *             if the parameter is null.
+	 *            the node to update.
 	 */
-	private Node<E> getMin(Node<E> node) {
-		if (node == null)
-			throw new IllegalArgumentException("Null elements not allowed!!!");
-		while (node.leftChild != null) {
-			node = node.leftChild;
+	private void aggiorna(Node<E> node) {
+		// The nodes of a plain tree have nothing to update.
+		if (!(node instanceof SizeNode))
+			return;
+		SizeNode<E> n = (SizeNode<E>) node;
+		n.size = n.count + dimensione(node.leftChild) + dimensione(node.rightChild);
+		if (monoid != null) {
+			Object a = aggregatoNodo(node);
+			if (node.leftChild != null)
+				a = monoid.combine(aggregato(node.leftChild), a);
+			if (node.rightChild != null)
+				a = monoid.combine(a, aggregato(node.rightChild));
+			((AggregateNode<E>) node).aggregate = a;
 		}
-
-		return node;
 	}
 
 	/**
-	 * Returns the maximum value of the tree.
+	 * Copies the elements of a subtree in an array, in order and with their
+	 * occurrences.
 	 * 
-	 * @return the maximum value of the tree.
-	 * @throws NullPointerException
-	 *             if the tree is empty.
+	 * @param node
+	 *            the root of the subtree.
+	 * @param arr
+	 *            the array to fill.
+	 * @param i
+	 *            the position of the first element of the subtree.
+	 * @return the position after the last element of the subtree.
 	 */
-	public E maximum() {
-		if (root == null)
-			throw new NullPointerException("Error: no elements are present!!!");
-		// Starts from the tree's root.
-		Node<E> node = root;
-		// While the right child is present it goes down to the right.
-		while (node.rightChild != null) {
+	private int riempi(Node<E> node, Object[] arr, int i) {
+		// The right subtree is visited by the loop instead of a recursion.
+		while (node != null) {
+			i = riempi(node.leftChild, arr, i);
+			for (int c = occorrenze(node); c > 0; c--)
+				arr[i++] = node.data;
 			node = node.rightChild;
 		}
-		return node.data;
+		return i;
+	}
+
+	/** Same as riempi(), for an array of int. */
+	private int riempiInt(Node<E> node, int[] arr, int i) {
+		while (node != null) {
+			i = riempiInt(node.leftChild, arr, i);
+			int v = ((Number) node.data).intValue();
+			for (int c = occorrenze(node); c > 0; c--)
+				arr[i++] = v;
+			node = node.rightChild;
+		}
+		return i;
+	}
+
+	/** Same as riempi(), for an array of long. */
+	private int riempiLong(Node<E> node, long[] arr, int i) {
+		while (node != null) {
+			i = riempiLong(node.leftChild, arr, i);
+			long v = ((Number) node.data).longValue();
+			for (int c = occorrenze(node); c > 0; c--)
+				arr[i++] = v;
+			node = node.rightChild;
+		}
+		return i;
 	}
 
 	/**
-	 * Searches for the specified element inside the tree.
+	 * Returns the numeric elements of the tree in an array of int, in
+	 * ascending order, with a single in-order visit.
 	 * 
-	 * @param value
-	 *            the value to search for.
-	 * @param node
-	 *            the root of the subtree in which the value is searched.
-	 * @return true if the element has been found, false otherwise.
+	 * @return a new array with the intValue() of the elements.
+	 * @throws ClassCastException
+	 *             if the elements are not numbers.
+	 */
+	public int[] toIntArray() {
+		int[] arr = new int[dimensione(root)];
+		riempiInt(root, arr, 0);
+		return arr;
+	}
+
+	/**
+	 * Returns the numeric elements of the tree in an array of long, in
+	 * ascending order, with a single in-order visit.
+	 * 
+	 * @return a new array with the longValue() of the elements.
+	 * @throws ClassCastException
+	 *             if the elements are not numbers.
+	 */
+	public long[] toLongArray() {
+		long[] arr = new long[dimensione(root)];
+		riempiLong(root, arr, 0);
+		return arr;
+	}
+
+	/**
+	 * Returns a sequential stream of the intValue() of the numeric elements,
+	 * in ascending order. The stream reads the tree while it is consumed,
+	 * without boxing and without copying the elements; the tree must not be
+	 * modified until the stream is consumed.
+	 * 
+	 * @return a stream of the elements.
+	 */
+	public IntStream intStream() {
+		PrimitiveIterator.OfInt iterator = new PrimitiveIterator.OfInt() {
+			private final NumberIterator it = new NumberIterator();
+
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			public int nextInt() {
+				return it.next().intValue();
+			}
+		};
+		return StreamSupport.intStream(Spliterators.spliterator(iterator, dimensione(root), caratteristiche()),
+				false);
+	}
+
+	/**
+	 * Returns a sequential stream of the longValue() of the numeric elements,
+	 * in ascending order. The stream reads the tree while it is consumed,
+	 * without boxing and without copying the elements; the tree must not be
+	 * modified until the stream is consumed.
+	 * 
+	 * @return a stream of the elements.
+	 */
+	public LongStream longStream() {
+		PrimitiveIterator.OfLong iterator = new PrimitiveIterator.OfLong() {
+			private final NumberIterator it = new NumberIterator();
+
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			public long nextLong() {
+				return it.next().longValue();
+			}
+		};
+		return StreamSupport.longStream(Spliterators.spliterator(iterator, dimensione(root), caratteristiche()),
+				false);
+	}
+
+	/** Returns the characteristics of the spliterators of the tree. */
+	private int caratteristiche() {
+		return Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL | (multiset ? 0 : Spliterator.DISTINCT);
+	}
+
+	/**
+	 * Iterator on the elements of the tree as numbers, in order and with
+	 * their occurrences, used by the primitive streams.
+	 */
+	private class NumberIterator {
+		/** Node of the next element. */
+		private Node<E> next = primo();
+		/** Occurrences of next already returned. */
+		private int returned;
+
+		boolean hasNext() {
+			return next != null;
+		}
+
+		Number next() {
+			if (next == null)
+				throw new NoSuchElementException();
+			Number el = (Number) next.data;
+			if (++returned == occorrenze(next)) {
+				next = successivo(next);
+				returned = 0;
+			}
+			return el;
+		}
+	}
+
+	/**
+	 * Writes the elements of the tree in a buffer, in ascending order and
+	 * with the byte order of the buffer, using a fixed width chosen by the
+	 * type of the elements: 1 byte for Byte, 2 for Short and Character, 4
+	 * for Integer and Float, 8 for Long and Double.
+	 * 
+	 * @param buffer
+	 *            the buffer the elements are written to.
+	 * @return the number of elements written.
+	 * @throws BufferOverflowException
+	 *             if the buffer doesn't have enough space; in this case
+	 *             nothing is written.
+	 * @throws IllegalArgumentException
+	 *             if the buffer is null or the elements are not of one of
+	 *             the types above.
+	 */
+	public int writeTo(ByteBuffer buffer) {
+		if (buffer == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		int n = dimensione(root);
+		if (n == 0)
+			return 0;
+		if (buffer.remaining() < (long) n * larghezza(root.data))
+			throw new BufferOverflowException();
+		scrivi(root, buffer);
+		return n;
+	}
+
+	/**
+	 * Returns the number of bytes written for an element.
+	 * 
+	 * @param el
+	 *            an element of the tree.
+	 * @return the width of the element.
+	 * @throws IllegalArgumentException
+	 *             if the type of the element doesn't have a fixed width.
+	 */
+	private static int larghezza(Object el) {
+		if (el instanceof Integer || el instanceof Float)
+			return 4;
+		if (el instanceof Long || el instanceof Double)
+			return 8;
+		if (el instanceof Short || el instanceof Character)
+			return 2;
+		if (el instanceof Byte)
+			return 1;
+		throw new IllegalArgumentException("Elements of type " + el.getClass().getName() + " can't be written");
+	}
+
+	/** Writes the elements of a subtree in order, like riempi(). */
+	private void scrivi(Node<E> node, ByteBuffer buffer) {
+		while (node != null) {
+			scrivi(node.leftChild, buffer);
+			for (int c = occorrenze(node); c > 0; c--)
+				scriviElemento(node.data, buffer);
+			node = node.rightChild;
+		}
+	}
+
+	/** Writes an element with the width given by larghezza(). */
+	private static void scriviElemento(Object el, ByteBuffer buffer) {
+		if (el instanceof Integer)
+			buffer.putInt((Integer) el);
+		else if (el instanceof Long)
+			buffer.putLong((Long) el);
+		else if (el instanceof Double)
+			buffer.putDouble((Double) el);
+		else if (el instanceof Float)
+			buffer.putFloat((Float) el);
+		else if (el instanceof Short)
+			buffer.putShort((Short) el);
+		else if (el instanceof Character)
+			buffer.putChar((Character) el);
+		else
+			buffer.put((Byte) el);
+	}
+
+	/**
+	 * Returns the height of the tree.
+	 * 
+	 * @return the height of the tree.
+	 */
+	public int height() {
+
+		return getHeight(root);
+	}
+
+	/**
+	 * Checks if the tree is empty or not.
+	 * 
+	 * @return true if the tree is empty,false if it is not.
+	 */
+	public boolean isEmpty() {
+		// With the lazy deletion the tree can contain only tombstones.
+		// Only the nodes that count the elements can be tombstones.
+		return root == null || (root instanceof SizeNode && ((SizeNode<E>) root).size == 0);
+	}
+
+	/**
+	 * Returns the minimum value of the tree.
+	 * 
+	 * @return the minimum value of the tree
+	 * @exception NullPointerException
+	 *                if the tree is empty
+	 */
+	public E minimum() {
+
+		if (root == null)
+			throw new NullPointerException("Error: no elements are present.");
+		// The node with the lowest element is kept by the tree.
+		Node<E> node = minimo;
+		// Skips the tombstones of the lazy deletion.
+		if (occorrenze(node) == 0 && (node = successivo(node)) == null)
+			throw new NullPointerException("Error: no elements are present.");
+		return node.data;
+	}
+
+	/**
+	 * Returns the minimum value compared to node, this is useful to get the
+	 * successor.
+	 * 
+	 * @param node
+	 *            the node of which the minimum node has to be known.
+	 * @return the node with the minimum value.
+	 * @throws IllegalArgumentException
+	 *             if the parameter is null.
+	 */
+	private Node<E> getMin(Node<E> node) {
+		if (node == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		while (node.leftChild != null) {
+			node = node.leftChild;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Returns the maximum value compared to node.
+	 * 
+	 * @param node
+	 *            the node of which the maximum node has to be known.
+	 * @return the node with the maximum value.
+	 * @throws IllegalArgumentException
+	 *             if the parameter is null.
+	 */
+	private Node<E> getMax(Node<E> node) {
+		if (node == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		while (node.rightChild != null) {
+			node = node.rightChild;
+		}
+
+		return node;
+	}
+
+	/**
+	 * Updates the nodes with the lowest and the highest element after an
+	 * insertion. A new lowest element is always linked as left child of the
+	 * previous lowest node, and the rotations of its insertion leave it there
+	 * (the same holds on the right), so the walk usually makes a single step.
+	 */
+	private void estremi() {
+		minimo = root == null ? null : getMin(minimo == null ? root : minimo);
+		massimo = root == null ? null : getMax(massimo == null ? root : massimo);
+	}
+
+	/**
+	 * Returns the maximum value of the tree.
+	 * 
+	 * @return the maximum value of the tree.
+	 * @throws NullPointerException
+	 *             if the tree is empty.
+	 */
+	public E maximum() {
+		if (root == null)
+			throw new NullPointerException("Error: no elements are present!!!");
+		// The node with the highest element is kept by the tree.
+		Node<E> node = massimo;
+		// Skips the tombstones of the lazy deletion.
+		if (occorrenze(node) == 0 && (node = precedente(node)) == null)
+			throw new NullPointerException("Error: no elements are present!!!");
+		return node.data;
+	}
+
+	/**
+	 * Searches for the specified element inside the tree.
+	 * 
+	 * @param value
+	 *            the value to search for.
+	 * @param node
+	 *            the root of the subtree in which the value is searched.
+	 * @return true if the element has been found, false otherwise.
 	 */
 	private boolean ricercaEl(E value, Node<E> node) {
 		boolean found = false;
@@ -319,7 +1116,7 @@ public class AVLTree<E extends Comparable<E>> {
 		 * present). The x variable will be -1 or 1 depending on the fact that
 		 * value is less or greater than node.
 		 */
-		int x = value.compareTo(node.data);
+		int x = confronta(value, node);
 
 		if (x < 0 && node.leftChild != null) {
 			return found = ricercaEl(value, node.leftChild);
@@ -331,7 +1128,7 @@ public class AVLTree<E extends Comparable<E>> {
 		 * If the x variable is 0 it means that value and node.data coincide, so
 		 * the value searched for is found.
 		 */
-		if (x == 0) {
+		if (x == 0 && occorrenze(node) > 0) {
 
 			System.out.println("Elemento: " + value + " trovato!");
 			found = true;
@@ -344,6 +1141,8 @@ public class AVLTree<E extends Comparable<E>> {
 		else {
 			System.out.println("Elemento: " + value + " non trovato!");
 			found = false;
+			if (metrics != null)
+				metrics.misses.increment();
 		}
 		return found;
 
@@ -374,7 +1173,8 @@ public class AVLTree<E extends Comparable<E>> {
 	 * 
 	 * @param el
 	 *            the element of which the successor has to be known.
-	 * @return the node that contains the successor of el.
+	 * @return the node that contains the successor of el, null if el is the
+	 *         last element or it is not present.
 	 * @throws IllegalArgumentException
 	 *             if the parameter is null.
 	 * @throws NullPointerException
@@ -385,152 +1185,672 @@ public class AVLTree<E extends Comparable<E>> {
 			throw new IllegalArgumentException("Null elements not allowed!!!");
 		if (root == null)
 			throw new NullPointerException("No Elements are present!!!");
-		return getSuccessor(el, root);
+		Node<E> node = trovaNodo(el);
+		return node == null ? null : successivo(node);
 	}
 
 	/**
-	 * It searches for the successor.
+	 * Searches for the node that contains the specified element, without
+	 * printing anything. It is package-private for the benchmarks, which
+	 * can't measure search() and contains() because they print.
 	 * 
 	 * @param el
-	 *            the element of which the successor has to be known.
-	 * @param node
-	 *            the root of a subtree
-	 * @return the successor of the specified element.
+	 *            the element to search for.
+	 * @return the node with the element, null if it is not present or it is
+	 *         a tombstone.
 	 */
-	private Node<E> getSuccessor(E el, Node<E> node) {
-
-		if (el == null)
-			throw new IllegalArgumentException("Null elements not allowed!!!");
-		// it initializes a node that will take the value of the needed
-		// successor.
-		Node<E> succ = new Node<E>(el);
-
-		/*
-		 * It goes to the left or to the right depending on the element it
-		 * searches for; if el is greater than node,it goes to the right(x is 1)
-		 * and if el is less than node it goes to the left(x is -1)
-		 * 
-		 */
-		int x = el.compareTo(node.data);
-
-		if (x < 0) {
-			return getSuccessor(el, node.leftChild);
-		}
-		if (x > 0) {
-			return getSuccessor(el, node.rightChild);
-		}
-		// it founds the element of which it wants to know the successor.
-		if (x == 0) {
-			// if it wants to know the successor of the last element, the
-			// successor
-			// is null since there are no more element.
-			if (node.data == maximum()) {
-				return succ = null;
-			}
-			/*
-			 * At this point there will be at 100% the node's successor,that
-			 * coincide with the desired element. If node has a right child, its
-			 * successor will be the minimum of its right subtree...
-			 */
-			if (node.rightChild != null) {
-
-				return succ = getMin(node.rightChild);
-
-			} else {
-				/*
-				 * ...otherwise succ will assume the value of its parent,then it
-				 * creates another variable(y) that allows to compare node(the
-				 * node at which you are aiming) with succ. In other words it
-				 * compares the aiming node with its parent.
-				 */
-				succ = node.parent;
-
-				int y = node.data.compareTo(succ.data);
-				/*
-				 * if succ(the parent of the aiming node) is grater than its
-				 * child, the desired successor is succ.This kind of situation
-				 * presents itself only if it wants to know the successor of an
-				 * element that is a left child...
-				 */
-				if (y < 0)
-					return succ;
-				/*
-				 * ...if not, climbs the tree until the aiming node stops to be
-				 * a right child taking, therefore, the first parent that is a
-				 * right child. So the taken parent is an ancestor of the
-				 * specified element and so the desired element.
-				 */
-				while (succ != null && el == succ.rightChild.data) {
-
-					el = succ.data;
-					succ = succ.parent;
-					/*
-					 * There is a break to avoid the NullPointerException.
-					 */
-					if (succ.rightChild == null)
-						break;
-				}
-
-			}
+	Node<E> trovaNodo(E el) {
+		Node<E> node = root;
+		while (node != null) {
+			int x = confronta(el, node);
+			if (x == 0)
+				return occorrenze(node) > 0 ? node : null;
+			node = x < 0 ? node.leftChild : node.rightChild;
 		}
+		return null;
+	}
 
-		return succ;
+	/**
+	 * Inserts an element in a map, or finds it if it is already present, with
+	 * a single descent of the tree.
+	 * 
+	 * @param el
+	 *            the element to insert.
+	 * @return the node of the element.
+	 */
+	private Node<E> inserisciOTrova(E el) {
+		root = inserisci(el, root);
+		setPadre(root);
+		estremi();
+		Node<E> node = inserito;
+		inserito = null;
+		return node;
+	}
 
+	/** Returns the node with the lowest element, null if the tree is empty. */
+	private Node<E> primo() {
+		Node<E> node = minimo;
+		return node == null || occorrenze(node) > 0 ? node : successivo(node);
 	}
 
-	/** Prints the tree */
-	public void print() {
-		stampa(root);
+	/** Returns the node with the highest element, null if the tree is empty. */
+	private Node<E> ultimo() {
+		Node<E> node = massimo;
+		return node == null || occorrenze(node) > 0 ? node : precedente(node);
 	}
 
 	/**
-	 * Prints the tree.
+	 * Returns the node that follows the specified one in order, climbing the
+	 * tree through the parents when there isn't a right subtree. The
+	 * tombstones of the lazy deletion are skipped.
 	 * 
 	 * @param node
-	 *            root of a specific subtree or of the tree itself.
+	 *            a node of the tree.
+	 * @return the successor of node, null if node is the last one.
 	 */
-	private void stampa(Node<E> node) {
-		if (node == null) {
-
-			System.out.println("Empty tree");
-
-			return;
-		} else {
-
-			if (node.parent != null)
-				System.out.println("\n Node: " + node.data + " Subtree height: " + getHeight(node) + " balancing: "
-						+ bilanciamento(node) + " Parent: " + node.parent.data);
-			else
-				System.out.println("\n Node: " + node.data + " Tree height: " + getHeight(node) + " balancing: "
-						+ bilanciamento(node) + " Parent: null");
-
-			if (node.leftChild != null) {
-
-				stampa(node.leftChild);
-			}
+	private Node<E> successivo(Node<E> node) {
+		do {
 			if (node.rightChild != null) {
+				node = getMin(node.rightChild);
+			} else {
+				while (node.parent != null && node.parent.rightChild == node)
+					node = node.parent;
+				node = node.parent;
+			}
+		} while (node != null && occorrenze(node) == 0);
+		return node;
+	}
 
-				stampa(node.rightChild);
+	/**
+	 * Returns the node that precedes the specified one in order, climbing the
+	 * tree through the parents when there isn't a left subtree. The
+	 * tombstones of the lazy deletion are skipped.
+	 * 
+	 * @param node
+	 *            a node of the tree.
+	 * @return the predecessor of node, null if node is the first one.
+	 */
+	private Node<E> precedente(Node<E> node) {
+		do {
+			if (node.leftChild != null) {
+				node = node.leftChild;
+				while (node.rightChild != null)
+					node = node.rightChild;
+			} else {
+				while (node.parent != null && node.parent.leftChild == node)
+					node = node.parent;
+				node = node.parent;
 			}
+		} while (node != null && occorrenze(node) == 0);
+		return node;
+	}
 
+	/**
+	 * Removes an element marking its node as tombstone, without extracting
+	 * it: only the number of elements and the aggregates of the nodes on the
+	 * path to the root are updated.
+	 * 
+	 * @param el
+	 *            the element to remove.
+	 * @return the marked node, null if the element was not present.
+	 */
+	private Node<E> marca(E el) {
+		Node<E> node = trovaNodo(el);
+		if (node == null) {
+			if (metrics != null)
+				metrics.misses.increment();
+			return null;
 		}
+		((SizeNode<E>) node).count = 0;
+		tombstones++;
+		for (Node<E> n = node; n != null; n = n.parent)
+			aggiorna(n);
+		if (metrics != null)
+			metrics.removes.increment();
+		return node;
+	}
 
+	/**
+	 * Rebuilds the tree without the tombstones: the nodes still present are
+	 * linked again in a perfectly balanced tree, in linear time and without
+	 * rotations.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void ricostruisci() {
+		Node<E>[] nodes = new Node[root == null ? 0 : dimensione(root)];
+		int n = 0;
+		for (Node<E> node = primo(); node != null; node = successivo(node))
+			nodes[n++] = node;
+		root = collega(nodes, 0, n - 1, null);
+		tombstones = 0;
+		// The old extremes can be tombstones that are no longer linked.
+		minimo = null;
+		massimo = null;
+		estremi();
 	}
 
 	/**
-	 * Add an element inside the AVL tree.This method does not allow
-	 * duplicates,if it tries to add an element that already exists the method
-	 * simply tell it to you with a message; further additions are possible.
-	 * 
-	 * @param el
-	 *            the element to add
-	 * @return true if the specified element has been correctly inserted,false
-	 *         otherwise.
-	 * 
+	 * Links the nodes of a sorted array in a balanced subtree.
 	 * 
+	 * @param nodes
+	 *            the nodes in order.
+	 * @param lo
+	 *            the position of the first node of the subtree.
+	 * @param hi
+	 *            the position of the last node of the subtree.
+	 * @param parent
+	 *            the parent of the subtree.
+	 * @return the root of the subtree, null if lo is greater than hi.
 	 */
+	private Node<E> collega(Node<E>[] nodes, int lo, int hi, Node<E> parent) {
+		if (lo > hi)
+			return null;
+		int mid = (lo + hi) >>> 1;
+		Node<E> node = nodes[mid];
+		node.parent = parent;
+		node.leftChild = collega(nodes, lo, mid - 1, node);
+		node.rightChild = collega(nodes, mid + 1, hi, node);
+		node.height = (byte) (Math.max(node.leftChild == null ? -1 : node.leftChild.height,
+				node.rightChild == null ? -1 : node.rightChild.height) + 1);
+		aggiorna(node);
+		return node;
+	}
 
-	public boolean insert(E el) {
+	/**
+	 * Returns the node of the least element greater than (or equal to) the
+	 * specified one.
+	 * 
+	 * @param el
+	 *            the element to compare.
+	 * @param inclusive
+	 *            true to accept an element equal to el.
+	 * @return the node, null if there isn't any.
+	 */
+	private Node<E> superiore(E el, boolean inclusive) {
+		Node<E> node = root, found = null;
+		while (node != null) {
+			int x = confronta(el, node);
+			if (x == 0 && inclusive) {
+				found = node;
+				break;
+			}
+			if (x < 0) {
+				found = node;
+				node = node.leftChild;
+			} else {
+				node = node.rightChild;
+			}
+		}
+		return found == null || occorrenze(found) > 0 ? found : successivo(found);
+	}
+
+	/**
+	 * Returns the node of the greatest element less than (or equal to) the
+	 * specified one.
+	 * 
+	 * @param el
+	 *            the element to compare.
+	 * @param inclusive
+	 *            true to accept an element equal to el.
+	 * @return the node, null if there isn't any.
+	 */
+	private Node<E> inferiore(E el, boolean inclusive) {
+		Node<E> node = root, found = null;
+		while (node != null) {
+			int x = confronta(el, node);
+			if (x == 0 && inclusive) {
+				found = node;
+				break;
+			}
+			if (x > 0) {
+				found = node;
+				node = node.rightChild;
+			} else {
+				node = node.leftChild;
+			}
+		}
+		return found == null || occorrenze(found) > 0 ? found : precedente(found);
+	}
+
+	/**
+	 * Returns the number of elements between lo (inclusive) and hi
+	 * (exclusive), the same range of subSet(lo, hi). It goes down the tree
+	 * twice using the number of elements of the subtrees, so it costs
+	 * O(log n) whatever the size of the range. The nodes of a plain AVLTree
+	 * don't keep those numbers, so there it costs O(n); the sets, the
+	 * multisets and the maps keep them.
+	 * 
+	 * @param lo
+	 *            low endpoint (inclusive) of the range.
+	 * @param hi
+	 *            high endpoint (exclusive) of the range.
+	 * @return the number of elements inside the range, 0 if lo is not less
+	 *         than hi.
+	 * @throws IllegalArgumentException
+	 *             if a parameter is null.
+	 */
+	public int rangeCount(E lo, E hi) {
+		if (lo == null || hi == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		if (compara(lo, hi) >= 0)
+			return 0;
+		return contaMinori(hi) - contaMinori(lo);
+	}
+
+	/**
+	 * Returns the number of elements strictly less than the specified one.
+	 * 
+	 * @param el
+	 *            the element to compare.
+	 * @return the number of elements less than el.
+	 */
+	private int contaMinori(E el) {
+		int count = 0;
+		Node<E> node = root;
+		while (node != null) {
+			if (confronta(el, node) <= 0) {
+				node = node.leftChild;
+			} else {
+				// node and its left subtree are less than el.
+				count += dimensione(node.leftChild) + occorrenze(node);
+				node = node.rightChild;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the node of the element in position k of the ascending order,
+	 * counting the occurrences; it uses the number of elements of the
+	 * subtrees, so it costs O(log n).
+	 * 
+	 * @param k
+	 *            the position, starting from 0.
+	 * @return the node in position k, null if k is out of the tree.
+	 */
+	private Node<E> seleziona(int k) {
+		Node<E> node = root;
+		while (node != null) {
+			int left = dimensione(node.leftChild);
+			if (k < left) {
+				node = node.leftChild;
+			} else if (k < left + occorrenze(node)) {
+				return node;
+			} else {
+				k -= left + occorrenze(node);
+				node = node.rightChild;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the aggregate, computed with the monoid of the tree, of the
+	 * elements between lo (inclusive) and hi (exclusive). It combines the
+	 * aggregates kept in the nodes along the two paths that bound the range,
+	 * so it costs O(log n) whatever the size of the range.
+	 * 
+	 * @param lo
+	 *            low endpoint (inclusive) of the range.
+	 * @param hi
+	 *            high endpoint (exclusive) of the range.
+	 * @return the aggregate of the range, the identity of the monoid if the
+	 *         range is empty.
+	 * @throws IllegalArgumentException
+	 *             if a parameter is null.
+	 * @throws IllegalStateException
+	 *             if the tree doesn't use a monoid.
+	 */
+	@SuppressWarnings("unchecked")
+	public <A> A rangeAggregate(E lo, E hi) {
+		if (lo == null || hi == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		if (monoid == null)
+			throw new IllegalStateException("Error: the tree has been created without a monoid");
+		if (compara(lo, hi) >= 0)
+			return (A) monoid.identity();
+		return (A) aggregaRange(lo, hi);
+	}
+
+	/**
+	 * Returns the aggregate of the elements between lo (inclusive) and hi
+	 * (exclusive).
+	 * 
+	 * @param lo
+	 *            low endpoint (inclusive) of the range, null if not bounded.
+	 * @param hi
+	 *            high endpoint (exclusive) of the range, null if not bounded.
+	 * @return the aggregate of the range.
+	 */
+	private Object aggregaRange(E lo, E hi) {
+		/*
+		 * Goes down until the first node inside the range: the elements of
+		 * the range are all in its subtree.
+		 */
+		Node<E> node = root;
+		while (node != null) {
+			if (lo != null && compara(node.data, lo) < 0)
+				node = node.rightChild;
+			else if (hi != null && compara(node.data, hi) >= 0)
+				node = node.leftChild;
+			else
+				break;
+		}
+		if (node == null)
+			return monoid.identity();
+
+		/*
+		 * Left part: going down the left subtree, every node greater or equal
+		 * than lo is in the range together with its right subtree; they come
+		 * before the part already collected.
+		 */
+		Object left = monoid.identity();
+		Node<E> n = node.leftChild;
+		while (n != null) {
+			if (lo == null || compara(n.data, lo) >= 0) {
+				left = monoid.combine(monoid.combine(aggregatoNodo(n), aggregato(n.rightChild)), left);
+				n = n.leftChild;
+			} else {
+				n = n.rightChild;
+			}
+		}
+		/*
+		 * Right part: going down the right subtree, every node less than hi
+		 * is in the range together with its left subtree; they come after the
+		 * part already collected.
+		 */
+		Object right = monoid.identity();
+		n = node.rightChild;
+		while (n != null) {
+			if (hi == null || compara(n.data, hi) < 0) {
+				right = monoid.combine(right, monoid.combine(aggregato(n.leftChild), aggregatoNodo(n)));
+				n = n.rightChild;
+			} else {
+				n = n.leftChild;
+			}
+		}
+		return monoid.combine(monoid.combine(left, aggregatoNodo(node)), right);
+	}
+
+	/**
+	 * Returns the aggregate of the subtree with node as root.
+	 * 
+	 * @param node
+	 *            the root of the subtree.
+	 * @return the aggregate, the identity of the monoid if node is null.
+	 */
+	private Object aggregato(Node<E> node) {
+		return node == null ? monoid.identity() : ((AggregateNode<E>) node).aggregate;
+	}
+
+	/**
+	 * Returns the aggregate of the element of a node alone, the identity of
+	 * the monoid if the node is a tombstone.
+	 * 
+	 * @param node
+	 *            a node of the tree.
+	 * @return the aggregate of the element of node.
+	 */
+	private Object aggregatoNodo(Node<E> node) {
+		return occorrenze(node) == 0 ? monoid.identity() : monoid.lift(node.data);
+	}
+
+	/**
+	 * Performs an action on every element between lo and hi, in ascending
+	 * order (in a multiset an element is passed once for every occurrence).
+	 * It goes down the tree only to find the first element of the range and
+	 * then follows the successors, so the subtrees outside the range are not
+	 * visited and nothing is allocated for the elements.
+	 * 
+	 * @param lo
+	 *            the low endpoint, null if the range is not bounded below.
+	 * @param loInclusive
+	 *            true if lo is part of the range.
+	 * @param hi
+	 *            the high endpoint, null if the range is not bounded above.
+	 * @param hiInclusive
+	 *            true if hi is part of the range.
+	 * @param action
+	 *            the action to perform on every element.
+	 * @throws IllegalArgumentException
+	 *             if the action is null or lo is greater than hi.
+	 */
+	public void forEachInRange(E lo, boolean loInclusive, E hi, boolean hiInclusive, Consumer<? super E> action) {
+		if (action == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		Node<E> stop = fineRange(lo, hi, hiInclusive);
+		for (Node<E> node = inizioRange(lo, loInclusive, stop); node != stop; node = successivo(node))
+			for (int i = occorrenze(node); i > 0; i--)
+				action.accept(node.data);
+	}
+
+	/**
+	 * Performs an action on the elements between lo and hi, in ascending
+	 * order, until the action returns false. Like forEachInRange() it doesn't
+	 * visit the subtrees outside the range and it doesn't allocate anything
+	 * for the elements.
+	 * 
+	 * @param lo
+	 *            the low endpoint, null if the range is not bounded below.
+	 * @param loInclusive
+	 *            true if lo is part of the range.
+	 * @param hi
+	 *            the high endpoint, null if the range is not bounded above.
+	 * @param hiInclusive
+	 *            true if hi is part of the range.
+	 * @param action
+	 *            the action to perform, it returns false to stop the visit.
+	 * @return true if all the elements of the range have been visited, false
+	 *         if the action stopped the visit.
+	 * @throws IllegalArgumentException
+	 *             if the action is null or lo is greater than hi.
+	 */
+	public boolean forEachInRangeWhile(E lo, boolean loInclusive, E hi, boolean hiInclusive,
+			Predicate<? super E> action) {
+		if (action == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		Node<E> stop = fineRange(lo, hi, hiInclusive);
+		for (Node<E> node = inizioRange(lo, loInclusive, stop); node != stop; node = successivo(node))
+			for (int i = occorrenze(node); i > 0; i--)
+				if (!action.test(node.data))
+					return false;
+		return true;
+	}
+
+	/**
+	 * Returns a new cursor on this tree, positioned on the first element.
+	 * 
+	 * @return a cursor on this tree.
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Cursor that can be moved forward and backward on the elements of the
+	 * tree and repositioned with seek(), without creating new iterators. A
+	 * seek costs O(log n), next() and prev() follow the links of the nodes
+	 * and cost O(1) amortized; no object is created by the movements, so the
+	 * same cursor can be used for many scans. In a multiset every element is
+	 * visited once. After the tree is modified the cursor has to be
+	 * repositioned with seek() or reset().
+	 */
+	public class Cursor {
+		/** Node of the current element, null if the cursor is out of the tree. */
+		private Node<E> node;
+
+		/** Creates a cursor positioned on the first element. */
+		private Cursor() {
+			reset();
+		}
+
+		/** Positions the cursor on the first (lowest) element. */
+		public void reset() {
+			node = primo();
+		}
+
+		/**
+		 * Positions the cursor on the first element greater than or equal to
+		 * the specified one.
+		 * 
+		 * @param el
+		 *            the element to search.
+		 * @return true if the cursor is on an element, false if all the
+		 *         elements are less than el.
+		 */
+		public boolean seek(E el) {
+			if (el == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			node = superiore(el, true);
+			return node != null;
+		}
+
+		/**
+		 * Checks if the cursor is on an element.
+		 * 
+		 * @return false if the cursor went out of the tree or the tree is
+		 *         empty.
+		 */
+		public boolean valid() {
+			return node != null;
+		}
+
+		/**
+		 * Returns the element the cursor is on.
+		 * 
+		 * @return the current element.
+		 * @throws NoSuchElementException
+		 *             if the cursor is out of the tree.
+		 */
+		public E current() {
+			if (node == null)
+				throw new NoSuchElementException();
+			return node.data;
+		}
+
+		/**
+		 * Moves the cursor to the next element.
+		 * 
+		 * @return true if the cursor is on an element, false if it went after
+		 *         the last one.
+		 */
+		public boolean next() {
+			if (node != null)
+				node = successivo(node);
+			return node != null;
+		}
+
+		/**
+		 * Moves the cursor to the previous element.
+		 * 
+		 * @return true if the cursor is on an element, false if it went before
+		 *         the first one.
+		 */
+		public boolean prev() {
+			if (node != null)
+				node = precedente(node);
+			return node != null;
+		}
+	}
+
+	/**
+	 * Returns the first node after a range, that is where a visit of the
+	 * range stops.
+	 * 
+	 * @param lo
+	 *            the low endpoint, null if not bounded.
+	 * @param hi
+	 *            the high endpoint, null if not bounded.
+	 * @param hiInclusive
+	 *            true if hi is part of the range.
+	 * @return the first node after the range, null if there isn't any.
+	 * @throws IllegalArgumentException
+	 *             if lo is greater than hi.
+	 */
+	private Node<E> fineRange(E lo, E hi, boolean hiInclusive) {
+		if (hi == null)
+			return null;
+		if (lo != null && compara(lo, hi) > 0)
+			throw new IllegalArgumentException(
+					"Invalid values: the left value of the parameter must be lower than the right one");
+		return superiore(hi, !hiInclusive);
+	}
+
+	/**
+	 * Returns the first node of a range.
+	 * 
+	 * @param lo
+	 *            the low endpoint, null if not bounded.
+	 * @param loInclusive
+	 *            true if lo is part of the range.
+	 * @param stop
+	 *            the first node after the range.
+	 * @return the first node of the range, stop if the range is empty.
+	 */
+	private Node<E> inizioRange(E lo, boolean loInclusive, Node<E> stop) {
+		Node<E> node = lo == null ? primo() : superiore(lo, loInclusive);
+		/*
+		 * With lo equal to hi and an exclusive endpoint the first node can be
+		 * after the stop: the range is empty.
+		 */
+		if (node != null && stop != null && compara(node.data, stop.data) > 0)
+			return stop;
+		return node;
+	}
+
+	/** Prints the tree */
+	public void print() {
+		stampa(root);
+	}
+
+	/**
+	 * Prints the tree.
+	 * 
+	 * @param node
+	 *            root of a specific subtree or of the tree itself.
+	 */
+	private void stampa(Node<E> node) {
+		if (node == null) {
+
+			System.out.println("Empty tree");
+
+			return;
+		} else {
+
+			if (node.parent != null)
+				System.out.println("\n Node: " + node.data + " Subtree height: " + getHeight(node) + " balancing: "
+						+ bilanciamento(node) + " Parent: " + node.parent.data);
+			else
+				System.out.println("\n Node: " + node.data + " Tree height: " + getHeight(node) + " balancing: "
+						+ bilanciamento(node) + " Parent: null");
+
+			if (node.leftChild != null) {
+
+				stampa(node.leftChild);
+			}
+			if (node.rightChild != null) {
+
+				stampa(node.rightChild);
+			}
+
+		}
+
+	}
+
+	/**
+	 * Add an element inside the AVL tree.This method does not allow
+	 * duplicates,if it tries to add an element that already exists the method
+	 * simply tell it to you with a message; further additions are possible.
+	 * 
+	 * @param el
+	 *            the element to add
+	 * @return true if the specified element has been correctly inserted,false
+	 *         otherwise.
+	 * 
+	 * 
+	 */
+
+	public boolean insert(E el) {
 		/*
 		 * There is a call to the method that effectively does all the
 		 * operations, after the called method has finished the tree will be
@@ -541,8 +1861,13 @@ public class AVLTree<E extends Comparable<E>> {
 
 			root = inserisci(el, root);
 			setPadre(root);
+			estremi();
+			if (metrics != null)
+				metrics.inserts.increment();
 			return true;
 		} catch (IllegalArgumentException e) {
+			if (metrics != null)
+				metrics.duplicateInserts.increment();
 			System.err.println("The element: " + el + " is already present \n");
 
 			return false;
@@ -570,8 +1895,16 @@ public class AVLTree<E extends Comparable<E>> {
 		 * the node with the specified element.
 		 */
 		if (node == null) {
-			node = new Node<E>(el);
-			if (node.equals(root)) {
+			node = creaNodo(el);
+			if (metrics != null)
+				metrics.nodeAllocations.increment();
+			if (upsert) {
+				inserito = node;
+				// Only a new node is an insertion, finding the element is not.
+				if (metrics != null)
+					metrics.inserts.increment();
+			}
+			if (node == root) {
 				root.parent = null;
 			}
 		}
@@ -579,7 +1912,7 @@ public class AVLTree<E extends Comparable<E>> {
 		 * It compares the element to add with node(not null); if el is smaller
 		 * than node, it goes to the left, to the right otherwise.
 		 */
-		else if (el.compareTo(node.data) < 0) {
+		else if (confronta(el, node) < 0) {
 			node.leftChild = inserisci(el, node.leftChild);
 			/*
 			 * After returning from the recursion call and the element has been
@@ -591,7 +1924,7 @@ public class AVLTree<E extends Comparable<E>> {
 			 * otherwise a double rotation is used(also called RL rotation).
 			 */
 			if (bilanciamento(node) == 2) {
-				if (el.compareTo(node.leftChild.data) < 0) {
+				if (confronta(el, node.leftChild) < 0) {
 					node = rotazioneSS(node);
 
 				} else {
@@ -606,7 +1939,7 @@ public class AVLTree<E extends Comparable<E>> {
 			 * double rotation with the right child.
 			 */
 			if (bilanciamento(node) == -2) {
-				if (el.compareTo(node.rightChild.data) > 0) {
+				if (confronta(el, node.rightChild) > 0) {
 					node = rotazioneDD(node);
 				} else {
 					node = rotazioneDS(node);
@@ -615,11 +1948,11 @@ public class AVLTree<E extends Comparable<E>> {
 
 			setPadre(node);
 			/* If we are on the right of root */
-		} else if (el.compareTo(node.data) > 0) {
+		} else if (confronta(el, node) > 0) {
 			node.rightChild = inserisci(el, node.rightChild);
 
 			if (bilanciamento(node) == -2) {
-				if (el.compareTo(node.rightChild.data) > 0) {
+				if (confronta(el, node.rightChild) > 0) {
 					node = rotazioneDD(node);
 
 				} else {
@@ -628,13 +1961,27 @@ public class AVLTree<E extends Comparable<E>> {
 				}
 			}
 			if (bilanciamento(node) == 2) {
-				if (el.compareTo(node.leftChild.data) < 0) {
+				if (confronta(el, node.leftChild) < 0) {
 					node = rotazioneSS(node);
 				} else {
 					node = rotazioneSD(node);
 				}
 			}
 			setPadre(node);
+		} else if (occorrenze(node) == 0) {
+			/*
+			 * The element was removed with the lazy deletion: it comes back, as
+			 * the instance added, which the set counts in its hash code.
+			 */
+			node.data = el;
+			((SizeNode<E>) node).count = 1;
+			tombstones--;
+		} else if (multiset) {
+			// The element is already present: one more occurrence.
+			((SizeNode<E>) node).count++;
+		} else if (upsert) {
+			// The element is already present: its node is returned to the map.
+			inserito = node;
 		} else {
 			throw new IllegalArgumentException();
 		}
@@ -642,281 +1989,317 @@ public class AVLTree<E extends Comparable<E>> {
 		 * Updates the height of the current node assigning to it the maximum
 		 * height of the children.
 		 */
-		node.height = Math.max(getHeight(node.leftChild), getHeight(node.rightChild)) + 1;
+		node.height = (byte) (Math.max(getHeight(node.leftChild), getHeight(node.rightChild)) + 1);
+		aggiorna(node);
 		return node;
 	}
 
 	/**
-	 * This method is used to add a left child to a tree(or a subtree)
+	 * It removes a specific node that contains the specified element.
 	 * 
-	 * @param node
-	 *            root of a subtree.
-	 * @param node2
-	 *            the left child we have to add
+	 * @param el
+	 *            - element of the node that will be extracted.
+	 * @return true if the node with the specified element has been successfully
+	 *         extracted, false otherwise.
+	 * @throws NullPointerException
+	 *             if the tree is empty.
 	 */
-	private void addLeftChild(Node<E> node, Node<E> node2) {
-		/*
-		 * Updates the pointer of parent of node2, it means the left child of
-		 * the node we want to remove, and the pointer of node, it means the
-		 * parent of the node we want to remove.
-		 */
-		node2.parent = node;
-
-		node.leftChild = node2;
 
+	public boolean removeNode(E el) {
+		return estrai(el) != null;
 	}
 
 	/**
-	 * This method is used to add a right child to a tree(or a subtree).
+	 * Removes the node that contains the specified element like removeNode,
+	 * but returns the element kept by the tree, that can be a different
+	 * instance equal to el.
 	 * 
-	 * @param node
-	 *            root of a subtree
-	 * @param node2
-	 *            the right child we have to add
+	 * @param el
+	 *            - element of the node that will be extracted.
+	 * @return the removed element, null if it was not present.
+	 * @throws NullPointerException
+	 *             if the tree is empty.
 	 */
-	private void addRightChild(Node<E> node, Node<E> node2) {
-		/*
-		 * Updates the pointer of parent of node2, it means the right child of
-		 * the node we want to remove, and the pointer of node, it means the
-		 * parent of the node we want to remove.
-		 */
-		node2.parent = node;
-
-		node.rightChild = node2;
-
+	private E estrai(E el) {
+		if (root == null)
+			throw new NullPointerException("Error: Empty tree");
+		if (el == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		Node<E> node = rimozione(el);
+		if (node == null) {
+			System.err.println("\nThe element: " + el + " is not present.");
+			return null;
+		}
+		return node.data;
 	}
 
 	/**
-	 * Delete a leaf.
+	 * Removes the node that contains the specified element and returns the
+	 * element kept by the tree, that can be a different instance equal to el.
+	 * Unlike removeNode, it doesn't print anything when the element is not
+	 * present.
 	 * 
 	 * @param el
-	 *            the element we have to extract
-	 * @param node
-	 *            it is the root of the tree or a sub-tree
-	 * @return true if the node has been successfully deleted, false otherwise.
+	 *            - element of the node that will be extracted.
+	 * @return the removed element, null if it was not present.
 	 */
-	private boolean estrazioneNoFigli(E el, Node<E> node) {
+	public E removeAndGet(E el) {
+		if (el == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		if (root == null)
+			return null;
+		Node<E> node = rimozione(el);
+		return node == null ? null : node.data;
+	}
 
-		boolean deleted = false;
-		// If the node we want to extract is the
-		// root...
-		if (node.equals(root)) {
-			// We set it to null
-			root = null;
-			deleted = true;
-		}
-		/*
-		 * Verifies if the node to extract is a right child or a left child;
-		 * than you simply set it to null.
-		 */
-		if (node == node.parent.leftChild) {
-
-			node.parent.leftChild = null;
-
-			deleted = true;
-
-		} else {
-			node.parent.rightChild = null;
-
-			deleted = true;
+	/**
+	 * Removes the node that contains the specified element with a single
+	 * descent from the root: the node is unlinked on the way down and the
+	 * subtrees are rebalanced on the way back, so the removal is O(log n).
+	 * 
+	 * @param el
+	 *            - element of the node that will be extracted.
+	 * @return the removed node, unlinked from the tree, or null if the element
+	 *         was not present.
+	 */
+	private Node<E> rimozione(E el) {
+		estratto = null;
+		root = rimuovi(el, root);
+		if (root != null)
+			root.parent = null;
+		Node<E> node = estratto;
+		estratto = null;
+		if (node == null) {
+			if (metrics != null)
+				metrics.misses.increment();
+			return null;
 		}
+		return staccato(node);
+	}
 
-		return deleted;
+	/**
+	 * Removes the node with the lowest element, without searching it: the
+	 * tree goes down along its left side only.
+	 * 
+	 * @return the removed node, unlinked from the tree, or null if the tree is
+	 *         empty.
+	 */
+	private Node<E> estraiPrimo() {
+		Node<E> node = primo();
+		if (node == null)
+			return null;
+		// The tombstones before the lowest element stay in the tree.
+		if (node != minimo)
+			return rimozione(node.data);
+		root = staccaMin(root);
+		if (root != null)
+			root.parent = null;
+		return staccato(node);
+	}
 
+	/**
+	 * Removes the node with the highest element, without searching it: the
+	 * tree goes down along its right side only.
+	 * 
+	 * @return the removed node, unlinked from the tree, or null if the tree is
+	 *         empty.
+	 */
+	private Node<E> estraiUltimo() {
+		Node<E> node = ultimo();
+		if (node == null)
+			return null;
+		// The tombstones after the highest element stay in the tree.
+		if (node != massimo)
+			return rimozione(node.data);
+		root = staccaMax(root);
+		if (root != null)
+			root.parent = null;
+		return staccato(node);
 	}
 
 	/**
-	 * Method to extract a node with only one child.
+	 * Completes the extraction of a node already unlinked from the tree.
 	 * 
-	 * @param el
-	 *            - element of the node that will be extracted.
 	 * @param node
-	 *            - root of a specific subtree.
-	 * @return true if the node has been successfully deleted, false otherwise.
+	 *            the removed node.
+	 * @return the node, without its links to the tree.
 	 */
+	private Node<E> staccato(Node<E> node) {
+		valoreEstratto = node instanceof MapNode ? ((MapNode<E>) node).value : null;
+		node.leftChild = null;
+		node.rightChild = null;
+		node.parent = null;
+		// The extremes change only when one of them is removed.
+		if (node == minimo)
+			minimo = root == null ? null : getMin(root);
+		if (node == massimo)
+			massimo = root == null ? null : getMax(root);
+		if (metrics != null)
+			metrics.removes.increment();
+		return node;
+	}
 
-	private boolean estrazioneUnFiglio(E el, Node<E> node) {
-		boolean deleted = false;
-
-		/*
-		 * Creates a node that will take the value of the child different from
-		 * null.
-		 */
-		Node<E> c = node.leftChild != null ? node.leftChild : node.rightChild;
-		if (node.equals(root)) {
-			node.data = c.data;
-			if (c.equals(node.leftChild)) {
-				node.leftChild = null;
-			} else
-				node.rightChild = null;
-
-			deleted = true;
-		}
-		/*
-		 * If node is a left child
-		 */
-		if (node == node.parent.leftChild) {
-
-			addLeftChild(node.parent, c);
-			deleted = true;
-
+	/**
+	 * "Auxiliary" method to extract a node. The removed node is saved in
+	 * estratto; if the element is not present the subtree is unchanged.
+	 * 
+	 * @param el
+	 *            - element of the node that will be extracted
+	 * @param node
+	 *            - node root of a subtree.
+	 * @return the new root of the subtree after the extraction.
+	 */
+	private Node<E> rimuovi(E el, Node<E> node) {
+		if (node == null)
+			return null;
+		int x = confronta(el, node);
+		if (x < 0) {
+			node.leftChild = rimuovi(el, node.leftChild);
+		} else if (x > 0) {
+			node.rightChild = rimuovi(el, node.rightChild);
 		} else {
-			// if node is a right child.
-			addRightChild(node.parent, c);
-			deleted = true;
-
+			// A tombstone is not present.
+			if (occorrenze(node) == 0)
+				return node;
+			estratto = node;
+			return sostituisci(node);
 		}
-		return deleted;
-
+		setPadre(node);
+		return ribilancia(node);
 	}
 
 	/**
-	 * This method just deletes a node that has two children
+	 * Unlinks a node from its subtree.
 	 * 
-	 * 
-	 * @param el
-	 *            the node we want to extract
 	 * @param node
-	 *            the root of the tree or a sub-tree
-	 * @throws Exception
-	 *             if the specified element is not present.
-	 * @return true if the node has been successfully deleted, false otherwise.
+	 *            the node to unlink.
+	 * @return the subtree that takes the place of the node.
 	 */
-	private boolean estrazioneDueFigli(E el, Node<E> node) throws Exception {
-		boolean deleted = false;
-
-		/*
-		 * Instanciate a new empty node and we assign to this one the value of
-		 * the successive node we want to delete
-		 */
-		Node<E> succ = new Node<E>(el);
-
-		succ = getSuccessor(el, node);
+	private Node<E> sostituisci(Node<E> node) {
 		/*
-		 * We choose between the following methods in order to delete the
-		 * successor: "estrazioneUnFiglio", "estrazioneNoFigli"
+		 * With at most one child, the child takes the place of the node.
 		 */
-		estrazione(succ.data, node);
+		if (node.leftChild == null || node.rightChild == null) {
+			Node<E> c = node.leftChild != null ? node.leftChild : node.rightChild;
+			if (c != null)
+				c.parent = node.parent;
+			return c;
+		}
 		/*
-		 * We replace the node we want to delete with its successor
+		 * With two children, the successor node is unlinked from the right
+		 * subtree and takes the place of the node: the nodes are moved, not
+		 * their elements, so the references to the other nodes stay valid.
 		 */
-		node.data = succ.data;
-		deleted = true;
-
-		return deleted;
-
+		Node<E> succ = getMin(node.rightChild);
+		Node<E> right = staccaMin(node.rightChild);
+		succ.leftChild = node.leftChild;
+		succ.rightChild = right;
+		succ.parent = node.parent;
+		setPadre(succ);
+		return ribilancia(succ);
 	}
 
 	/**
-	 * It removes a specific node that contains the specified element.
+	 * Removes a node of the tree without comparing its element: the path from
+	 * the root is found climbing the parents, one bit for every level (the
+	 * height of an AVL tree is less than 64), and the node is unlinked
+	 * following it.
 	 * 
-	 * @param el
-	 *            - element of the node that will be extracted.
-	 * @return true if the node with the specified element has been successfully
-	 *         extracted, false otherwise.
-	 * @throws NullPointerException
-	 *             if the tree is empty.
+	 * @param node
+	 *            a node of this tree.
+	 * @return the removed node, unlinked from the tree.
 	 */
-
-	public boolean removeNode(E el) {
-		if (root == null)
-			throw new NullPointerException("Error: Empty tree");
-		if (el == null)
-			throw new IllegalArgumentException("Null elements not allowed!!!");
-		try {
-
-			/*
-			 * After deleting a node it climbs the tree, avoiding any aiming
-			 * problem.
-			 */
-			root = estrazione(el, root);
-
-			if (root.parent != null) {
-				while (root.parent != null) {
-					root = root.parent;
-				}
-			}
-
-		} catch (Exception e) {
-			System.err.println("\nThe element: " + el + " is not present.");
-			return false;
+	private Node<E> rimuoviNodo(Node<E> node) {
+		long percorso = 0;
+		int livelli = 0;
+		for (Node<E> n = node; n.parent != null; n = n.parent) {
+			percorso = percorso << 1 | (n == n.parent.rightChild ? 1 : 0);
+			livelli++;
 		}
-		return true;
+		root = staccaLungo(root, percorso, livelli);
+		if (root != null)
+			root.parent = null;
+		return staccato(node);
 	}
 
 	/**
-	 * "Auxiliary" method to extract a node.
+	 * Unlinks the node at the end of a path and rebalances the subtrees on
+	 * the way back.
 	 * 
-	 * @param el
-	 *            - element of the node that will be extracted
 	 * @param node
-	 *            - node root of a subtree.
-	 * @return the updated tree after the extraction.
-	 * @throws Exception
-	 *             if the specified element is not present.
-	 * 
+	 *            the root of the subtree.
+	 * @param percorso
+	 *            the path, a bit for every level starting from the lowest: 0
+	 *            to go left, 1 to go right.
+	 * @param livelli
+	 *            the number of levels of the path.
+	 * @return the new root of the subtree.
 	 */
-	private Node<E> estrazione(E el, Node<E> node) throws Exception {
-		boolean deleted = false;
-
-		int x = node.data.compareTo(el);
-		if ((x < 0 || x > 0) && node.rightChild == null && node.leftChild == null)
-			throw new Exception();
-
-		if (x > 0) {
-			estrazione(el, node.leftChild);
-
-		}
-		if (x < 0) {
-
-			estrazione(el, node.rightChild);
-		}
-		/*
-		 * We have to check the condition the node respects. It depends if it
-		 * has 0, 1 or 2 children, calling the respective methods
-		 */
-		if (x == 0) {
-			if (node.leftChild == null && node.rightChild == null) {
-				deleted = estrazioneNoFigli(el, node);
-
-			} else if (node.leftChild == null || node.rightChild == null) {
-				deleted = estrazioneUnFiglio(el, node);
-
-			} else {
-				deleted = estrazioneDueFigli(el, node);
-			}
-		}
-		/*
-		 * Checks the balancing coefficient of the aiming node and makes the
-		 * rotations.
-		 */
-		if (bilanciamento(node) == 2) {
-			if (bilanciamento(node.leftChild) == 1)
-				node = rotazioneSS(node);
-			else
-				node = rotazioneSD(node);
+	private Node<E> staccaLungo(Node<E> node, long percorso, int livelli) {
+		if (livelli == 0)
+			return sostituisci(node);
+		if ((percorso & 1) == 0)
+			node.leftChild = staccaLungo(node.leftChild, percorso >>> 1, livelli - 1);
+		else
+			node.rightChild = staccaLungo(node.rightChild, percorso >>> 1, livelli - 1);
+		setPadre(node);
+		return ribilancia(node);
+	}
 
+	/**
+	 * Unlinks the minimum node of a subtree.
+	 * 
+	 * @param node
+	 *            the root of the subtree.
+	 * @return the new root of the subtree without its minimum.
+	 */
+	private Node<E> staccaMin(Node<E> node) {
+		if (node.leftChild == null) {
+			if (node.rightChild != null)
+				node.rightChild.parent = node.parent;
+			return node.rightChild;
 		}
-		if (bilanciamento(node) == -2) {
-			if (bilanciamento(node.rightChild) == -1) {
-				node = rotazioneDD(node);
+		node.leftChild = staccaMin(node.leftChild);
+		setPadre(node);
+		return ribilancia(node);
+	}
 
-			} else {
-				node = rotazioneDS(node);
-			}
+	/**
+	 * Unlinks the maximum node of a subtree.
+	 * 
+	 * @param node
+	 *            the root of the subtree.
+	 * @return the new root of the subtree without its maximum.
+	 */
+	private Node<E> staccaMax(Node<E> node) {
+		if (node.rightChild == null) {
+			if (node.leftChild != null)
+				node.leftChild.parent = node.parent;
+			return node.leftChild;
 		}
-		// updates the the parents.
+		node.rightChild = staccaMax(node.rightChild);
 		setPadre(node);
-		// updates the parent of node's child.
-		if (node.parent != null && deleted == false)
-			if (node.data.compareTo(node.parent.data) < 0) {
-				node.parent.leftChild = node;
-			} else {
-				node.parent.rightChild = node;
-			}
+		return ribilancia(node);
+	}
 
+	/**
+	 * Updates the height of a node whose subtree has lost a node and makes the
+	 * rotation needed to balance it.
+	 * 
+	 * @param node
+	 *            the node to balance.
+	 * @return the root of the balanced subtree.
+	 */
+	private Node<E> ribilancia(Node<E> node) {
+		node.height = (byte) (Math.max(getHeight(node.leftChild), getHeight(node.rightChild)) + 1);
+		int b = bilanciamento(node);
+		if (b == 2)
+			return bilanciamento(node.leftChild) >= 0 ? rotazioneSS(node) : rotazioneSD(node);
+		if (b == -2)
+			return bilanciamento(node.rightChild) <= 0 ? rotazioneDD(node) : rotazioneDS(node);
+		// updates the number of elements and the aggregate of the subtree.
+		aggiorna(node);
 		return node;
-
 	}
 
 	/**
@@ -930,6 +2313,8 @@ public class AVLTree<E extends Comparable<E>> {
 	 */
 
 	private Node<E> rotazioneSS(Node<E> node) {
+		if (metrics != null)
+			metrics.rotationsSS.increment();
 		/*
 		 * Create a node with the same value of its left-child node; then we
 		 * assign to the left-child node the value of right-child node.
@@ -937,14 +2322,20 @@ public class AVLTree<E extends Comparable<E>> {
 		Node<E> t = node.leftChild;
 
 		node.leftChild = t.rightChild;
+		if (node.leftChild != null)
+			node.leftChild.parent = node;
 		// The right child of t(that is now the left child of the specified
 		// node) becomes the specified node.
 		t.rightChild = node;
 		// update the parent of t, so it becomes the new subtree.
 		t.parent = node.parent;
+		node.parent = t;
 
-		node.height = Math.max(getHeight(node.leftChild), getHeight(node.rightChild)) + 1;
-		t.height = Math.max(getHeight(t.leftChild), node.height) + 1;
+		node.height = (byte) (Math.max(getHeight(node.leftChild), getHeight(node.rightChild)) + 1);
+		t.height = (byte) (Math.max(getHeight(t.leftChild), node.height) + 1);
+		// The rotated node is now a child of t: it is updated first.
+		aggiorna(node);
+		aggiorna(t);
 
 		return t;
 
@@ -959,6 +2350,8 @@ public class AVLTree<E extends Comparable<E>> {
 	 * @return the node that is the root of the updated subtree(or tree).
 	 */
 	private Node<E> rotazioneDD(Node<E> node) {
+		if (metrics != null)
+			metrics.rotationsDD.increment();
 
 		Node<E> t = node.rightChild;
 		/*
@@ -966,12 +2359,18 @@ public class AVLTree<E extends Comparable<E>> {
 		 * assign to the left-child node the value of right-child node.
 		 */
 		node.rightChild = t.leftChild;
+		if (node.rightChild != null)
+			node.rightChild.parent = node;
 		t.leftChild = node;
 		// update the parent of t, so it becomes the new subtree.
 		t.parent = node.parent;
+		node.parent = t;
 
-		node.height = Math.max(getHeight(node.leftChild), getHeight(node.rightChild)) + 1;
-		t.height = Math.max(getHeight(t.leftChild), node.height) + 1;
+		node.height = (byte) (Math.max(getHeight(node.leftChild), getHeight(node.rightChild)) + 1);
+		t.height = (byte) (Math.max(getHeight(t.rightChild), node.height) + 1);
+		// The rotated node is now a child of t: it is updated first.
+		aggiorna(node);
+		aggiorna(t);
 
 		return t;
 
@@ -987,6 +2386,8 @@ public class AVLTree<E extends Comparable<E>> {
 	 * 
 	 */
 	private Node<E> rotazioneSD(Node<E> node) {
+		if (metrics != null)
+			metrics.rotationsSD.increment();
 		// The left child of the node that has to be rotate does a single
 		// rotation to the right, than updates the parent and the node itself
 		// does a single rotation to the left.
@@ -1005,6 +2406,8 @@ public class AVLTree<E extends Comparable<E>> {
 	 * @return the node that is the root of the updated subtree(or tree).
 	 */
 	private Node<E> rotazioneDS(Node<E> node) {
+		if (metrics != null)
+			metrics.rotationsDS.increment();
 		// The right child of the node that has to be rotate does a single
 		// rotation to the left, than updates the parent and the node itself
 		// does a single rotation to the right.
@@ -1023,12 +2426,152 @@ public class AVLTree<E extends Comparable<E>> {
 		/** Variable of the number of the elements inside the tree. */
 		private int countNode;
 
+		/**
+		 * Sum of the hash codes of the elements, updated by every addition
+		 * and removal.
+		 */
+		private int hash;
+
+		/** Subscriptions to the changes of this set, null if there isn't any. */
+		private volatile ChangeFeed<?>[] feeds;
+
+		/**
+		 * Maximum fraction of tombstones among the nodes with the lazy
+		 * deletion, 0 if the lazy deletion is not used.
+		 */
+		private double maxTombstones;
+
+		/**
+		 * Minimum number of removals after which the Bloom filter can be
+		 * considered stale.
+		 */
+		private static final int BLOOM_MIN_REMOVALS = 64;
+
+		/** Optional Bloom filter in front of the tree, null if not used. */
+		private BloomFilter bloom;
+		/** Number of elements the Bloom filter has been sized for. */
+		private int bloomExpected;
+		/** False positive probability the Bloom filter has been sized for. */
+		private double bloomProbability;
+		/** Number of removals since the Bloom filter was (re)built. */
+		private int bloomRemovals;
+		/**
+		 * True if the ordering of the elements has been declared consistent
+		 * with equals(), so the Bloom filter can be used for any class.
+		 */
+		private boolean bloomConsistent;
+		/** Number of contains() answered by the Bloom filter alone. */
+		private long bloomNegatives;
+		/** Number of contains() the Bloom filter let through to the tree. */
+		private long bloomPositives;
+		/**
+		 * Number of contains() let through by the Bloom filter for elements
+		 * that were not present.
+		 */
+		private long bloomFalsePositives;
+
 		/** Constructs a set with an AVL tree as data structure */
 		public mySortedSet() {
 			super();
 
 		}
 
+		/**
+		 * Constructs a set whose nodes carry the aggregate of their subtree
+		 * computed with the specified monoid, see rangeAggregate().
+		 * 
+		 * @param monoid
+		 *            the monoid used to aggregate the elements.
+		 */
+		public mySortedSet(Monoid<? super T, ?> monoid) {
+			super(monoid);
+		}
+
+		/**
+		 * Constructs an empty set ordered by the specified comparator, for
+		 * example a descending or case insensitive ordering, without
+		 * wrapping the elements.
+		 * 
+		 * @param comparator
+		 *            the ordering of the elements, null for the natural
+		 *            ordering.
+		 */
+		public mySortedSet(Comparator<? super T> comparator) {
+			super(comparator);
+		}
+
+		/**
+		 * Constructs a set with an AVL tree as data structure and a Bloom
+		 * filter in front of it. The filter lets contains() answer the misses
+		 * without descending the tree; it is maintained by add(), grown when
+		 * the set exceeds the expected elements and rebuilt lazily when
+		 * enough elements have been removed.
+		 * <p>
+		 * The filter hashes the elements with hashCode(), while the set finds
+		 * them with compareTo(): it is used only for the classes of the JDK
+		 * whose natural ordering is consistent with equals (String, the boxed
+		 * primitives, BigInteger). For other elements it is dropped at the
+		 * first add(); see the constructor with consistentWithEquals.
+		 *
+		 * @param expectedElements
+		 *            number of elements the filter is sized for.
+		 * @param falsePositiveProbability
+		 *            desired probability of false positives of the filter.
+		 * @throws IllegalArgumentException
+		 *             if the parameters are not valid.
+		 */
+		public mySortedSet(int expectedElements, double falsePositiveProbability) {
+			this(expectedElements, falsePositiveProbability, false);
+		}
+
+		/**
+		 * Constructs a set with an AVL tree as data structure and a Bloom
+		 * filter in front of it, see mySortedSet(int, double).
+		 *
+		 * @param expectedElements
+		 *            number of elements the filter is sized for.
+		 * @param falsePositiveProbability
+		 *            desired probability of false positives of the filter.
+		 * @param consistentWithEquals
+		 *            true if the natural ordering of the elements is
+		 *            consistent with equals (a.compareTo(b) == 0 exactly when
+		 *            a.equals(b)), so the filter can be used for any class;
+		 *            false to use it only for the classes of the JDK.
+		 * @throws IllegalArgumentException
+		 *             if the parameters are not valid.
+		 */
+		public mySortedSet(int expectedElements, double falsePositiveProbability, boolean consistentWithEquals) {
+			this(null, expectedElements, falsePositiveProbability, consistentWithEquals);
+		}
+
+		/**
+		 * Constructs a set ordered by the specified comparator with a Bloom
+		 * filter in front of it, see mySortedSet(int, double). Unless the
+		 * comparator is declared consistent with equals the filter is not
+		 * used, since the JDK classes may be ordered in a different way.
+		 *
+		 * @param comparator
+		 *            the ordering of the elements, null for the natural
+		 *            ordering.
+		 * @param expectedElements
+		 *            number of elements the filter is sized for.
+		 * @param falsePositiveProbability
+		 *            desired probability of false positives of the filter.
+		 * @param consistentWithEquals
+		 *            true if the ordering is consistent with equals
+		 *            (compare(a, b) == 0 exactly when a.equals(b)).
+		 * @throws IllegalArgumentException
+		 *             if the parameters are not valid.
+		 */
+		public mySortedSet(Comparator<? super T> comparator, int expectedElements, double falsePositiveProbability,
+				boolean consistentWithEquals) {
+			super(comparator);
+			bloom = new BloomFilter(expectedElements, falsePositiveProbability);
+			bloomExpected = expectedElements;
+			bloomProbability = falsePositiveProbability;
+			bloomConsistent = consistentWithEquals;
+		}
+
 		/**
 		 * Construct a sorted set with an element.
 		 * 
@@ -1038,6 +2581,18 @@ public class AVLTree<E extends Comparable<E>> {
 		public mySortedSet(T value) {
 			super(value);
 			countNode++;
+			hash = value.hashCode();
+		}
+
+		/**
+		 * Creates a node that counts the elements of its subtree, for the
+		 * ranks and the range counts, and that can become a tombstone of the
+		 * lazy deletion.
+		 */
+		@Override
+		Node<T> creaNodo(T el) {
+			AVLTree<T> tree = this;
+			return tree.monoid != null ? new AggregateNode<T>(el) : new SizeNode<T>(el);
 		}
 
 		/**
@@ -1056,6 +2611,11 @@ public class AVLTree<E extends Comparable<E>> {
 			// element inside the sorted set.
 			if (added == true) {
 				countNode++;
+				hash += el.hashCode();
+				if (bloom != null)
+					aggiungiBloom(el);
+				if (feeds != null)
+					notifica(ChangeFeed.Change.Type.INSERT, el);
 				return true;
 			} else
 				return false;
@@ -1096,9 +2656,10 @@ public class AVLTree<E extends Comparable<E>> {
 					/*
 					 * Initialize a node, because this sorted set contains
 					 * nodes, with the first element of this set that it is none
-					 * other than the minimum value of the tree.
+					 * other than the minimum value of the tree. With the lazy
+					 * deletion the minimum can be a tombstone, which is skipped.
 					 */
-					Node<T> node = super.getMin(super.root);
+					Node<T> node = super.primo();
 					/*
 					 * Controls if the elements' type of this set and the one
 					 * the specified collection are the same. Different types
@@ -1111,7 +2672,7 @@ public class AVLTree<E extends Comparable<E>> {
 					 * If the element is not present the added variable becomes
 					 * true, false otherwise.
 					 */
-					int x = ((T) object).compareTo(node.data);
+					int x = super.compara((T) object, node.data);
 					if (x < 0) {
 						add((T) object);
 					}
@@ -1140,11 +2701,115 @@ public class AVLTree<E extends Comparable<E>> {
 		@Override
 		public boolean contains(Object o) {
 			boolean found = false;
+			/*
+			 * If the Bloom filter is used and it says that the element is not
+			 * present, the tree is not visited at all.
+			 */
+			if (bloom != null && o != null) {
+				if (bloomRemovals > Math.max(BLOOM_MIN_REMOVALS, countNode / 4))
+					rebuildBloom();
+				if (!bloom.mightContain(o)) {
+					bloomNegatives++;
+					if (super.metrics != null)
+						super.metrics.misses.increment();
+					return false;
+				}
+				bloomPositives++;
+			}
 			// Calls the search method of the AVL tree.
 			found = search((T) o);
+			if (bloom != null && found == false)
+				bloomFalsePositives++;
 			return found;
 		}
 
+		/**
+		 * Adds an element to the Bloom filter. The filter is dropped if the
+		 * element can be equal to another one for compareTo() but not for
+		 * equals(), and it is rebuilt twice as big when the set exceeds the
+		 * elements it is sized for, so the false positives don't grow.
+		 */
+		private void aggiungiBloom(T el) {
+			if (!bloomConsistent && (getComparator() != null || !ordineCoerente(el))) {
+				bloom = null;
+				return;
+			}
+			if (countNode > bloomExpected) {
+				bloomExpected = (int) Math.min(Integer.MAX_VALUE, 2L * countNode);
+				rebuildBloom();
+			} else
+				bloom.put(el);
+		}
+
+		/**
+		 * Checks if the natural ordering of the class of an element is known
+		 * to be consistent with equals.
+		 */
+		private static boolean ordineCoerente(Object el) {
+			Class<?> c = el.getClass();
+			return c == String.class || c == Integer.class || c == Long.class || c == Short.class
+					|| c == Byte.class || c == Character.class || c == Double.class || c == Float.class
+					|| c == java.math.BigInteger.class;
+		}
+
+		/**
+		 * Rebuilds the Bloom filter with the elements currently inside the
+		 * set, so that the removed elements stop producing false positives.
+		 */
+		private void rebuildBloom() {
+			bloom = new BloomFilter(Math.max(bloomExpected, countNode), bloomProbability);
+			for (T el : this)
+				bloom.put(el);
+			bloomRemovals = 0;
+		}
+
+		/**
+		 * Returns the rate of false positives of the Bloom filter, it means
+		 * the fraction of the contains() let through by the filter for
+		 * elements that were not present.
+		 *
+		 * @return the false positive rate, 0 if the filter has never let a
+		 *         contains() through.
+		 * @throws IllegalStateException
+		 *             if this set does not use a Bloom filter.
+		 */
+		public double bloomFalsePositiveRate() {
+			if (bloom == null)
+				throw new IllegalStateException("Error: this set does not use a Bloom filter");
+			long negatives = bloomNegatives + bloomFalsePositives;
+			return negatives == 0 ? 0 : (double) bloomFalsePositives / negatives;
+		}
+
+		/**
+		 * Returns the number of contains() answered by the Bloom filter
+		 * without visiting the tree.
+		 *
+		 * @return the number of misses answered by the filter.
+		 */
+		public long bloomNegatives() {
+			return bloomNegatives;
+		}
+
+		/**
+		 * Returns the number of contains() the Bloom filter let through to
+		 * the tree.
+		 *
+		 * @return the number of possible hits of the filter.
+		 */
+		public long bloomPositives() {
+			return bloomPositives;
+		}
+
+		/**
+		 * Returns the number of contains() the Bloom filter let through for
+		 * elements that were not present.
+		 *
+		 * @return the number of false positives of the filter.
+		 */
+		public long bloomFalsePositives() {
+			return bloomFalsePositives;
+		}
+
 		/**
 		 * Checks if this set contains all the elements of the specified
 		 * collection.
@@ -1171,7 +2836,7 @@ public class AVLTree<E extends Comparable<E>> {
 			 * the first element of this set that it is none other than the
 			 * minimum value of the tree.
 			 */
-			Node<T> node = super.getMin(super.root);
+			Node<T> node = super.primo();
 			while (iterator.hasNext()) {
 				boolean contains = false;
 				// Initializes a variable that takes the next element of the
@@ -1191,7 +2856,7 @@ public class AVLTree<E extends Comparable<E>> {
 					 * Compares the element of the specified collection with one
 					 * of this set.
 					 */
-					int x = ((T) object).compareTo(node.data);
+					int x = super.compara((T) object, node.data);
 					/*
 					 * If the element of the specified collection is smaller
 					 * than one of this set it means that the element is not
@@ -1212,7 +2877,7 @@ public class AVLTree<E extends Comparable<E>> {
 					 * successor.
 					 */
 					if (x > 0) {
-						node = super.getSuccessor(node.data);
+						node = super.successivo(node);
 
 					}
 					/*
@@ -1245,52 +2910,210 @@ public class AVLTree<E extends Comparable<E>> {
 		@SuppressWarnings("unchecked")
 		@Override
 		public boolean remove(Object o) {
-			boolean deleted = false;
-			// Simply call the remove method of the AVL tree class
-			deleted = removeNode((T) o);
-			if (deleted == true)
-				// Updates the number of elements
-				countNode--;
+			/*
+			 * The state of the set is updated with the element kept by the
+			 * set, that can be a different object equal to o for the
+			 * comparator.
+			 */
+			T removed;
+			if (maxTombstones > 0) {
+				if (o == null)
+					throw new IllegalArgumentException("Null elements not allowed!!!");
+				// With the lazy deletion the node is only marked.
+				Node<T> node = super.marca((T) o);
+				removed = node == null ? null : node.data;
+			} else {
+				// Simply call the remove method of the AVL tree class
+				removed = super.estrai((T) o);
+			}
+			if (removed != null)
+				rimosso(removed);
 
-			return deleted;
+			return removed != null;
 		}
 
 		/**
-		 * Removes from this set all of its elements that are contained in the
-		 * specified collection.
+		 * Removes an element and returns the instance kept by the set, that
+		 * can be a different object equal to el.
 		 * 
-		 * @param c
-		 *            the collection from which the element to remove are taken.
-		 * @return true if at least one element from this set was removed.
+		 * @param el
+		 *            the element to remove
+		 * @return the removed element, null if it was not present
 		 */
-		@SuppressWarnings("unchecked")
 		@Override
-		public boolean removeAll(Collection<?> c) {
-			if (c == null) {
-				return false;
-			}
-			if (c.isEmpty())
-				return false;
-			// Checks if this set and the collection contain the same elements.
-			// If so clear this set.
-			if (c.containsAll(this)) {
-				this.clear();
-				countNode = 0;
-				return true;
-			}
-
-			boolean removed = false;
-			// Variable to control at the end of the method if an element was
-			// removed.
-			int numberOfNodes = countNode;
-			// Initialize a variable that takes the iterator of the specified
-			// collection.
-			Iterator<?> iterator = c.iterator();
+		public T removeAndGet(T el) {
+			T removed;
+			if (maxTombstones > 0) {
+				if (el == null)
+					throw new IllegalArgumentException("Null elements not allowed!!!");
+				// The node found by the mark gives the element of the set.
+				AVLTree<T> tree = this;
+				Node<T> node = tree.marca(el);
+				removed = node == null ? null : node.data;
+			} else
+				removed = super.removeAndGet(el);
+			if (removed != null)
+				rimosso(removed);
+			return removed;
+		}
 
-			while (iterator.hasNext()) {
+		/** Updates the state of the set after the removal of an element. */
+		private void rimosso(T removed) {
+			// Updates the number of elements
+			countNode--;
+			hash -= removed.hashCode();
+			// The Bloom filter can't forget an element: it becomes stale.
+			bloomRemovals++;
+			if (feeds != null)
+				notifica(ChangeFeed.Change.Type.REMOVE, removed);
+			if (maxTombstones > 0 && super.tombstones > maxTombstones * (countNode + super.tombstones))
+				purge();
+		}
 
-				// Initializes a variable that takes the next element of the
-				// iterator as value.
+		/**
+		 * Enables the lazy deletion: remove() only marks the node of the
+		 * element as removed (tombstone), without extractions and rotations.
+		 * The searches, the iterators and size() ignore the tombstones, and
+		 * when they exceed the specified fraction of the nodes the tree is
+		 * rebuilt without them in a single linear pass, so the memory stays
+		 * bounded. Adding an element that is a tombstone simply restores it.
+		 * 
+		 * @param maxTombstoneFraction
+		 *            the maximum fraction of tombstones among the nodes,
+		 *            between 0 and 1 (excluded).
+		 */
+		public void enableLazyDeletion(double maxTombstoneFraction) {
+			if (!(maxTombstoneFraction > 0 && maxTombstoneFraction < 1))
+				throw new IllegalArgumentException("Invalid fraction: " + maxTombstoneFraction);
+			maxTombstones = maxTombstoneFraction;
+		}
+
+		/** Disables the lazy deletion, removing the tombstones. */
+		public void disableLazyDeletion() {
+			purge();
+			maxTombstones = 0;
+		}
+
+		/** Returns the number of tombstones inside the tree. */
+		public int tombstones() {
+			return super.tombstones;
+		}
+
+		/**
+		 * Removes all the tombstones, rebuilding a perfectly balanced tree
+		 * with the elements of this set.
+		 */
+		public void purge() {
+			if (super.tombstones > 0)
+				super.ricostruisci();
+		}
+
+		/** Removes all the elements from this set. */
+		@Override
+		public void clear() {
+			super.clear();
+			countNode = 0;
+			hash = 0;
+			if (bloom != null) {
+				bloom.clear();
+				bloomRemovals = 0;
+			}
+			if (feeds != null)
+				notifica(ChangeFeed.Change.Type.CLEAR, null);
+		}
+
+		/**
+		 * Subscribes a listener to the changes of this set: every insertion,
+		 * removal and clear() (also the ones made by addAll(), removeAll() and
+		 * retainAll()) is written in a bounded buffer and delivered in batches
+		 * by a thread of the subscription. The set must be modified by one
+		 * thread at a time.
+		 * 
+		 * @param listener
+		 *            receives the changes.
+		 * @param capacity
+		 *            the capacity of the buffer, rounded up to a power of two.
+		 * @param policy
+		 *            what happens when the buffer is full.
+		 * @return the subscription, to be closed when the changes are no
+		 *         longer needed.
+		 */
+		public synchronized ChangeFeed<T> subscribe(ChangeFeed.Listener<T> listener, int capacity,
+				ChangeFeed.Backpressure policy) {
+			ChangeFeed<T> feed = new ChangeFeed<T>(this, listener, capacity, policy);
+			ChangeFeed<?>[] old = feeds;
+			ChangeFeed<?>[] f = old == null ? new ChangeFeed<?>[1] : Arrays.copyOf(old, old.length + 1);
+			f[f.length - 1] = feed;
+			feeds = f;
+			return feed;
+		}
+
+		/**
+		 * Removes a subscription, called by ChangeFeed.close().
+		 * 
+		 * @param feed
+		 *            the subscription to remove.
+		 */
+		synchronized void unsubscribe(ChangeFeed<?> feed) {
+			ChangeFeed<?>[] old = feeds;
+			if (old == null)
+				return;
+			ChangeFeed<?>[] f = new ChangeFeed<?>[old.length - 1];
+			int n = 0;
+			for (ChangeFeed<?> x : old) {
+				if (x != feed) {
+					if (n == f.length)
+						return; // not subscribed
+					f[n++] = x;
+				}
+			}
+			feeds = n == 0 ? null : f;
+		}
+
+		/** Writes a change in the buffer of every subscription. */
+		private void notifica(ChangeFeed.Change.Type type, Object el) {
+			ChangeFeed<?>[] f = feeds;
+			if (f != null)
+				for (ChangeFeed<?> feed : f)
+					feed.publish(type, el);
+		}
+
+		/**
+		 * Removes from this set all of its elements that are contained in the
+		 * specified collection.
+		 * 
+		 * @param c
+		 *            the collection from which the element to remove are taken.
+		 * @return true if at least one element from this set was removed.
+		 */
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean removeAll(Collection<?> c) {
+			if (c == null) {
+				return false;
+			}
+			if (c.isEmpty())
+				return false;
+			// Checks if this set and the collection contain the same elements.
+			// If so clear this set.
+			if (c.containsAll(this)) {
+				this.clear();
+				countNode = 0;
+				return true;
+			}
+
+			boolean removed = false;
+			// Variable to control at the end of the method if an element was
+			// removed.
+			int numberOfNodes = countNode;
+			// Initialize a variable that takes the iterator of the specified
+			// collection.
+			Iterator<?> iterator = c.iterator();
+
+			while (iterator.hasNext()) {
+
+				// Initializes a variable that takes the next element of the
+				// iterator as value.
 				Object object = iterator.next();
 				/*
 				 * Controls if the elements' type of this set and the one the
@@ -1350,7 +3173,7 @@ public class AVLTree<E extends Comparable<E>> {
 			 * the first element of this set that it is none other than the
 			 * minimum value of the tree.
 			 */
-			Node<T> node = super.getMin(super.root);
+			Node<T> node = super.primo();
 			// Initializes a variable that takes the next element of the
 			// iterator as value.
 			Object object = iterator.next();
@@ -1367,7 +3190,7 @@ public class AVLTree<E extends Comparable<E>> {
 				 * the value of its successor.
 				 */
 				if (c.contains(node.data) == false) {
-					Node<T> succ = super.getSuccessor(node.data);
+					Node<T> succ = super.successivo(node);
 
 					removed = remove(node.data);
 					if (succ == null)
@@ -1375,7 +3198,7 @@ public class AVLTree<E extends Comparable<E>> {
 					node = succ;
 				} else {
 					// If yes it will assume the value of its successor.
-					node = super.getSuccessor(node.data);
+					node = super.successivo(node);
 				}
 
 			}
@@ -1392,29 +3215,92 @@ public class AVLTree<E extends Comparable<E>> {
 			return countNode;
 		}
 
+		/**
+		 * Compares this set with an object: they are equal if the object is a
+		 * set with the same elements. If the object is another sorted set
+		 * with an AVL tree and the same ordering, the two trees are visited
+		 * together in order, otherwise every element of the object is
+		 * searched in this set.
+		 * 
+		 * @param o
+		 *            the object to compare.
+		 * @return true if the object is a set with the same elements.
+		 */
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean equals(Object o) {
+			if (o == this)
+				return true;
+			if (!(o instanceof Set))
+				return false;
+			Set<?> set = (Set<?>) o;
+			if (set.size() != countNode)
+				return false;
+			try {
+				if (o instanceof mySortedSet && ((mySortedSet<T>) o).comparator() == comparator()) {
+					mySortedSet<T> other = (mySortedSet<T>) o;
+					/*
+					 * Sets with different hash codes can't be equal, unless a
+					 * comparator makes equal some different elements.
+					 */
+					if (other.hash != hash && comparator() == null)
+						return false;
+					AVLTree<T> tree = other;
+					Node<T> a = super.primo(), b = tree.primo();
+					while (a != null && b != null) {
+						if (super.compara(a.data, b.data) != 0)
+							return false;
+						a = super.successivo(a);
+						b = tree.successivo(b);
+					}
+					return a == null && b == null;
+				}
+				for (Object el : set) {
+					if (el == null || !contains(el))
+						return false;
+				}
+				return true;
+			} catch (ClassCastException e) {
+				// The elements of the other set are of a different type.
+				return false;
+			}
+		}
+
+		/**
+		 * Returns the hash code of this set, the sum of the hash codes of its
+		 * elements as required by the Set interface. It is updated by every
+		 * addition and removal, so it costs O(1).
+		 */
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		/**
+		 * Returns a read-only snapshot of this set. The snapshot stores the
+		 * elements in a flat array in Eytzinger order, so it takes a fraction
+		 * of the memory of the tree and its lookups are faster; later
+		 * changes of this set are not visible in the snapshot. The snapshot
+		 * uses the same ordering of this set.
+		 *
+		 * @return an immutable sorted set with the elements of this set.
+		 */
+		public FrozenSortedSet<T> freeze() {
+			return new FrozenSortedSet<T>(toArray(), countNode, getComparator());
+		}
+
 		/**
 		 * Allocates a new array with the same size( and same elements) of this
 		 * set.
 		 * 
 		 * @return a new array with the element of this set.
 		 */
-		@SuppressWarnings("unchecked")
 		@Override
 		public Object[] toArray() {
-			// creates a new array with the size of this set( even if this set
-			// is an array)
+			// creates a new array with the size of this set and fills it with
+			// an in-order visit of the tree.
 			Object[] arr = new Object[countNode];
-
-			Iterator<?> iterator = this.iterator();
-			int i = 0;
-			// The iterator flows the elements that are sequentially added
-			// inside the new array.
-			while (iterator.hasNext()) {
-				Object object = iterator.next();
-
-				arr[i] = (T) object;
-				i++;
-			}
+			super.riempi(super.root, arr, 0);
 
 			return arr;
 		}
@@ -1423,7 +3309,8 @@ public class AVLTree<E extends Comparable<E>> {
 		 * Return an array containing all of the elements of this set; if the
 		 * specified array in which the elements are to be stored is big enough
 		 * , it is returned; otherwise a new array is allocated with the same
-		 * size of this set.
+		 * size of this set. If the array is bigger than this set, the position
+		 * after the last element is set to null.
 		 * 
 		 * @param a
 		 *            the array in which the element are added.
@@ -1437,67 +3324,30 @@ public class AVLTree<E extends Comparable<E>> {
 		 * 
 		 *
 		 */
-		@SuppressWarnings("unchecked")
+		@SuppressWarnings({ "unchecked", "hiding" })
 		@Override
 		public <T> T[] toArray(T[] a) {
-			Iterator<?> iterator = this.iterator();
-			int i = 0;
-			if (a == null) {
+			if (a == null)
 				throw new IllegalArgumentException("Error: the parameter is null!!");
-			} else {
-				try {
-					// Checks if the specified array is big enough to contain
-					// the element of this set.
-					if (a.length < countNode) {
-						// if not the specified array will become a new array
-						// with the same type and the same size of this set
-						a = (T[]) Arrays.copyOf(a, countNode, a.getClass());
-						/*
-						 * The specified array can contains the desired
-						 * elements, so they are added sequentially until the
-						 * last position of the array is reached.
-						 */
-						while (iterator.hasNext()) {
-							if (a[i] == this.last()) {
-								break;
-							}
-							Object object = iterator.next();
-
-							a[i] = (T) object;
-							i++;
-						}
-						/*
-						 * If the specified array is big enough, simply add the
-						 * element. Null element are present inside the array if
-						 * it is bigger than this set.
-						 */
-					} else if (a.length == countNode || a.length > countNode) {
-						while (iterator.hasNext()) {
-							if (a[i] == this.last()) {
-								break;
-							}
-							Object object = iterator.next();
-
-							a[i] = (T) object;
-							i++;
-
-						}
-					}
-				} catch (Exception e) {
-					System.err.println("Operazione non valida, il tipo del set e dell'array non coincidono");
-					return null;
-				}
-			}
+			// Checks if the specified array is big enough to contain the
+			// element of this set, if not a new array of the same type is
+			// created.
+			if (a.length < countNode)
+				a = (T[]) Arrays.copyOf(a, countNode, a.getClass());
+			mySortedSet.super.riempi(mySortedSet.super.root, a, 0);
+			if (a.length > countNode)
+				a[countNode] = null;
 
 			return a;
 		}
 
-		/** Returns the comparator used in this set. */
+		/**
+		 * Returns the comparator used in this set, null if it uses the
+		 * natural ordering of the elements.
+		 */
 		@Override
 		public Comparator<? super T> comparator() {
-			// Since this set uses the natural ordering of the elements it
-			// simply returns null
-			return null;
+			return getComparator();
 		}
 
 		/**
@@ -1528,6 +3378,36 @@ public class AVLTree<E extends Comparable<E>> {
 			return maximum();
 		}
 
+		/**
+		 * Retrieves and removes the first (lowest) element, with a single
+		 * descent along the left side of the tree.
+		 * 
+		 * @return the first element, null if this set is empty.
+		 */
+		public T pollFirst() {
+			AVLTree<T> tree = this;
+			return prelevato(tree.estraiPrimo());
+		}
+
+		/**
+		 * Retrieves and removes the last (highest) element, with a single
+		 * descent along the right side of the tree.
+		 * 
+		 * @return the last element, null if this set is empty.
+		 */
+		public T pollLast() {
+			AVLTree<T> tree = this;
+			return prelevato(tree.estraiUltimo());
+		}
+
+		/** Updates the state of the set after the extraction of a node. */
+		private T prelevato(Node<T> node) {
+			if (node == null)
+				return null;
+			rimosso(node.data);
+			return node.data;
+		}
+
 		/**
 		 * Returns a view of the portion of this set whose elements are strictly
 		 * less than toElement. Note: the returned set is not backed by this set
@@ -1545,17 +3425,9 @@ public class AVLTree<E extends Comparable<E>> {
 			if (this.isEmpty() == true)
 				throw new NoSuchElementException("The set is empty");
 
-			mySortedSet<T> set = new mySortedSet<>();
-
-			Node<T> node = super.getMin(super.root);
-
-			int x = toElement.compareTo(node.data);
+			mySortedSet<T> set = new mySortedSet<T>(comparator());
 			// It simply add the elements until toElement is reached
-			while (x > 0) {
-				set.add(node.data);
-				node = getSuccessor(node.data);
-				x = toElement.compareTo(node.data);
-			}
+			forEachInRange(null, false, toElement, false, set::add);
 
 			return set;
 		}
@@ -1573,7 +3445,6 @@ public class AVLTree<E extends Comparable<E>> {
 		 * @return a view of the portion of this set whose elements range from
 		 *         fromElement, inclusive, to toElement, exclusive.
 		 */
-		@SuppressWarnings("unchecked")
 		@Override
 		public SortedSet<T> subSet(T fromElement, T toElement) {
 			// Checks the if the specified values are of the same type
@@ -1583,65 +3454,40 @@ public class AVLTree<E extends Comparable<E>> {
 			if (fromElement == null || toElement == null)
 				throw new NullPointerException("Null elements not allowed!!!");
 			// Checks if fromElement is grater than toElement
-			int y = fromElement.compareTo(toElement);
+			int y = super.compara(fromElement, toElement);
 			if (y > 0)
 				throw new IllegalArgumentException(
 						"Invalid values: the left value of the parameter must be lower than the right one");
 
-			mySortedSet<T> treeSet = new mySortedSet<>();
-
-			Iterator<?> iterator = this.iterator();
-
-			Object object = iterator.next();
-			// Compare fromElemet, that will be the low endpoint, with the
-			// current element of this set. The search continue until
-			// the value equals to fromElement or a greater value is reached.
-			int x = fromElement.compareTo((T) object);
-			while (x > 0) {
-				object = iterator.next();
-				x = fromElement.compareTo((T) object);
-			}
+			mySortedSet<T> treeSet = new mySortedSet<T>(comparator());
 			/*
-			 * When the desired low endpoint is reached compares the high
-			 * endpoint with the current element of this set.While the high
-			 * endpoint is not reached adds the element to the new sorted set
-			 * created.
+			 * The visit starts from fromElement (or the first greater value)
+			 * and adds the elements to the new sorted set until the high
+			 * endpoint is reached.
 			 */
-			x = toElement.compareTo((T) object);
-			while (x > 0) {
-				treeSet.add((T) object);
-				object = iterator.next();
-				x = toElement.compareTo((T) object);
-			}
+			forEachInRange(fromElement, true, toElement, false, treeSet::add);
 
 			return treeSet;
 
 		}
 
-		/***/
-		@SuppressWarnings("unchecked")
+		/**
+		 * Returns a view of the portion of this set whose elements are greater
+		 * than or equal to fromElement. Note: the returned set is not backed
+		 * by this set (as the original method says).
+		 * 
+		 * @param fromElement
+		 *            low endpoint (inclusive) of the returned set.
+		 * @return a view of the portion of this set whose elements are greater
+		 *         than or equal to fromElement.
+		 */
 		@Override
 		public SortedSet<T> tailSet(T fromElement) {
 			if (fromElement == null)
 				throw new IllegalArgumentException("Null elements not allowed!!!");
-			// Iterator<?> iterator = this.iterator();
-
-			mySortedSet<T> treeSet = new mySortedSet<>();
-			Iterator<?> iterator = this.iterator();
-			Object object = iterator.next();
-			int x = fromElement.compareTo((T) object);
-			// treeSet = this;
 
-			while (x > 0) {
-				object = iterator.next();
-				x = fromElement.compareTo((T) object);
-			}
-			while (iterator.hasNext()) {
-				treeSet.add((T) object);
-				object = iterator.next();
-				if (!iterator.hasNext())
-					treeSet.add((T) object);
-			}
+			mySortedSet<T> treeSet = new mySortedSet<T>(comparator());
+			forEachInRange(fromElement, true, null, false, treeSet::add);
 
 			return treeSet;
 
@@ -1669,9 +3515,16 @@ public class AVLTree<E extends Comparable<E>> {
 				// element
 				while (next.leftChild != null)
 					next = next.leftChild;
+				saltaCancellati();
 
 			}
 
+			/** Skips the tombstones left by the lazy deletion. */
+			private void saltaCancellati() {
+				if (next != null && occorrenze(next) == 0)
+					next = mySortedSet.super.successivo(next);
+			}
+
 			/**
 			 * Checks for the next element of the iterator; It aims to the
 			 * first(lowest) element at the beginning.
@@ -1709,6 +3562,7 @@ public class AVLTree<E extends Comparable<E>> {
 					 */
 					while (next.leftChild != null)
 						next = next.leftChild;
+					saltaCancellati();
 					return r.data;
 				}
 				// This cycle climbs the tree
@@ -1731,6 +3585,7 @@ public class AVLTree<E extends Comparable<E>> {
 
 					if (next.parent.leftChild == next) {
 						next = next.parent;
+						saltaCancellati();
 						return r.data;
 					}
 
@@ -1747,6 +3602,2062 @@ public class AVLTree<E extends Comparable<E>> {
 		}
 
 	}
+
+	/**
+	 * Multiset (bag) that uses an AVL tree as data structure: an element can
+	 * be added more than once. Every node keeps the number of occurrences of
+	 * its element, so the memory grows with the number of distinct elements
+	 * and not with the number of additions. The iterator returns the elements
+	 * in ascending order, every element as many times as it occurs.
+	 */
+	public static class mySortedMultiset<T extends Comparable<T>> extends AVLTree<T> implements Collection<T> {
+
+		/** Constructs an empty multiset with an AVL tree as data structure */
+		public mySortedMultiset() {
+			super();
+			super.multiset = true;
+		}
+
+		/**
+		 * Constructs an empty multiset ordered by the specified comparator.
+		 * 
+		 * @param comparator
+		 *            the ordering of the elements, null for the natural
+		 *            ordering.
+		 */
+		public mySortedMultiset(Comparator<? super T> comparator) {
+			super(comparator);
+			super.multiset = true;
+		}
+
+		/** Creates a node that counts the occurrences of its element. */
+		@Override
+		Node<T> creaNodo(T el) {
+			return new SizeNode<T>(el);
+		}
+
+		/**
+		 * Adds an occurrence of an element; if the element is already present
+		 * its number of occurrences is incremented in the same descent.
+		 * 
+		 * @param el
+		 *            the element to add.
+		 * @return always true, since the multiset is always modified.
+		 * @throws IllegalArgumentException
+		 *             if the element is null.
+		 */
+		@Override
+		public boolean add(T el) {
+			if (el == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			return insert(el);
+		}
+
+		/**
+		 * Returns the number of occurrences of an element.
+		 * 
+		 * @param o
+		 *            the element to search.
+		 * @return the number of occurrences, 0 if the element is not present.
+		 */
+		@SuppressWarnings("unchecked")
+		public int count(Object o) {
+			if (o == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			Node<T> node = super.trovaNodo((T) o);
+			return node == null ? 0 : occorrenze(node);
+		}
+
+		/**
+		 * Removes an occurrence of an element: its number of occurrences is
+		 * decremented and the node is deleted only when it reaches zero.
+		 * 
+		 * @param o
+		 *            the element to remove.
+		 * @return true if an occurrence was removed, false if the element is
+		 *         not present.
+		 */
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean remove(Object o) {
+			if (o == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			T el = (T) o;
+			Node<T> node = super.trovaNodo(el);
+			if (node == null) {
+				if (super.metrics != null)
+					super.metrics.misses.increment();
+				return false;
+			}
+			if (occorrenze(node) == 1)
+				return removeNode(el);
+			/*
+			 * The node stays: its occurrences and the size of the nodes on the
+			 * path to the root, climbed through the parents, are decremented.
+			 */
+			((SizeNode<T>) node).count--;
+			for (Node<T> n = node; n != null; n = n.parent)
+				((SizeNode<T>) n).size--;
+			if (super.metrics != null)
+				super.metrics.removes.increment();
+			return true;
+		}
+
+		/**
+		 * Returns the number of elements of the multiset, the occurrences
+		 * included.
+		 */
+		@Override
+		public int size() {
+			return super.dimensione(super.root);
+		}
+
+		/** Returns the number of distinct elements of the multiset. */
+		public int distinctSize() {
+			int n = 0;
+			for (Node<T> node = super.primo(); node != null; node = super.successivo(node))
+				n++;
+			return n;
+		}
+
+		/**
+		 * Searches for the specified element.
+		 * 
+		 * @param o
+		 *            the element to search.
+		 * @return true if the element is present at least once.
+		 */
+		@Override
+		public boolean contains(Object o) {
+			return count(o) > 0;
+		}
+
+		/**
+		 * Checks if the multiset contains all the elements of the specified
+		 * collection.
+		 * 
+		 * @param c
+		 *            the collection that contains the elements to search.
+		 * @return true if every element of c is present at least once.
+		 */
+		@Override
+		public boolean containsAll(Collection<?> c) {
+			for (Object o : c) {
+				if (!contains(o))
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Adds an occurrence of every element of the specified collection.
+		 * 
+		 * @param c
+		 *            the collection from which the elements are taken.
+		 * @return true if the multiset has been modified.
+		 */
+		@Override
+		public boolean addAll(Collection<? extends T> c) {
+			boolean added = false;
+			for (T el : c)
+				added |= add(el);
+			return added;
+		}
+
+		/**
+		 * Removes all the occurrences of the elements of the specified
+		 * collection.
+		 * 
+		 * @param c
+		 *            the collection with the elements to remove.
+		 * @return true if at least one element was removed.
+		 */
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean removeAll(Collection<?> c) {
+			boolean removed = false;
+			for (Object o : c) {
+				if (count(o) > 0)
+					removed |= removeNode((T) o);
+			}
+			return removed;
+		}
+
+		/**
+		 * Removes all the occurrences of the elements that are not contained
+		 * in the specified collection.
+		 * 
+		 * @param c
+		 *            the collection with the elements to retain.
+		 * @return true if at least one element was removed.
+		 */
+		@Override
+		public boolean retainAll(Collection<?> c) {
+			// The elements are collected first: the tree can't be modified
+			// while it is visited.
+			ArrayList<T> toRemove = new ArrayList<T>();
+			for (Node<T> node = super.primo(); node != null; node = super.successivo(node)) {
+				if (!c.contains(node.data))
+					toRemove.add(node.data);
+			}
+			for (T el : toRemove)
+				removeNode(el);
+			return !toRemove.isEmpty();
+		}
+
+		/**
+		 * Define an iterator to run(in order) the elements, every element as
+		 * many times as it occurs.
+		 */
+		@Override
+		public Iterator<T> iterator() {
+			return new Iterator<T>() {
+				/** Node of the next element. */
+				private Node<T> next = mySortedMultiset.super.primo();
+				/** Occurrences of next already returned. */
+				private int returned;
+
+				public boolean hasNext() {
+					return next != null;
+				}
+
+				public T next() {
+					if (next == null)
+						throw new NoSuchElementException();
+					T el = next.data;
+					if (++returned == occorrenze(next)) {
+						next = mySortedMultiset.super.successivo(next);
+						returned = 0;
+					}
+					return el;
+				}
+			};
+		}
+
+		/**
+		 * Returns an array with the elements of the multiset, in order and
+		 * with their occurrences.
+		 * 
+		 * @return a new array with the elements.
+		 */
+		@Override
+		public Object[] toArray() {
+			Object[] arr = new Object[size()];
+			super.riempi(super.root, arr, 0);
+			return arr;
+		}
+
+		/**
+		 * Returns an array with the elements of the multiset, in order and
+		 * with their occurrences, using the specified array if it is big
+		 * enough.
+		 * 
+		 * @param a
+		 *            the array in which the elements are stored.
+		 * @return an array with the elements.
+		 */
+		@SuppressWarnings({ "unchecked", "hiding" })
+		@Override
+		public <T> T[] toArray(T[] a) {
+			int n = size();
+			if (a.length < n)
+				a = (T[]) Arrays.copyOf(a, n, a.getClass());
+			mySortedMultiset.super.riempi(mySortedMultiset.super.root, a, 0);
+			if (a.length > n)
+				a[n] = null;
+			return a;
+		}
+
+	}
+
+
+	/**
+	 * Sorted map that uses an AVL tree as data structure: the keys are the
+	 * elements of the tree and every node keeps the value associated to its
+	 * key. get, put, remove, computeIfAbsent and merge go down the tree only
+	 * once, and the entries of the map are the nodes themselves, so the entry
+	 * iterators don't create any object except the iterator. The key sets and
+	 * the descending map are live views of the map.
+	 * <p>
+	 * Unlike the NavigableMap contract, subMap, headMap and tailMap return
+	 * snapshots, as subSet, headSet and tailSet of the sorted set: they are new
+	 * maps with the entries in the range at the time of the call. The changes
+	 * made through them don't reach this map, and the later changes of this
+	 * map don't reach them.
+	 */
+	public static class AVLTreeMap<K extends Comparable<K>, V> extends AbstractMap<K, V>
+			implements NavigableMap<K, V> {
+
+		/** Tree with the keys, every node has the value of its key. */
+		private final AVLTree<K> tree;
+
+		/** Live view of the entries, created at the first request. */
+		private Set<Map.Entry<K, V>> entrySet;
+		/** Live view of the keys, created at the first request. */
+		private NavigableSet<K> navigableKeySet;
+		/** Live view in descending order, created at the first request. */
+		private NavigableMap<K, V> descendingMap;
+
+		/** Constructs an empty map with an AVL tree as data structure */
+		public AVLTreeMap() {
+			this((Comparator<? super K>) null);
+		}
+
+		/**
+		 * Constructs an empty map whose keys are ordered by the specified
+		 * comparator.
+		 *
+		 * @param comparator
+		 *            the ordering of the keys, null for the natural ordering.
+		 */
+		public AVLTreeMap(Comparator<? super K> comparator) {
+			tree = new AVLTree<K>(comparator) {
+				// Every node keeps the value of its key.
+				@Override
+				Node<K> creaNodo(K el) {
+					return new MapNode<K>(el);
+				}
+			};
+			tree.upsert = true;
+		}
+
+		/**
+		 * Constructs a map with the same entries of the specified one.
+		 *
+		 * @param m
+		 *            the map whose entries are copied.
+		 */
+		public AVLTreeMap(Map<? extends K, ? extends V> m) {
+			this();
+			putAll(m);
+		}
+
+		/**
+		 * Enables the operation counters of the tree of this map.
+		 *
+		 * @param name
+		 *            the name of the map, it must be unique among the trees
+		 *            with enabled metrics.
+		 * @return the counters of the tree.
+		 * @see AVLTree#enableMetrics(String)
+		 */
+		public AVLTreeMetrics enableMetrics(String name) {
+			return tree.enableMetrics(name);
+		}
+
+		/** Disables the operation counters of the tree of this map. */
+		public void disableMetrics() {
+			tree.disableMetrics();
+		}
+
+		/** Checks that a key is not null and returns it with its type. */
+		@SuppressWarnings("unchecked")
+		private static <K> K chiave(Object key) {
+			if (key == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			return (K) key;
+		}
+
+		/** Returns a node of the tree as an entry of the map. */
+		@SuppressWarnings("unchecked")
+		private Map.Entry<K, V> entry(Node<K> node) {
+			return (Map.Entry<K, V>) (Map.Entry<K, ?>) (MapNode<K>) node;
+		}
+
+		/** Returns the value of a node, null if the node is null. */
+		@SuppressWarnings("unchecked")
+		private static <V> V valore(Node<?> node) {
+			return node == null ? null : (V) ((MapNode<?>) node).value;
+		}
+
+		/**
+		 * Inserts a key, or finds it if it is already present, with a single
+		 * descent of the tree.
+		 *
+		 * @return the node of the key.
+		 */
+		private MapNode<K> nodo(K key) {
+			return (MapNode<K>) tree.inserisciOTrova(chiave(key));
+		}
+
+		/** Returns the key of a node, null if the node is null. */
+		private K key(Node<K> node) {
+			return node == null ? null : node.data;
+		}
+
+		/**
+		 * Returns the key of a node.
+		 *
+		 * @throws NoSuchElementException
+		 *             if the node is null, that is the map is empty.
+		 */
+		private K keyOrThrow(Node<K> node) {
+			if (node == null)
+				throw new NoSuchElementException("The map is empty");
+			return node.data;
+		}
+
+		/** Returns the number of the keys inside the map. */
+		@Override
+		public int size() {
+			return tree.dimensione(tree.root);
+		}
+
+		/** Checks if the map is empty. */
+		@Override
+		public boolean isEmpty() {
+			return tree.root == null;
+		}
+
+		/** Removes all the entries from this map. */
+		@Override
+		public void clear() {
+			tree.clear();
+		}
+
+		/**
+		 * Checks if the map contains the specified key.
+		 *
+		 * @param key
+		 *            the key to search.
+		 * @return true if the key is present.
+		 */
+		@Override
+		public boolean containsKey(Object key) {
+			return tree.trovaNodo(AVLTreeMap.<K> chiave(key)) != null;
+		}
+
+		/**
+		 * Returns the value associated to the specified key.
+		 *
+		 * @param key
+		 *            the key to search.
+		 * @return the value of the key, null if the key is not present.
+		 */
+		@Override
+		public V get(Object key) {
+			return valore(tree.trovaNodo(AVLTreeMap.<K> chiave(key)));
+		}
+
+		/**
+		 * Associates a value to a key, replacing the old value if the key is
+		 * already present.
+		 *
+		 * @param key
+		 *            the key.
+		 * @param value
+		 *            the value to associate to the key.
+		 * @return the old value of the key, null if the key was not present.
+		 */
+		@Override
+		public V put(K key, V value) {
+			MapNode<K> node = nodo(key);
+			V old = valore(node);
+			node.value = value;
+			return old;
+		}
+
+		/**
+		 * Removes a key and its value.
+		 *
+		 * @param key
+		 *            the key to remove.
+		 * @return the value of the key, null if the key was not present.
+		 */
+		@SuppressWarnings("unchecked")
+		@Override
+		public V remove(Object key) {
+			if (tree.removeAndGet(AVLTreeMap.<K> chiave(key)) == null)
+				return null;
+			// The value is saved by the extraction, in the same descent.
+			V old = (V) tree.valoreEstratto;
+			tree.valoreEstratto = null;
+			return old;
+		}
+
+		/**
+		 * Returns the value of a key, computing and inserting it if the key is
+		 * not present (or it has a null value). The key is inserted and found
+		 * with a single descent of the tree.
+		 *
+		 * @param key
+		 *            the key.
+		 * @param mappingFunction
+		 *            the function that computes the value of the key.
+		 * @return the value of the key, null if the computed value is null.
+		 */
+		@Override
+		public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+			if (mappingFunction == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			int before = size();
+			MapNode<K> node = nodo(key);
+			if (node.value != null)
+				return valore(node);
+			V value;
+			try {
+				value = mappingFunction.apply(key);
+			} catch (RuntimeException | Error e) {
+				// The key inserted for the computation is taken away.
+				if (size() != before)
+					tree.removeAndGet(key);
+				throw e;
+			}
+			if (value == null) {
+				if (size() != before)
+					tree.removeAndGet(key);
+				return null;
+			}
+			node.value = value;
+			return value;
+		}
+
+		/**
+		 * Associates a value to a key if the key is not present (or it has a
+		 * null value), otherwise it replaces the value with the result of the
+		 * function. The key is inserted and found with a single descent of the
+		 * tree.
+		 *
+		 * @param key
+		 *            the key.
+		 * @param value
+		 *            the value to associate or to combine with the old one.
+		 * @param remappingFunction
+		 *            the function that combines the old value and value.
+		 * @return the new value of the key, null if the key has been removed.
+		 */
+		@Override
+		public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+			if (value == null || remappingFunction == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			MapNode<K> node = nodo(key);
+			V old = valore(node);
+			V result = old == null ? value : remappingFunction.apply(old, value);
+			if (result == null) {
+				tree.removeAndGet(key);
+				return null;
+			}
+			node.value = result;
+			return result;
+		}
+
+		/**
+		 * Returns the comparator used in this map, null if it uses the natural
+		 * ordering of the keys.
+		 */
+		@Override
+		public Comparator<? super K> comparator() {
+			return tree.getComparator();
+		}
+
+		/**
+		 * Returns the first (lowest) key currently in this map.
+		 *
+		 * @throws NoSuchElementException
+		 *             if this map is empty.
+		 */
+		@Override
+		public K firstKey() {
+			return keyOrThrow(tree.primo());
+		}
+
+		/**
+		 * Returns the last (highest) key currently in this map.
+		 *
+		 * @throws NoSuchElementException
+		 *             if this map is empty.
+		 */
+		@Override
+		public K lastKey() {
+			return keyOrThrow(tree.ultimo());
+		}
+
+		@Override
+		public Map.Entry<K, V> firstEntry() {
+			return entry(tree.primo());
+		}
+
+		@Override
+		public Map.Entry<K, V> lastEntry() {
+			return entry(tree.ultimo());
+		}
+
+		/**
+		 * Removes and returns the entry with the lowest key.
+		 *
+		 * @return the removed entry, null if the map is empty.
+		 */
+		@Override
+		public Map.Entry<K, V> pollFirstEntry() {
+			return estratta(tree.estraiPrimo());
+		}
+
+		/**
+		 * Removes and returns the entry with the highest key.
+		 *
+		 * @return the removed entry, null if the map is empty.
+		 */
+		@Override
+		public Map.Entry<K, V> pollLastEntry() {
+			return estratta(tree.estraiUltimo());
+		}
+
+		/**
+		 * Returns a copy of the entry of a node removed from the tree, null if
+		 * the tree was empty.
+		 */
+		private Map.Entry<K, V> estratta(Node<K> node) {
+			if (node == null)
+				return null;
+			tree.valoreEstratto = null;
+			return new AbstractMap.SimpleImmutableEntry<K, V>(node.data, AVLTreeMap.<V> valore(node));
+		}
+
+		@Override
+		public Map.Entry<K, V> lowerEntry(K key) {
+			return entry(tree.inferiore(chiave(key), false));
+		}
+
+		@Override
+		public K lowerKey(K key) {
+			return key(tree.inferiore(chiave(key), false));
+		}
+
+		@Override
+		public Map.Entry<K, V> floorEntry(K key) {
+			return entry(tree.inferiore(chiave(key), true));
+		}
+
+		@Override
+		public K floorKey(K key) {
+			return key(tree.inferiore(chiave(key), true));
+		}
+
+		@Override
+		public Map.Entry<K, V> ceilingEntry(K key) {
+			return entry(tree.superiore(chiave(key), true));
+		}
+
+		@Override
+		public K ceilingKey(K key) {
+			return key(tree.superiore(chiave(key), true));
+		}
+
+		@Override
+		public Map.Entry<K, V> higherEntry(K key) {
+			return entry(tree.superiore(chiave(key), false));
+		}
+
+		@Override
+		public K higherKey(K key) {
+			return key(tree.superiore(chiave(key), false));
+		}
+
+		/**
+		 * Returns a live view of the entries of the map, in ascending order of
+		 * the keys. The entries are the nodes of the tree.
+		 */
+		@Override
+		public Set<Map.Entry<K, V>> entrySet() {
+			if (entrySet == null) {
+				entrySet = new AbstractSet<Map.Entry<K, V>>() {
+					@Override
+					public Iterator<Map.Entry<K, V>> iterator() {
+						return new EntryIterator(false);
+					}
+
+					@Override
+					public int size() {
+						return AVLTreeMap.this.size();
+					}
+
+					@Override
+					public void clear() {
+						AVLTreeMap.this.clear();
+					}
+
+					@Override
+					public boolean contains(Object o) {
+						if (!(o instanceof Map.Entry))
+							return false;
+						Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+						if (e.getKey() == null)
+							return false;
+						Node<K> node = tree.trovaNodo(AVLTreeMap.<K> chiave(e.getKey()));
+						return node != null && Objects.equals(valore(node), e.getValue());
+					}
+
+					@Override
+					public boolean remove(Object o) {
+						if (!contains(o))
+							return false;
+						AVLTreeMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+						return true;
+					}
+				};
+			}
+			return entrySet;
+		}
+
+		/** Iterator over the nodes of the tree, in ascending or descending order. */
+		private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+			/** True if the nodes are visited in descending order. */
+			private final boolean descending;
+			/** Node of the next entry. */
+			private Node<K> next;
+			/** Node of the last entry returned, null after a remove. */
+			private Node<K> last;
+
+			EntryIterator(boolean descending) {
+				this.descending = descending;
+				this.next = descending ? tree.ultimo() : tree.primo();
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public Map.Entry<K, V> next() {
+				if (next == null)
+					throw new NoSuchElementException();
+				last = next;
+				next = descending ? tree.precedente(next) : tree.successivo(next);
+				return entry(last);
+			}
+
+			/** Removes the last entry returned. */
+			@Override
+			public void remove() {
+				if (last == null)
+					throw new IllegalStateException();
+				tree.removeAndGet(last.data);
+				last = null;
+			}
+		}
+
+		/**
+		 * Copies the entries with the keys between two bounds in a new map.
+		 *
+		 * @param lo
+		 *            the low bound, null if not bounded.
+		 * @param loInclusive
+		 *            true if lo is included.
+		 * @param hi
+		 *            the high bound, null if not bounded.
+		 * @param hiInclusive
+		 *            true if hi is included.
+		 * @return a new map with the entries of the range.
+		 */
+		private AVLTreeMap<K, V> copiaRange(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+			if (lo != null && hi != null && tree.compara(lo, hi) > 0)
+				throw new IllegalArgumentException(
+						"Invalid values: the left value of the parameter must be lower than the right one");
+			AVLTreeMap<K, V> map = new AVLTreeMap<K, V>(comparator());
+			Node<K> node = lo == null ? tree.primo() : tree.superiore(lo, loInclusive);
+			for (; node != null; node = tree.successivo(node)) {
+				if (hi != null) {
+					int x = tree.compara(node.data, hi);
+					if (x > 0 || (x == 0 && !hiInclusive))
+						break;
+				}
+				map.nodo(node.data).value = valore(node);
+			}
+			return map;
+		}
+
+		/** Returns a snapshot of the entries between the keys, not a view. */
+		@Override
+		public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+			return copiaRange(chiave(fromKey), fromInclusive, chiave(toKey), toInclusive);
+		}
+
+		/** Returns a snapshot of the entries before the key, not a view. */
+		@Override
+		public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+			return copiaRange(null, false, chiave(toKey), inclusive);
+		}
+
+		/** Returns a snapshot of the entries from the key on, not a view. */
+		@Override
+		public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+			return copiaRange(chiave(fromKey), inclusive, null, false);
+		}
+
+		@Override
+		public SortedMap<K, V> subMap(K fromKey, K toKey) {
+			return subMap(fromKey, true, toKey, false);
+		}
+
+		@Override
+		public SortedMap<K, V> headMap(K toKey) {
+			return headMap(toKey, false);
+		}
+
+		@Override
+		public SortedMap<K, V> tailMap(K fromKey) {
+			return tailMap(fromKey, true);
+		}
+
+		/**
+		 * Returns a live view of the map in descending order of the keys:
+		 * the changes of the view are changes of this map and vice versa.
+		 */
+		@Override
+		public NavigableMap<K, V> descendingMap() {
+			if (descendingMap == null)
+				descendingMap = new DescendingMap();
+			return descendingMap;
+		}
+
+		/**
+		 * Returns a live view of the keys of the map: removing a key from
+		 * the view removes its entry from this map.
+		 */
+		@Override
+		public NavigableSet<K> navigableKeySet() {
+			if (navigableKeySet == null)
+				navigableKeySet = new KeySet<K>(this);
+			return navigableKeySet;
+		}
+
+		@Override
+		public Set<K> keySet() {
+			return navigableKeySet();
+		}
+
+		/** Returns a live view of the keys of the map, in descending order. */
+		@Override
+		public NavigableSet<K> descendingKeySet() {
+			return descendingMap().navigableKeySet();
+		}
+
+		/**
+		 * View of the map in descending order: every operation is the
+		 * opposite one of the map, so lowerEntry() is higherEntry(), the
+		 * first entry is the last one and so on. As in the map, the sub-maps
+		 * are copies.
+		 */
+		private class DescendingMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+			/** Live view of the entries, created at the first request. */
+			private Set<Map.Entry<K, V>> entrySet;
+			/** Live view of the keys, created at the first request. */
+			private NavigableSet<K> keySet;
+
+			@Override
+			public int size() {
+				return AVLTreeMap.this.size();
+			}
+
+			@Override
+			public boolean isEmpty() {
+				return AVLTreeMap.this.isEmpty();
+			}
+
+			@Override
+			public void clear() {
+				AVLTreeMap.this.clear();
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return AVLTreeMap.this.containsKey(key);
+			}
+
+			@Override
+			public V get(Object key) {
+				return AVLTreeMap.this.get(key);
+			}
+
+			@Override
+			public V put(K key, V value) {
+				return AVLTreeMap.this.put(key, value);
+			}
+
+			@Override
+			public V remove(Object key) {
+				return AVLTreeMap.this.remove(key);
+			}
+
+			@Override
+			public Comparator<? super K> comparator() {
+				return Collections.reverseOrder(AVLTreeMap.this.comparator());
+			}
+
+			@Override
+			public K firstKey() {
+				return AVLTreeMap.this.lastKey();
+			}
+
+			@Override
+			public K lastKey() {
+				return AVLTreeMap.this.firstKey();
+			}
+
+			@Override
+			public Map.Entry<K, V> firstEntry() {
+				return AVLTreeMap.this.lastEntry();
+			}
+
+			@Override
+			public Map.Entry<K, V> lastEntry() {
+				return AVLTreeMap.this.firstEntry();
+			}
+
+			@Override
+			public Map.Entry<K, V> pollFirstEntry() {
+				return AVLTreeMap.this.pollLastEntry();
+			}
+
+			@Override
+			public Map.Entry<K, V> pollLastEntry() {
+				return AVLTreeMap.this.pollFirstEntry();
+			}
+
+			@Override
+			public Map.Entry<K, V> lowerEntry(K key) {
+				return AVLTreeMap.this.higherEntry(key);
+			}
+
+			@Override
+			public K lowerKey(K key) {
+				return AVLTreeMap.this.higherKey(key);
+			}
+
+			@Override
+			public Map.Entry<K, V> floorEntry(K key) {
+				return AVLTreeMap.this.ceilingEntry(key);
+			}
+
+			@Override
+			public K floorKey(K key) {
+				return AVLTreeMap.this.ceilingKey(key);
+			}
+
+			@Override
+			public Map.Entry<K, V> ceilingEntry(K key) {
+				return AVLTreeMap.this.floorEntry(key);
+			}
+
+			@Override
+			public K ceilingKey(K key) {
+				return AVLTreeMap.this.floorKey(key);
+			}
+
+			@Override
+			public Map.Entry<K, V> higherEntry(K key) {
+				return AVLTreeMap.this.lowerEntry(key);
+			}
+
+			@Override
+			public K higherKey(K key) {
+				return AVLTreeMap.this.lowerKey(key);
+			}
+
+			/** Returns a live view of the entries, in descending order. */
+			@Override
+			public Set<Map.Entry<K, V>> entrySet() {
+				if (entrySet == null) {
+					entrySet = new AbstractSet<Map.Entry<K, V>>() {
+						@Override
+						public Iterator<Map.Entry<K, V>> iterator() {
+							return new EntryIterator(true);
+						}
+
+						@Override
+						public int size() {
+							return AVLTreeMap.this.size();
+						}
+
+						@Override
+						public void clear() {
+							AVLTreeMap.this.clear();
+						}
+
+						@Override
+						public boolean contains(Object o) {
+							return AVLTreeMap.this.entrySet().contains(o);
+						}
+
+						@Override
+						public boolean remove(Object o) {
+							return AVLTreeMap.this.entrySet().remove(o);
+						}
+					};
+				}
+				return entrySet;
+			}
+
+			@Override
+			public NavigableSet<K> navigableKeySet() {
+				if (keySet == null)
+					keySet = new KeySet<K>(this);
+				return keySet;
+			}
+
+			@Override
+			public Set<K> keySet() {
+				return navigableKeySet();
+			}
+
+			@Override
+			public NavigableSet<K> descendingKeySet() {
+				return AVLTreeMap.this.navigableKeySet();
+			}
+
+			@Override
+			public NavigableMap<K, V> descendingMap() {
+				return AVLTreeMap.this;
+			}
+
+			@Override
+			public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+				return AVLTreeMap.this.subMap(toKey, toInclusive, fromKey, fromInclusive).descendingMap();
+			}
+
+			@Override
+			public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+				return AVLTreeMap.this.tailMap(toKey, inclusive).descendingMap();
+			}
+
+			@Override
+			public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+				return AVLTreeMap.this.headMap(fromKey, inclusive).descendingMap();
+			}
+
+			@Override
+			public SortedMap<K, V> subMap(K fromKey, K toKey) {
+				return subMap(fromKey, true, toKey, false);
+			}
+
+			@Override
+			public SortedMap<K, V> headMap(K toKey) {
+				return headMap(toKey, false);
+			}
+
+			@Override
+			public SortedMap<K, V> tailMap(K fromKey) {
+				return tailMap(fromKey, true);
+			}
+		}
+
+		/**
+		 * Live view of the keys of a map, ascending or descending: every
+		 * operation is answered by the map. As in the map, the subsets are
+		 * copies.
+		 */
+		private static class KeySet<K> extends AbstractSet<K> implements NavigableSet<K> {
+
+			/** The map whose keys are in the view. */
+			private final NavigableMap<K, ?> map;
+
+			KeySet(NavigableMap<K, ?> map) {
+				this.map = map;
+			}
+
+			@Override
+			public Iterator<K> iterator() {
+				final Iterator<? extends Map.Entry<K, ?>> entries = map.entrySet().iterator();
+				return new Iterator<K>() {
+					@Override
+					public boolean hasNext() {
+						return entries.hasNext();
+					}
+
+					@Override
+					public K next() {
+						return entries.next().getKey();
+					}
+
+					@Override
+					public void remove() {
+						entries.remove();
+					}
+				};
+			}
+
+			@Override
+			public Iterator<K> descendingIterator() {
+				return descendingSet().iterator();
+			}
+
+			@Override
+			public int size() {
+				return map.size();
+			}
+
+			@Override
+			public boolean isEmpty() {
+				return map.isEmpty();
+			}
+
+			@Override
+			public void clear() {
+				map.clear();
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return map.containsKey(o);
+			}
+
+			@Override
+			public boolean remove(Object o) {
+				if (!map.containsKey(o))
+					return false;
+				map.remove(o);
+				return true;
+			}
+
+			/** The keys can be added only through the map. */
+			@Override
+			public boolean add(K key) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Comparator<? super K> comparator() {
+				return map.comparator();
+			}
+
+			@Override
+			public K first() {
+				return map.firstKey();
+			}
+
+			@Override
+			public K last() {
+				return map.lastKey();
+			}
+
+			@Override
+			public K lower(K key) {
+				return map.lowerKey(key);
+			}
+
+			@Override
+			public K floor(K key) {
+				return map.floorKey(key);
+			}
+
+			@Override
+			public K ceiling(K key) {
+				return map.ceilingKey(key);
+			}
+
+			@Override
+			public K higher(K key) {
+				return map.higherKey(key);
+			}
+
+			@Override
+			public K pollFirst() {
+				Map.Entry<K, ?> e = map.pollFirstEntry();
+				return e == null ? null : e.getKey();
+			}
+
+			@Override
+			public K pollLast() {
+				Map.Entry<K, ?> e = map.pollLastEntry();
+				return e == null ? null : e.getKey();
+			}
+
+			@Override
+			public NavigableSet<K> descendingSet() {
+				return map.descendingKeySet();
+			}
+
+			@Override
+			public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+				return map.subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+			}
+
+			@Override
+			public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+				return map.headMap(toElement, inclusive).navigableKeySet();
+			}
+
+			@Override
+			public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+				return map.tailMap(fromElement, inclusive).navigableKeySet();
+			}
+
+			@Override
+			public SortedSet<K> subSet(K fromElement, K toElement) {
+				return subSet(fromElement, true, toElement, false);
+			}
+
+			@Override
+			public SortedSet<K> headSet(K toElement) {
+				return headSet(toElement, false);
+			}
+
+			@Override
+			public SortedSet<K> tailSet(K fromElement) {
+				return tailSet(fromElement, true);
+			}
+		}
+
+	}
+
+
+	/**
+	 * Interval tree: a sorted set of intervals, ordered by start, in which
+	 * every node keeps the maximum end of the intervals of its subtree. The
+	 * maximum is the aggregate of a monoid, so it is kept updated by the
+	 * rotations and the extractions like the size of the subtrees. The
+	 * overlapping() queries skip the subtrees that end before the query and
+	 * the ones that start after it. They cost O(min(n, k log n)) for k
+	 * intervals found, not O(log n + k): a subtree that ends after the query
+	 * can still hold no overlapping interval, so every interval found can
+	 * cost a descent of O(log n).
+	 */
+	public static class IntervalTree<P extends Comparable<P>> extends mySortedSet<Interval<P>> {
+
+		/** Constructs an empty interval tree */
+		public IntervalTree() {
+			super(new Monoid<Interval<P>, P>() {
+				public P identity() {
+					return null;
+				}
+
+				public P lift(Interval<P> el) {
+					return el.getEnd();
+				}
+
+				public P combine(P a, P b) {
+					if (a == null)
+						return b;
+					if (b == null)
+						return a;
+					return a.compareTo(b) >= 0 ? a : b;
+				}
+			});
+		}
+
+		/**
+		 * Adds the interval [start, end].
+		 * 
+		 * @param start
+		 *            the first point of the interval.
+		 * @param end
+		 *            the last point of the interval.
+		 * @return true if the interval was not already present.
+		 */
+		public boolean add(P start, P end) {
+			return add(new Interval<P>(start, end));
+		}
+
+		/**
+		 * Returns the greatest end of the intervals of the tree.
+		 * 
+		 * @return the maximum end, null if the tree is empty.
+		 */
+		@SuppressWarnings("unchecked")
+		public P maxEnd() {
+			AVLTree<Interval<P>> tree = this;
+			return tree.root == null ? null : (P) tree.aggregato(tree.root);
+		}
+
+		/**
+		 * Returns the intervals that contain the specified point, in order.
+		 * 
+		 * @param point
+		 *            the point to search.
+		 * @return a new list with the intervals that contain the point.
+		 */
+		public List<Interval<P>> overlapping(P point) {
+			return overlapping(point, point);
+		}
+
+		/**
+		 * Returns the intervals that have at least a point in common with
+		 * [lo, hi], in order.
+		 * 
+		 * @param lo
+		 *            the first point of the query.
+		 * @param hi
+		 *            the last point of the query.
+		 * @return a new list with the overlapping intervals.
+		 */
+		public List<Interval<P>> overlapping(P lo, P hi) {
+			if (lo == null || hi == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			if (lo.compareTo(hi) > 0)
+				throw new IllegalArgumentException(
+						"Invalid values: the left value of the parameter must be lower than the right one");
+			List<Interval<P>> found = new ArrayList<Interval<P>>();
+			AVLTree<Interval<P>> tree = this;
+			raccogli(tree.root, lo, hi, found);
+			return found;
+		}
+
+		/**
+		 * Collects in order the intervals of a subtree that overlap [lo, hi].
+		 * 
+		 * @param node
+		 *            the root of the subtree.
+		 * @param lo
+		 *            the first point of the query.
+		 * @param hi
+		 *            the last point of the query.
+		 * @param found
+		 *            the list the intervals are added to.
+		 */
+		@SuppressWarnings("unchecked")
+		private void raccogli(Node<Interval<P>> node, P lo, P hi, List<Interval<P>> found) {
+			/*
+			 * Every interval of the subtree ends before lo, or the subtree has
+			 * only tombstones of the lazy deletion (the aggregate is null).
+			 */
+			if (node == null)
+				return;
+			P max = (P) ((AggregateNode<Interval<P>>) node).aggregate;
+			if (max == null || max.compareTo(lo) < 0)
+				return;
+			raccogli(node.leftChild, lo, hi, found);
+			// node and its right subtree start after hi.
+			if (node.data.getStart().compareTo(hi) > 0)
+				return;
+			// The tombstones are skipped.
+			if (occorrenze(node) > 0 && node.data.getEnd().compareTo(lo) >= 0)
+				found.add(node.data);
+			raccogli(node.rightChild, lo, hi, found);
+		}
+
+	}
+
+
+	/**
+	 * Sorted set whose nodes carry a digest of their subtree, to find the
+	 * differences between replicas of the same set without shipping all the
+	 * elements. The digest of a set is the sum (modulo 2^64) of a 64-bit
+	 * hash of every element: it doesn't depend on the shape of the tree, so
+	 * it is the same on every replica with the same elements, and it is the
+	 * aggregate of a monoid, so it is kept updated by the insertions, the
+	 * extractions and the rotations. The digest of any range costs O(log n).
+	 */
+	public static class DigestSet<T extends Comparable<T>> extends mySortedSet<T> implements DigestSource<T> {
+
+		/**
+		 * Maximum number of elements of a range (on both sides) that diff()
+		 * compares element by element instead of splitting it.
+		 */
+		private static final int DIFF_LEAF = 32;
+
+		/** Constructs an empty set that hashes the elements with hashCode(). */
+		public DigestSet() {
+			this(el -> el.hashCode());
+		}
+
+		/**
+		 * Constructs an empty set with a custom hash of the elements; the
+		 * replicas must use the same hash.
+		 * 
+		 * @param hasher
+		 *            the function that hashes an element.
+		 */
+		public DigestSet(ToLongFunction<? super T> hasher) {
+			super(digest(hasher));
+		}
+
+		/** Returns the monoid of the sum of the mixed hashes. */
+		private static <T> Monoid<T, Long> digest(ToLongFunction<? super T> hasher) {
+			if (hasher == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			return new Monoid<T, Long>() {
+				public Long identity() {
+					return 0L;
+				}
+
+				public Long lift(T el) {
+					return mix(hasher.applyAsLong(el));
+				}
+
+				public Long combine(Long a, Long b) {
+					return a + b;
+				}
+			};
+		}
+
+		/**
+		 * Spreads the bits of a hash, so that the sums of similar elements
+		 * don't collide (finalizer of SplitMix64).
+		 */
+		private static long mix(long z) {
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
+
+		/**
+		 * Returns the digest of the whole set.
+		 * 
+		 * @return the digest, 0 if the set is empty.
+		 */
+		public long rootDigest() {
+			return rangeDigest(null, null);
+		}
+
+		@Override
+		public long rangeDigest(T lo, T hi) {
+			if (vuoto(lo, hi))
+				return 0L;
+			return (Long) albero().aggregaRange(lo, hi);
+		}
+
+		@Override
+		public int rangeSize(T lo, T hi) {
+			if (vuoto(lo, hi))
+				return 0;
+			return rango(hi, size()) - rango(lo, 0);
+		}
+
+		@Override
+		public T median(T lo, T hi) {
+			int n = rangeSize(lo, hi);
+			if (n == 0)
+				return null;
+			return albero().seleziona(rango(lo, 0) + n / 2).data;
+		}
+
+		@Override
+		public List<T> elements(T lo, T hi) {
+			List<T> list = new ArrayList<T>();
+			if (!vuoto(lo, hi))
+				forEachInRange(lo, true, hi, false, list::add);
+			return list;
+		}
+
+		/** Returns this set as AVL tree, to reach the methods of the tree. */
+		private AVLTree<T> albero() {
+			return this;
+		}
+
+		/** Checks if a range is empty because lo is not less than hi. */
+		private boolean vuoto(T lo, T hi) {
+			return lo != null && hi != null && albero().compara(lo, hi) >= 0;
+		}
+
+		/** Returns the number of elements less than a bound, def if null. */
+		private int rango(T bound, int def) {
+			return bound == null ? def : albero().contaMinori(bound);
+		}
+
+		/**
+		 * Finds the differences between this set and another replica. The
+		 * ranges with the same number of elements and the same digest on both
+		 * sides are skipped, the others are split at their median until they
+		 * are small enough to be compared element by element; so the number
+		 * of calls to the other replica grows with the number of differences
+		 * and only logarithmically with the size of the sets.
+		 * 
+		 * @param other
+		 *            the other replica.
+		 * @param onlyHere
+		 *            receives the elements of this set missing in the other.
+		 * @param onlyThere
+		 *            receives the elements of the other set missing in this.
+		 */
+		public void diff(DigestSource<T> other, Consumer<? super T> onlyHere, Consumer<? super T> onlyThere) {
+			if (other == null || onlyHere == null || onlyThere == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			differenze(other, null, null, onlyHere, onlyThere);
+		}
+
+		/**
+		 * Finds the differences inside the range [lo, hi).
+		 * 
+		 * @param other
+		 *            the other replica.
+		 * @param lo
+		 *            low endpoint (inclusive), null if not bounded.
+		 * @param hi
+		 *            high endpoint (exclusive), null if not bounded.
+		 * @param onlyHere
+		 *            receives the elements of this set missing in the other.
+		 * @param onlyThere
+		 *            receives the elements of the other set missing in this.
+		 */
+		private void differenze(DigestSource<T> other, T lo, T hi, Consumer<? super T> onlyHere,
+				Consumer<? super T> onlyThere) {
+			int n = rangeSize(lo, hi);
+			int m = other.rangeSize(lo, hi);
+			if (n == m && rangeDigest(lo, hi) == other.rangeDigest(lo, hi))
+				return;
+			if (n + m <= DIFF_LEAF) {
+				// Merge of the two ordered lists of elements.
+				List<T> here = elements(lo, hi);
+				List<T> there = other.elements(lo, hi);
+				int i = 0, j = 0;
+				while (i < here.size() && j < there.size()) {
+					int x = albero().compara(here.get(i), there.get(j));
+					if (x < 0)
+						onlyHere.accept(here.get(i++));
+					else if (x > 0)
+						onlyThere.accept(there.get(j++));
+					else {
+						i++;
+						j++;
+					}
+				}
+				while (i < here.size())
+					onlyHere.accept(here.get(i++));
+				while (j < there.size())
+					onlyThere.accept(there.get(j++));
+				return;
+			}
+			/*
+			 * The median of the side with more elements is inside the range
+			 * and greater than lo, so both halves have less elements.
+			 */
+			T pivot = n >= m ? median(lo, hi) : other.median(lo, hi);
+			differenze(other, lo, pivot, onlyHere, onlyThere);
+			differenze(other, pivot, hi, onlyHere, onlyThere);
+		}
+
+	}
+
+	/**
+	 * Sorted set of strings whose nodes keep the first 8 characters of their
+	 * string packed in a long. Most of the comparisons of a descent are
+	 * decided on the two longs, without reading the string of the node and
+	 * its array; only the strings with the same first characters are
+	 * compared in full. It is useful when the strings are long and share
+	 * their first characters only in part, like URLs or hierarchical ids.
+	 * The strings are ordered by their natural ordering.
+	 */
+	public static class StringSortedSet extends mySortedSet<String> {
+
+		/** Number of characters packed in the prefix of a node. */
+		private static final int CARATTERI_PREFISSO = 8;
+
+		/** Node that keeps the prefix of its string. */
+		private static final class PrefixNode extends SizeNode<String> {
+
+			/** First characters of the string, see prefisso(). */
+			private final long prefisso;
+
+			private PrefixNode(String value) {
+				super(value);
+				this.prefisso = prefisso(value);
+			}
+		}
+
+		/**
+		 * Last string compared with the nodes and its prefix, so the prefix is
+		 * computed once for every descent. The object is immutable, so threads
+		 * that only read the set can share it.
+		 */
+		private static final class Chiave {
+			private final String testo;
+			private final long prefisso;
+
+			private Chiave(String testo) {
+				this.testo = testo;
+				this.prefisso = prefisso(testo);
+			}
+		}
+
+		/** Last string compared with the nodes, null at the beginning. */
+		private Chiave ultima;
+
+		/** Constructs an empty set of strings. */
+		public StringSortedSet() {
+			super();
+		}
+
+		/**
+		 * Packs the first 8 characters of a string in a long, one byte for
+		 * each character, the first character in the highest byte. The
+		 * missing characters of a shorter string are 0; a character that
+		 * doesn't fit in a byte becomes 0xFF and ends the prefix. In this way
+		 * if the prefix of a is lower than the one of b (as unsigned) then a
+		 * is lower than b, while equal prefixes say nothing.
+		 * 
+		 * @param s
+		 *            the string.
+		 * @return the prefix of the string.
+		 */
+		static long prefisso(String s) {
+			long p = 0;
+			int n = Math.min(s.length(), CARATTERI_PREFISSO);
+			for (int i = 0; i < n; i++) {
+				char c = s.charAt(i);
+				int shift = 8 * (CARATTERI_PREFISSO - 1 - i);
+				if (c >= 0xFF)
+					return p | (0xFFL << shift);
+				p |= (long) c << shift;
+			}
+			return p;
+		}
+
+		@Override
+		Node<String> creaNodo(String el) {
+			return new PrefixNode(el);
+		}
+
+		@Override
+		int confronta(String el, Node<String> node) {
+			Chiave k = ultima;
+			if (k == null || k.testo != el)
+				ultima = k = new Chiave(el);
+			long p = ((PrefixNode) node).prefisso;
+			if (k.prefisso != p) {
+				AVLTree<String> tree = this;
+				if (tree.metrics != null)
+					tree.metrics.comparisons.increment();
+				return Long.compareUnsigned(k.prefisso, p);
+			}
+			// Same first characters: the strings are compared in full.
+			return super.confronta(el, node);
+		}
+	}
+
+	/**
+	 * Index of timers ordered by deadline, for example leases or timeouts.
+	 * The timers are kept in an AVL tree ordered by deadline and then by
+	 * order of scheduling, so timers with the same deadline expire in the
+	 * order they were scheduled. schedule() and cancel() are O(log n), and
+	 * cancel() reaches the node of the timer through the timer itself,
+	 * without searching it. pollExpired() takes the expired timers from the
+	 * lowest side of the tree, so its cost depends on the number of expired
+	 * timers and not on the number of scheduled ones.
+	 * 
+	 * @param <T>
+	 *            type of the objects associated to the timers.
+	 */
+	public static class ExpiryScheduler<T> {
+
+		/**
+		 * A scheduled timer, returned by schedule() and used to cancel it.
+		 * 
+		 * @param <T>
+		 *            type of the object associated to the timer.
+		 */
+		public static final class Timer<T> implements Comparable<Timer<T>> {
+
+			/** Scheduler of the timer. */
+			private final ExpiryScheduler<T> scheduler;
+			/** Time at which the timer expires. */
+			private final long deadline;
+			/** Order of scheduling, breaks the ties of the deadlines. */
+			private final long seq;
+			/** Object associated to the timer. */
+			private final T payload;
+			/** Node of the timer, null after its expiration or cancellation. */
+			private Node<Timer<T>> node;
+
+			private Timer(ExpiryScheduler<T> scheduler, long deadline, long seq, T payload) {
+				this.scheduler = scheduler;
+				this.deadline = deadline;
+				this.seq = seq;
+				this.payload = payload;
+			}
+
+			/** Returns the time at which the timer expires. */
+			public long getDeadline() {
+				return deadline;
+			}
+
+			/** Returns the object associated to the timer. */
+			public T getPayload() {
+				return payload;
+			}
+
+			/** Returns true until the timer expires or it is cancelled. */
+			public boolean isScheduled() {
+				return node != null;
+			}
+
+			/** Compares the timers by deadline and then by order of scheduling. */
+			@Override
+			public int compareTo(Timer<T> o) {
+				int x = Long.compare(deadline, o.deadline);
+				return x != 0 ? x : Long.compare(seq, o.seq);
+			}
+
+			@Override
+			public String toString() {
+				return payload + "@" + deadline;
+			}
+		}
+
+		/** Tree of the scheduled timers. */
+		private final AVLTree<Timer<T>> tree = new AVLTree<Timer<T>>();
+		/** Order of scheduling of the next timer. */
+		private long seq;
+		/**
+		 * Number of scheduled timers: the nodes of the tree don't count the
+		 * elements of their subtrees.
+		 */
+		private int size;
+
+		/** Constructs an empty scheduler. */
+		public ExpiryScheduler() {
+			tree.upsert = true;
+		}
+
+		/**
+		 * Schedules a timer.
+		 * 
+		 * @param deadline
+		 *            the time at which the timer expires, in the unit used
+		 *            by pollExpired().
+		 * @param payload
+		 *            the object associated to the timer, it can be null.
+		 * @return the timer, to cancel it.
+		 */
+		public Timer<T> schedule(long deadline, T payload) {
+			Timer<T> timer = new Timer<T>(this, deadline, seq++, payload);
+			timer.node = tree.inserisciOTrova(timer);
+			size++;
+			return timer;
+		}
+
+		/**
+		 * Cancels a timer.
+		 * 
+		 * @param timer
+		 *            the timer to cancel.
+		 * @return true if the timer was scheduled, false if it already
+		 *         expired or it was already cancelled.
+		 * @throws IllegalArgumentException
+		 *             if the timer is null or it belongs to another
+		 *             scheduler.
+		 */
+		public boolean cancel(Timer<T> timer) {
+			if (timer == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			if (timer.scheduler != this)
+				throw new IllegalArgumentException("The timer belongs to another scheduler");
+			if (timer.node == null)
+				return false;
+			tree.rimuoviNodo(timer.node);
+			timer.node = null;
+			size--;
+			return true;
+		}
+
+		/**
+		 * Removes the expired timers, the ones whose deadline is not after
+		 * now, and returns their objects in order of deadline.
+		 * 
+		 * @param now
+		 *            the current time.
+		 * @param maxBatch
+		 *            the maximum number of timers removed.
+		 * @return the objects of the removed timers, an empty list if none
+		 *         expired.
+		 * @throws IllegalArgumentException
+		 *             if maxBatch is negative.
+		 */
+		public List<T> pollExpired(long now, int maxBatch) {
+			if (maxBatch < 0)
+				throw new IllegalArgumentException("Invalid batch size: " + maxBatch);
+			List<T> expired = new ArrayList<T>();
+			while (expired.size() < maxBatch) {
+				Node<Timer<T>> node = tree.minimo;
+				if (node == null || node.data.deadline > now)
+					break;
+				tree.estraiPrimo();
+				node.data.node = null;
+				size--;
+				expired.add(node.data.payload);
+			}
+			return expired;
+		}
+
+		/**
+		 * Returns the deadline of the next timer to expire.
+		 * 
+		 * @return the lowest deadline, Long.MAX_VALUE if no timer is
+		 *         scheduled.
+		 */
+		public long nextDeadline() {
+			Node<Timer<T>> node = tree.minimo;
+			return node == null ? Long.MAX_VALUE : node.data.deadline;
+		}
+
+		/** Returns the number of scheduled timers. */
+		public int size() {
+			return size;
+		}
+
+		/** Returns true if no timer is scheduled. */
+		public boolean isEmpty() {
+			return tree.root == null;
+		}
+	}
+
+	/**
+	 * Sorted set with a maximum number of elements, for example the top K
+	 * elements of a stream. When the set is full, an element that would be
+	 * evicted at once is rejected in O(1), comparing it with the cached
+	 * extreme of the tree; otherwise it is inserted and the element on the
+	 * eviction side is removed from the extreme, without searching it. The
+	 * set never keeps more than its capacity, so its memory doesn't grow
+	 * with the length of the stream.
+	 */
+	public static class BoundedSortedSet<T extends Comparable<T>> extends mySortedSet<T> {
+
+		/** Side from which the elements are evicted when the set is full. */
+		public enum Evict {
+			/** The lowest elements are evicted: the set keeps the highest. */
+			MIN,
+			/** The highest elements are evicted: the set keeps the lowest. */
+			MAX
+		}
+
+		/** Maximum number of elements. */
+		private final int capacity;
+		/** Side of the evicted elements. */
+		private final Evict evict;
+
+		/**
+		 * Constructs an empty set with a maximum number of elements.
+		 * 
+		 * @param capacity
+		 *            the maximum number of elements.
+		 * @param evict
+		 *            the side of the evicted elements.
+		 */
+		public BoundedSortedSet(int capacity, Evict evict) {
+			this(capacity, evict, null);
+		}
+
+		/**
+		 * Constructs an empty set with a maximum number of elements, ordered
+		 * by the specified comparator.
+		 * 
+		 * @param capacity
+		 *            the maximum number of elements.
+		 * @param evict
+		 *            the side of the evicted elements.
+		 * @param comparator
+		 *            the ordering of the elements, null for the natural
+		 *            ordering.
+		 */
+		public BoundedSortedSet(int capacity, Evict evict, Comparator<? super T> comparator) {
+			super(comparator);
+			if (capacity < 1)
+				throw new IllegalArgumentException("Invalid capacity: " + capacity);
+			if (evict == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			this.capacity = capacity;
+			this.evict = evict;
+		}
+
+		/**
+		 * Inserts an element, evicting the extreme on the eviction side if
+		 * the set is full.
+		 * 
+		 * @param el
+		 *            the element to add.
+		 * @return true if the element was added, false if it was already
+		 *         present or it is beyond the bound of a full set.
+		 */
+		@Override
+		public boolean add(T el) {
+			if (el == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			if (size() >= capacity) {
+				AVLTree<T> tree = this;
+				// The extreme on the eviction side is cached by the tree.
+				Node<T> bound = evict == Evict.MIN ? tree.primo() : tree.ultimo();
+				int x = tree.compara(el, bound.data);
+				if (evict == Evict.MIN ? x <= 0 : x >= 0)
+					return false;
+			}
+			if (!super.add(el))
+				return false;
+			if (size() > capacity) {
+				if (evict == Evict.MIN)
+					pollFirst();
+				else
+					pollLast();
+			}
+			return true;
+		}
+
+		/** Returns the maximum number of elements of the set. */
+		public int capacity() {
+			return capacity;
+		}
+
+		/** Returns the side of the evicted elements. */
+		public Evict evict() {
+			return evict;
+		}
+	}
+
+	/**
+	 * Exact quantiles of the last samples of a stream, for example the p50,
+	 * p95 and p99 of the latencies of the last N requests or of the last T
+	 * seconds. The samples of the window are kept in a multiset, whose nodes
+	 * know the number of occurrences of their subtree, and in a ring buffer
+	 * in order of arrival. Adding a sample and evicting the oldest one cost
+	 * O(log n), and quantile() and rank() descend the tree once, so the
+	 * quantiles can be read after every sample without sorting the window.
+	 * 
+	 * @param <T>
+	 *            type of the samples.
+	 */
+	public static class SlidingWindowQuantiles<T extends Comparable<T>> {
+
+		/** Samples of the window, with their occurrences. */
+		private final mySortedMultiset<T> samples = new mySortedMultiset<T>();
+		/** Samples of the window in order of arrival. */
+		private final Object[] ring;
+		/** Times of the samples in the ring, null without the time window. */
+		private final long[] times;
+		/** Maximum age of a sample in nanoseconds, 0 without time window. */
+		private final long maxAge;
+		/** Position of the oldest sample in the ring. */
+		private int head;
+		/** Number of samples in the window. */
+		private int count;
+
+		/**
+		 * Constructs a window of the last maxSamples samples.
+		 * 
+		 * @param maxSamples
+		 *            the number of samples of the window.
+		 */
+		public SlidingWindowQuantiles(int maxSamples) {
+			this(maxSamples, 0, TimeUnit.NANOSECONDS);
+		}
+
+		/**
+		 * Constructs a window of the samples added in the last maxAge time,
+		 * at most maxSamples of them.
+		 * 
+		 * @param maxSamples
+		 *            the maximum number of samples of the window.
+		 * @param maxAge
+		 *            the maximum age of a sample, 0 to keep the samples
+		 *            regardless of their age.
+		 * @param unit
+		 *            the unit of maxAge.
+		 */
+		public SlidingWindowQuantiles(int maxSamples, long maxAge, TimeUnit unit) {
+			if (maxSamples < 1)
+				throw new IllegalArgumentException("Invalid window size: " + maxSamples);
+			if (maxAge < 0)
+				throw new IllegalArgumentException("Invalid age: " + maxAge);
+			if (unit == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			this.ring = new Object[maxSamples];
+			this.maxAge = unit.toNanos(maxAge);
+			this.times = maxAge > 0 ? new long[maxSamples] : null;
+		}
+
+		/**
+		 * Adds a sample taken now, according to System.nanoTime().
+		 * 
+		 * @param sample
+		 *            the sample.
+		 */
+		public void add(T sample) {
+			add(sample, System.nanoTime());
+		}
+
+		/**
+		 * Adds a sample taken at the specified time, evicting the samples
+		 * that leave the window. The times must not decrease.
+		 * 
+		 * @param sample
+		 *            the sample.
+		 * @param nanoTime
+		 *            the time of the sample, in nanoseconds.
+		 */
+		public void add(T sample, long nanoTime) {
+			if (sample == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			expire(nanoTime);
+			if (count == ring.length)
+				evict();
+			int i = (head + count) % ring.length;
+			ring[i] = sample;
+			if (times != null)
+				times[i] = nanoTime;
+			count++;
+			samples.add(sample);
+		}
+
+		/**
+		 * Evicts the samples older than the maximum age of the window; useful
+		 * when no sample arrives for a while.
+		 * 
+		 * @param nanoTime
+		 *            the current time, in nanoseconds.
+		 */
+		public void expire(long nanoTime) {
+			if (times == null)
+				return;
+			while (count > 0 && nanoTime - times[head] > maxAge)
+				evict();
+		}
+
+		/** Removes the oldest sample of the window. */
+		@SuppressWarnings("unchecked")
+		private void evict() {
+			samples.remove((T) ring[head]);
+			ring[head] = null;
+			head = (head + 1) % ring.length;
+			count--;
+		}
+
+		/**
+		 * Returns the quantile q of the window with the nearest rank method:
+		 * the sample in position ceil(q * n) of the ascending order.
+		 * 
+		 * @param q
+		 *            the quantile, between 0 and 1, for example 0.99.
+		 * @return the sample of the quantile.
+		 * @throws NoSuchElementException
+		 *             if the window is empty.
+		 */
+		public T quantile(double q) {
+			if (!(q >= 0 && q <= 1))
+				throw new IllegalArgumentException("Invalid quantile: " + q);
+			if (count == 0)
+				throw new NoSuchElementException("The window is empty");
+			int k = Math.max((int) Math.ceil(q * count) - 1, 0);
+			AVLTree<T> tree = samples;
+			return tree.seleziona(k).data;
+		}
+
+		/**
+		 * Returns the number of samples of the window less than x.
+		 * 
+		 * @param x
+		 *            the value to compare.
+		 * @return the rank of x in the window.
+		 */
+		public int rank(T x) {
+			if (x == null)
+				throw new IllegalArgumentException("Null elements not allowed!!!");
+			AVLTree<T> tree = samples;
+			return tree.contaMinori(x);
+		}
+
+		/** Returns the number of samples of the window. */
+		public int size() {
+			return count;
+		}
+
+		/** Removes all the samples of the window. */
+		public void clear() {
+			samples.clear();
+			Arrays.fill(ring, null);
+			head = 0;
+			count = 0;
+		}
+	}
+
 }
 
 /** @author mariol96 */
\ No newline at end of file
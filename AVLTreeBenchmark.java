@@ -0,0 +1,619 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedSet;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark suite of the operations of AVLTree and mySortedSet, with
+ * java.util.TreeSet as baseline. Every benchmark is run for every key
+ * distribution (sequential, random, Zipfian) and every size, with some warmup
+ * iterations followed by the measured ones; the results are printed (or
+ * written in a file) in the JSON format of JMH, so that two runs can be
+ * compared with the usual tools. If an iteration takes more than the timeout
+ * (in seconds) its benchmark and all the following ones are reported as NaN.
+ *
+ * Usage: java AVLTreeBenchmark [-sizes 1000,10000] [-dist RANDOM,ZIPFIAN]
+ * [-ops search,insert] [-impl AVL,TREESET] [-wi 3] [-i 5] [-timeout 60]
+ * [-o results.json]
+ */
+public class AVLTreeBenchmark {
+
+	/** Sets compared by the benchmark. */
+	public enum Impl {
+		/** AVL tree, through mySortedSet. */
+		AVL,
+		/** java.util.TreeSet, used as baseline. */
+		TREESET;
+
+		/** Creates an empty set of this type. */
+		SortedSet<Integer> newSet() {
+			return this == AVL ? new AVLTree.mySortedSet<Integer>() : new TreeSet<Integer>();
+		}
+	}
+
+	/**
+	 * Distribution of the keys: it decides the insertion order of the keys
+	 * and the sequence of the searched keys.
+	 */
+	public enum Distribution {
+		/** Keys inserted and searched in ascending order. */
+		SEQUENTIAL,
+		/** Keys inserted in random order and searched uniformly. */
+		RANDOM,
+		/**
+		 * Keys inserted in random order and searched with a Zipfian
+		 * distribution: a few keys get most of the searches.
+		 */
+		ZIPFIAN
+	}
+
+	/** Operation measured by a benchmark. */
+	private interface Operation {
+		/**
+		 * Prepares the state before an iteration, it is not measured.
+		 *
+		 * @param s
+		 *            the state of the benchmark.
+		 */
+		void setup(State s);
+
+		/**
+		 * Runs the measured operation.
+		 *
+		 * @param s
+		 *            the state of the benchmark.
+		 * @return the number of operations done, used to get the time of a
+		 *         single operation.
+		 */
+		long run(State s);
+	}
+
+	/** State of a benchmark: the keys and the sets it works on. */
+	private static class State {
+		Impl impl;
+		/** Keys of the set in insertion order. */
+		int[] keys;
+		/** Keys to search for. */
+		int[] probes;
+		/** Set the operation works on. */
+		SortedSet<Integer> set;
+		/** Second collection for the bulk operations. */
+		Collection<Integer> other;
+		/** Keeps the results alive, so that the JIT can't remove the work. */
+		long sink;
+
+		/** Fills the set with all the keys. */
+		void riempi() {
+			set = impl.newSet();
+			for (int k : keys)
+				set.add(k);
+		}
+
+		/**
+		 * Creates a collection with one key every step, starting from the
+		 * first key.
+		 */
+		Collection<Integer> parte(int step) {
+			TreeSet<Integer> c = new TreeSet<Integer>();
+			for (int i = 0; i < keys.length; i += step)
+				c.add(keys[i]);
+			return c;
+		}
+	}
+
+	/** Stream that discards what is printed during the measurements. */
+	private static final PrintStream NULL = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+	});
+
+	/** Names of the benchmarks, in the same order of OPERATIONS. */
+	private static final String[] NAMES = { "insert", "search", "removeNode", "successor", "iteration", "addAll",
+			"removeAll", "retainAll", "containsAll", "headSet", "subSet", "tailSet", "toArray" };
+
+	/** The benchmarks. */
+	private static final Operation[] OPERATIONS = {
+			// insert
+			new Operation() {
+				public void setup(State s) {
+					s.set = s.impl.newSet();
+				}
+
+				public long run(State s) {
+					for (int k : s.keys)
+						s.set.add(k);
+					return s.keys.length;
+				}
+			},
+			// search
+			new Operation() {
+				public void setup(State s) {
+					if (s.set == null || s.set.size() != s.keys.length)
+						s.riempi();
+				}
+
+				@SuppressWarnings("unchecked")
+				public long run(State s) {
+					long found = 0;
+					if (s.impl == Impl.AVL) {
+						// contains() prints every search, trovaNodo() doesn't.
+						AVLTree.mySortedSet<Integer> set = (AVLTree.mySortedSet<Integer>) s.set;
+						for (int k : s.probes)
+							if (set.trovaNodo(k) != null)
+								found++;
+					} else {
+						for (int k : s.probes)
+							if (s.set.contains(k))
+								found++;
+					}
+					s.sink += found;
+					return s.probes.length;
+				}
+			},
+			// removeNode
+			new Operation() {
+				public void setup(State s) {
+					s.riempi();
+				}
+
+				public long run(State s) {
+					for (int k : s.keys)
+						s.set.remove(k);
+					return s.keys.length;
+				}
+			},
+			// successor
+			new Operation() {
+				public void setup(State s) {
+					if (s.set == null || s.set.size() != s.keys.length)
+						s.riempi();
+				}
+
+				@SuppressWarnings("unchecked")
+				public long run(State s) {
+					long sum = 0;
+					if (s.impl == Impl.AVL) {
+						AVLTree<Integer>.Cursor cursor = ((AVLTree.mySortedSet<Integer>) s.set).cursor();
+						for (int k : s.keys) {
+							if (cursor.seek(k) && cursor.next())
+								sum++;
+						}
+					} else {
+						TreeSet<Integer> set = (TreeSet<Integer>) s.set;
+						for (int k : s.keys) {
+							if (set.higher(k) != null)
+								sum++;
+						}
+					}
+					s.sink += sum;
+					return s.keys.length;
+				}
+			},
+			// iteration
+			new Operation() {
+				public void setup(State s) {
+					if (s.set == null || s.set.size() != s.keys.length)
+						s.riempi();
+				}
+
+				public long run(State s) {
+					long sum = 0;
+					for (Integer el : s.set)
+						sum += el;
+					s.sink += sum;
+					return s.set.size();
+				}
+			},
+			// addAll: half of the keys are added to a set with the other half
+			new Operation() {
+				public void setup(State s) {
+					s.set = s.impl.newSet();
+					for (int i = 1; i < s.keys.length; i += 2)
+						s.set.add(s.keys[i]);
+					s.other = s.parte(2);
+				}
+
+				public long run(State s) {
+					s.set.addAll(s.other);
+					return s.other.size();
+				}
+			},
+			// removeAll: half of the keys are removed
+			new Operation() {
+				public void setup(State s) {
+					s.riempi();
+					s.other = s.parte(2);
+				}
+
+				public long run(State s) {
+					s.set.removeAll(s.other);
+					return s.other.size();
+				}
+			},
+			// retainAll: half of the keys are kept
+			new Operation() {
+				public void setup(State s) {
+					s.riempi();
+					s.other = s.parte(2);
+				}
+
+				public long run(State s) {
+					s.set.retainAll(s.other);
+					return s.keys.length;
+				}
+			},
+			// containsAll: a tenth of the keys are searched
+			new Operation() {
+				public void setup(State s) {
+					if (s.set == null || s.set.size() != s.keys.length)
+						s.riempi();
+					s.other = s.parte(10);
+				}
+
+				public long run(State s) {
+					if (s.set.containsAll(s.other))
+						s.sink++;
+					return s.other.size();
+				}
+			},
+			// headSet: the lower half of the set
+			new Operation() {
+				public void setup(State s) {
+					if (s.set == null || s.set.size() != s.keys.length)
+						s.riempi();
+				}
+
+				public long run(State s) {
+					s.sink += s.set.headSet(s.keys.length / 2).size();
+					return 1;
+				}
+			},
+			// subSet: the middle half of the set
+			new Operation() {
+				public void setup(State s) {
+					if (s.set == null || s.set.size() != s.keys.length)
+						s.riempi();
+				}
+
+				public long run(State s) {
+					s.sink += s.set.subSet(s.keys.length / 4, 3 * (s.keys.length / 4)).size();
+					return 1;
+				}
+			},
+			// tailSet: the upper half of the set
+			new Operation() {
+				public void setup(State s) {
+					if (s.set == null || s.set.size() != s.keys.length)
+						s.riempi();
+				}
+
+				public long run(State s) {
+					s.sink += s.set.tailSet(s.keys.length / 2).size();
+					return 1;
+				}
+			},
+			// toArray
+			new Operation() {
+				public void setup(State s) {
+					if (s.set == null || s.set.size() != s.keys.length)
+						s.riempi();
+				}
+
+				public long run(State s) {
+					s.sink += s.set.toArray().length;
+					return 1;
+				}
+			} };
+
+	public static void main(String[] args) throws IOException {
+		int[] sizes = { 1_000, 10_000, 100_000, 1_000_000, 10_000_000 };
+		List<Distribution> distributions = Arrays.asList(Distribution.values());
+		List<String> ops = Arrays.asList(NAMES);
+		List<Impl> impls = Arrays.asList(Impl.values());
+		int warmup = 3;
+		int iterations = 5;
+		long timeout = 60;
+		String output = null;
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "-sizes":
+				String[] parts = value.split(",");
+				sizes = new int[parts.length];
+				for (int j = 0; j < parts.length; j++)
+					sizes[j] = Integer.parseInt(parts[j].trim().replace("_", ""));
+				break;
+			case "-dist":
+				distributions = new ArrayList<Distribution>();
+				for (String d : value.split(","))
+					distributions.add(Distribution.valueOf(d.trim().toUpperCase(Locale.ROOT)));
+				break;
+			case "-ops":
+				ops = Arrays.asList(value.split(","));
+				break;
+			case "-impl":
+				impls = new ArrayList<Impl>();
+				for (String d : value.split(","))
+					impls.add(Impl.valueOf(d.trim().toUpperCase(Locale.ROOT)));
+				break;
+			case "-wi":
+				warmup = Integer.parseInt(value);
+				break;
+			case "-i":
+				iterations = Integer.parseInt(value);
+				break;
+			case "-timeout":
+				timeout = Long.parseLong(value);
+				break;
+			case "-o":
+				output = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+
+		StringBuilder json = new StringBuilder("[\n");
+		boolean firstResult = true;
+		long sink = 0;
+		/*
+		 * Benchmark whose iteration didn't end before the timeout: its thread
+		 * can't be stopped and would slow down the next measurements, so they
+		 * are skipped.
+		 */
+		String stuck = null;
+		for (int size : sizes) {
+			for (Distribution distribution : distributions) {
+				int[] keys = chiavi(distribution, size);
+				int[] probes = sonde(distribution, keys);
+				for (int b = 0; b < NAMES.length; b++) {
+					if (!ops.contains(NAMES[b]))
+						continue;
+					for (Impl impl : impls) {
+						State s = new State();
+						s.impl = impl;
+						s.keys = keys;
+						s.probes = probes;
+						double[] scores = stuck == null ? misura(OPERATIONS[b], s, warmup, iterations, timeout) : null;
+						if (scores == null) {
+							if (stuck == null) {
+								stuck = String.format(Locale.ROOT, "%s %s %s %d", NAMES[b], impl, distribution, size);
+								System.err.println("Timeout: " + stuck + ", the remaining benchmarks are skipped");
+							}
+							scores = new double[iterations];
+							Arrays.fill(scores, Double.NaN);
+						}
+						sink += s.sink;
+						if (!firstResult)
+							json.append(",\n");
+						firstResult = false;
+						json.append(risultato(NAMES[b], impl, distribution, size, scores));
+						System.err.printf(Locale.ROOT, "%-13s %-8s %-11s %10d %14.2f ns/op%n", NAMES[b], impl,
+								distribution, size, media(scores));
+					}
+				}
+			}
+		}
+		json.append("\n]\n");
+
+		if (output == null) {
+			System.out.print(json);
+		} else {
+			try (PrintWriter out = new PrintWriter(new FileWriter(output))) {
+				out.print(json);
+			}
+		}
+		if (sink == 42)
+			System.err.println();
+		if (stuck != null)
+			System.err.println("Skipped the benchmarks after the timeout of " + stuck);
+	}
+
+	/**
+	 * Runs the warmup iterations and the measured ones. Every iteration runs
+	 * in its own thread: if it takes more than the timeout the benchmark is
+	 * abandoned, so that a stuck operation doesn't stop the whole run. The
+	 * thread can't be stopped and it is left running as a daemon, so the
+	 * caller must not measure anything else in this JVM.
+	 *
+	 * @return the time of an operation (in nanoseconds) of every measured
+	 *         iteration, NaN if the operation failed; null after a timeout.
+	 */
+	private static double[] misura(final Operation op, final State s, int warmup, int iterations,
+			long timeoutSeconds) {
+		/*
+		 * The sets print some operations, like the insertions of the elements
+		 * already present: what they print is discarded, so that it is
+		 * neither measured nor mixed with the JSON report.
+		 */
+		PrintStream out = System.out, err = System.err;
+		System.setOut(NULL);
+		System.setErr(NULL);
+		try {
+			return misura(op, s, warmup, iterations, timeoutSeconds, new double[iterations]);
+		} finally {
+			System.setOut(out);
+			System.setErr(err);
+		}
+	}
+
+	/** Runs the iterations of misura() and fills the scores. */
+	private static double[] misura(final Operation op, final State s, int warmup, int iterations,
+			long timeoutSeconds, double[] scores) {
+		for (int i = -warmup; i < iterations; i++) {
+			final long[] result = new long[2];
+			Thread t = new Thread(new Runnable() {
+				public void run() {
+					op.setup(s);
+					long start = System.nanoTime();
+					long n = op.run(s);
+					result[0] = System.nanoTime() - start;
+					result[1] = n;
+				}
+			});
+			t.setDaemon(true);
+			t.start();
+			try {
+				t.join(TimeUnit.SECONDS.toMillis(timeoutSeconds));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (t.isAlive())
+				return null;
+			if (result[1] == 0) {
+				Arrays.fill(scores, Double.NaN);
+				return scores;
+			}
+			if (i >= 0)
+				scores[i] = (double) result[0] / result[1];
+		}
+		return scores;
+	}
+
+	/**
+	 * Returns the keys of a set of the specified size, in insertion order.
+	 *
+	 * @param distribution
+	 *            distribution of the keys.
+	 * @param size
+	 *            number of the keys.
+	 * @return the keys 0..size-1, in ascending or random order.
+	 */
+	private static int[] chiavi(Distribution distribution, int size) {
+		int[] keys = new int[size];
+		for (int i = 0; i < size; i++)
+			keys[i] = i;
+		if (distribution != Distribution.SEQUENTIAL) {
+			SplittableRandom random = new SplittableRandom(size);
+			for (int i = size - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int t = keys[i];
+				keys[i] = keys[j];
+				keys[j] = t;
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Returns the keys to search for, as many as the keys of the set.
+	 *
+	 * @param distribution
+	 *            distribution of the keys.
+	 * @param keys
+	 *            keys of the set in insertion order.
+	 * @return the keys to search for.
+	 */
+	private static int[] sonde(Distribution distribution, int[] keys) {
+		int n = keys.length;
+		int[] probes = new int[n];
+		SplittableRandom random = new SplittableRandom(31L * n + 7);
+		switch (distribution) {
+		case SEQUENTIAL:
+			for (int i = 0; i < n; i++)
+				probes[i] = i;
+			break;
+		case RANDOM:
+			for (int i = 0; i < n; i++)
+				probes[i] = random.nextInt(n);
+			break;
+		case ZIPFIAN:
+			/*
+			 * The i-th most searched key is the i-th inserted one, so the
+			 * hot keys are spread over the tree.
+			 */
+			Zipf zipf = new Zipf(n, 0.99);
+			for (int i = 0; i < n; i++)
+				probes[i] = keys[zipf.next(random)];
+			break;
+		}
+		return probes;
+	}
+
+	/**
+	 * Generator of Zipfian ranks in [0, n), as described by Gray et al.
+	 * "Quickly generating billion-record synthetic databases".
+	 */
+	private static class Zipf {
+		private final int n;
+		private final double theta;
+		private final double alpha;
+		private final double zetan;
+		private final double eta;
+
+		Zipf(int n, double theta) {
+			this.n = n;
+			this.theta = theta;
+			double zeta2 = 0;
+			double z = 0;
+			for (int i = 1; i <= n; i++) {
+				z += 1 / Math.pow(i, theta);
+				if (i == 2)
+					zeta2 = z;
+			}
+			if (n < 2)
+				zeta2 = z;
+			this.zetan = z;
+			this.alpha = 1 / (1 - theta);
+			this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetan);
+		}
+
+		int next(SplittableRandom random) {
+			double u = random.nextDouble();
+			double uz = u * zetan;
+			if (uz < 1)
+				return 0;
+			if (uz < 1 + Math.pow(0.5, theta))
+				return Math.min(1, n - 1);
+			return (int) Math.min(n - 1, n * Math.pow(eta * u - eta + 1, alpha));
+		}
+	}
+
+	/** Returns the mean of the scores. */
+	private static double media(double[] scores) {
+		double sum = 0;
+		for (double d : scores)
+			sum += d;
+		return sum / scores.length;
+	}
+
+	/**
+	 * Returns a result in the JSON format of JMH; the error is the 99.9%
+	 * confidence interval, approximated with the normal distribution.
+	 */
+	private static String risultato(String name, Impl impl, Distribution distribution, int size, double[] scores) {
+		double mean = media(scores);
+		double var = 0;
+		for (double d : scores)
+			var += (d - mean) * (d - mean);
+		double error = scores.length > 1 ? 3.29 * Math.sqrt(var / (scores.length - 1)) / Math.sqrt(scores.length)
+				: Double.NaN;
+		StringBuilder raw = new StringBuilder();
+		for (int i = 0; i < scores.length; i++) {
+			if (i > 0)
+				raw.append(", ");
+			raw.append(Double.isNaN(scores[i]) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", scores[i]));
+		}
+		String score = Double.isNaN(mean) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", mean);
+		return String.format(Locale.ROOT,
+				"  {\n    \"benchmark\" : \"AVLTreeBenchmark.%s\",\n    \"mode\" : \"avgt\",\n"
+						+ "    \"params\" : { \"impl\" : \"%s\", \"distribution\" : \"%s\", \"size\" : \"%d\" },\n"
+						+ "    \"primaryMetric\" : {\n      \"score\" : %s,\n      \"scoreError\" : %s,\n"
+						+ "      \"scoreUnit\" : \"ns/op\",\n      \"rawData\" : [ [ %s ] ]\n    }\n  }",
+				name, impl, distribution, size, score,
+				Double.isNaN(error) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", error), raw);
+	}
+
+}
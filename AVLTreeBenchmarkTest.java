@@ -0,0 +1,67 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Runs every benchmark on small sets and checks the JSON file of the
+ * results: one result for each operation, set and distribution, each with
+ * a measured score.
+ */
+public class AVLTreeBenchmarkTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		File results = File.createTempFile("AVLTreeBenchmarkTest", ".json");
+		results.deleteOnExit();
+		silenzioso(() -> {
+			AVLTreeBenchmark.main(new String[] { "-sizes", "200,1000", "-wi", "1", "-i", "2", "-timeout", "60", "-o",
+					results.getPath() });
+		});
+
+		String json = new String(Files.readAllBytes(results.toPath()), StandardCharsets.UTF_8);
+		int operations = 13, sets = AVLTreeBenchmark.Impl.values().length,
+				distributions = AVLTreeBenchmark.Distribution.values().length;
+		verifica(conta(json, "\"benchmark\" : ") == operations * sets * distributions * 2, "number of results");
+		verifica(conta(json, "\"size\" : \"1000\"") == operations * sets * distributions, "results of a size");
+		for (AVLTreeBenchmark.Distribution d : AVLTreeBenchmark.Distribution.values())
+			verifica(conta(json, "\"distribution\" : \"" + d + "\"") == operations * sets * 2, "results of " + d);
+
+		Matcher scores = Pattern.compile("\"score\" : ([^,]*),").matcher(json);
+		int n = 0;
+		for (; scores.find(); n++) {
+			// a benchmark skipped after a timeout has a NaN score, written as a string
+			double score = Double.parseDouble(scores.group(1));
+			verifica(score > 0 && !Double.isInfinite(score), "score " + scores.group(1));
+		}
+		verifica(n == operations * sets * distributions * 2, "number of scores");
+
+		// Without a file the report is the only output: the sets print nothing.
+		PrintStream out = System.out, err = System.err;
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(printed));
+		System.setErr(new PrintStream(new ByteArrayOutputStream()));
+		try {
+			AVLTreeBenchmark.main(new String[] { "-sizes", "100", "-ops", "insert,search,removeNode", "-wi", "1", "-i",
+					"1" });
+		} finally {
+			System.setOut(out);
+			System.setErr(err);
+		}
+		String report = printed.toString();
+		verifica(report.startsWith("[") && report.trim().endsWith("]") && !report.contains("trovato"),
+				"report on System.out");
+		System.out.println("AVLTreeBenchmarkTest OK");
+	}
+
+	/** Returns the number of occurrences of a string. */
+	private static int conta(String text, String s) {
+		int n = 0;
+		for (int i = text.indexOf(s); i >= 0; i = text.indexOf(s, i + 1))
+			n++;
+		return n;
+	}
+
+}
@@ -0,0 +1,127 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeMap;
+
+/*
+ * Checks the sorted map against a TreeMap with random operations, the live
+ * views of the keys and of the descending map, the sub-maps that are
+ * snapshots, and that the removals of missing keys don't print anything.
+ */
+public class AVLTreeMapTest extends TestSupport {
+
+	public static void main(String[] args) {
+		PrintStream err = System.err;
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(printed));
+		try {
+			prova();
+		} finally {
+			System.setErr(err);
+		}
+		verifica(printed.size() == 0, "printed: " + printed);
+		System.out.println("AVLTreeMapTest OK");
+	}
+
+	private static void prova() {
+		Random rnd = new Random(34);
+		AVLTree.AVLTreeMap<Integer, Integer> map = new AVLTree.AVLTreeMap<Integer, Integer>();
+		TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+		for (int op = 0; op < 30000; op++) {
+			Integer k = rnd.nextInt(2000), v = rnd.nextInt(10) - 3;
+			switch (rnd.nextInt(6)) {
+			case 0:
+			case 1:
+				verifica(eq(map.put(k, v), expected.put(k, v)), "put " + k);
+				break;
+			case 2:
+				verifica(eq(map.remove(k), expected.remove(k)), "remove " + k);
+				break;
+			case 3:
+				// The sum 0 removes the key.
+				verifica(eq(map.merge(k, v, (a, b) -> a + b == 0 ? null : a + b),
+						expected.merge(k, v, (a, b) -> a + b == 0 ? null : a + b)), "merge " + k);
+				break;
+			case 4:
+				verifica(eq(map.computeIfAbsent(k, x -> x % 2 == 0 ? null : x),
+						expected.computeIfAbsent(k, x -> x % 2 == 0 ? null : x)), "computeIfAbsent " + k);
+				break;
+			default:
+				verifica(eq(map.ceilingKey(k), expected.ceilingKey(k)), "ceilingKey " + k);
+				verifica(eq(map.lowerEntry(k), expected.lowerEntry(k)), "lowerEntry " + k);
+			}
+			verifica(eq(map.get(k), expected.get(k)), "get " + k);
+			verifica(map.size() == expected.size(), "size");
+		}
+		verifica(map.equals(expected) && expected.equals(map), "content");
+		verifica(eq(map.pollFirstEntry(), expected.pollFirstEntry()), "pollFirstEntry");
+		verifica(eq(map.pollLastEntry(), expected.pollLastEntry()), "pollLastEntry");
+
+		// Removals through the entry iterator.
+		for (Iterator<Map.Entry<Integer, Integer>> it = map.entrySet().iterator(); it.hasNext();)
+			if (it.next().getValue() < 0)
+				it.remove();
+		expected.values().removeIf(v -> v < 0);
+		verifica(map.equals(expected), "entry iterator remove");
+
+		// Views in descending order.
+		NavigableMap<Integer, Integer> desc = map.descendingMap();
+		NavigableMap<Integer, Integer> expectedDesc = expected.descendingMap();
+		verificaElementi(desc.entrySet(), expectedDesc.entrySet(), "descending order");
+		for (int i = 0; i < 500; i++) {
+			Integer k = rnd.nextInt(2000);
+			verifica(eq(desc.higherKey(k), expectedDesc.higherKey(k)), "descending higherKey " + k);
+			verifica(eq(desc.floorEntry(k), expectedDesc.floorEntry(k)), "descending floorEntry " + k);
+		}
+		verifica(desc.headMap(1000, true).equals(expectedDesc.headMap(1000, true)), "descending headMap");
+		verifica(desc.subMap(1500, false, 500, true).equals(expectedDesc.subMap(1500, false, 500, true)),
+				"descending subMap");
+		verifica(desc.firstKey().equals(expectedDesc.firstKey()), "descending firstKey");
+
+		// The views are live: the changes go through to the map and back.
+		desc.put(-1, 7);
+		expected.put(-1, 7);
+		verifica(map.get(-1) == 7 && desc.lastKey() == -1, "descending put");
+		NavigableSet<Integer> keys = map.navigableKeySet();
+		NavigableSet<Integer> expectedKeys = expected.navigableKeySet();
+		verifica(keys.remove(-1) == expectedKeys.remove(-1) && !map.containsKey(-1), "keySet remove");
+		for (Iterator<Integer> it = keys.iterator(); it.hasNext();)
+			if (it.next() % 5 == 0)
+				it.remove();
+		expectedKeys.removeIf(x -> x % 5 == 0);
+		verifica(map.equals(expected), "keySet iterator remove");
+		for (Iterator<Integer> it = map.descendingKeySet().iterator(); it.hasNext();)
+			if (it.next() % 7 == 0)
+				it.remove();
+		expectedKeys.removeIf(x -> x % 7 == 0);
+		verifica(map.equals(expected), "descendingKeySet iterator remove");
+		verificaElementi(map.descendingKeySet(), expected.descendingKeySet(), "descendingKeySet order");
+		verifica(eq(keys.pollFirst(), expectedKeys.pollFirst()), "keySet pollFirst");
+		verifica(eq(desc.pollFirstEntry(), expectedDesc.pollFirstEntry()), "descending pollFirstEntry");
+		verifica(keys.size() == expected.size() && desc.size() == expected.size(), "views size");
+		map.put(100000, 1);
+		verifica(keys.last() == 100000 && desc.firstKey() == 100000, "views see the map");
+		desc.clear();
+		verifica(map.isEmpty() && keys.isEmpty(), "descending clear");
+
+		// The sub-maps are snapshots.
+		map.put(5, 5);
+		NavigableMap<Integer, Integer> head = map.headMap(10, true);
+		head.put(6, 6);
+		map.put(7, 7);
+		verifica(head.containsKey(5) && !head.containsKey(7) && !map.containsKey(6), "headMap snapshot");
+	}
+
+	private static boolean eq(Object a, Object b) {
+		if (a instanceof Map.Entry && b instanceof Map.Entry) {
+			Map.Entry<?, ?> x = (Map.Entry<?, ?>) a, y = (Map.Entry<?, ?>) b;
+			return eq(x.getKey(), y.getKey()) && eq(x.getValue(), y.getValue());
+		}
+		return a == null ? b == null : a.equals(b);
+	}
+
+}
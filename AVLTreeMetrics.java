@@ -0,0 +1,125 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Operation counters of an AVL tree. They are updated by the tree only when
+ * the metrics are enabled (see {@link AVLTree#enableMetrics(String)}); the
+ * counters are LongAdders, so that the updates stay cheap and the values can
+ * be read at any time from another thread, e.g. through JMX.
+ */
+public class AVLTreeMetrics implements AVLTreeMetricsMBean {
+
+	/** Tree the metrics refer to. */
+	private final AVLTree<?> tree;
+
+	final LongAdder inserts = new LongAdder();
+	final LongAdder duplicateInserts = new LongAdder();
+	final LongAdder removes = new LongAdder();
+	final LongAdder misses = new LongAdder();
+	final LongAdder comparisons = new LongAdder();
+	/*
+	 * A double rotation is made of two single rotations, so rotazioneSS and
+	 * rotazioneDD are counted also when they are called by rotazioneSD and
+	 * rotazioneDS: the getters subtract them.
+	 */
+	final LongAdder rotationsSS = new LongAdder();
+	final LongAdder rotationsDD = new LongAdder();
+	final LongAdder rotationsSD = new LongAdder();
+	final LongAdder rotationsDS = new LongAdder();
+	final LongAdder nodeAllocations = new LongAdder();
+
+	/**
+	 * Creates the counters of a tree.
+	 *
+	 * @param tree
+	 *            the tree the metrics refer to.
+	 */
+	AVLTreeMetrics(AVLTree<?> tree) {
+		this.tree = tree;
+	}
+
+	@Override
+	public long getInserts() {
+		return inserts.sum();
+	}
+
+	@Override
+	public long getDuplicateInserts() {
+		return duplicateInserts.sum();
+	}
+
+	@Override
+	public long getRemoves() {
+		return removes.sum();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	@Override
+	public long getComparisons() {
+		return comparisons.sum();
+	}
+
+	@Override
+	public long getRotationsSS() {
+		return rotationsSS.sum() - rotationsSD.sum() - rotationsDS.sum();
+	}
+
+	@Override
+	public long getRotationsDD() {
+		return rotationsDD.sum() - rotationsSD.sum() - rotationsDS.sum();
+	}
+
+	@Override
+	public long getRotationsSD() {
+		return rotationsSD.sum();
+	}
+
+	@Override
+	public long getRotationsDS() {
+		return rotationsDS.sum();
+	}
+
+	@Override
+	public long getNodeAllocations() {
+		return nodeAllocations.sum();
+	}
+
+	@Override
+	public long getSize() {
+		// Read from the tree only when asked, so it includes the elements
+		// inserted before the metrics were enabled and costs nothing to the
+		// operations.
+		return tree.elementi();
+	}
+
+	@Override
+	public int getHeight() {
+		/*
+		 * The tree is not thread safe: if it is being modified while the
+		 * height is computed the value is not available.
+		 */
+		try {
+			return tree.height();
+		} catch (RuntimeException e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public void reset() {
+		inserts.reset();
+		duplicateInserts.reset();
+		removes.reset();
+		misses.reset();
+		comparisons.reset();
+		rotationsSS.reset();
+		rotationsDD.reset();
+		rotationsSD.reset();
+		rotationsDS.reset();
+		nodeAllocations.reset();
+	}
+
+}
@@ -0,0 +1,47 @@
+
+/**
+ * Management interface of the metrics of an AVL tree, it is registered on the
+ * platform MBean server with the name AVLTree:type=AVLTree,name=(tree name).
+ */
+public interface AVLTreeMetricsMBean {
+
+	/** Returns the number of elements inserted. */
+	long getInserts();
+
+	/** Returns the number of insertions refused because of a duplicate. */
+	long getDuplicateInserts();
+
+	/** Returns the number of elements removed. */
+	long getRemoves();
+
+	/** Returns the number of searches and removals of missing elements. */
+	long getMisses();
+
+	/** Returns the number of comparisons between elements. */
+	long getComparisons();
+
+	/** Returns the number of single rotations to the left (rotazioneSS). */
+	long getRotationsSS();
+
+	/** Returns the number of single rotations to the right (rotazioneDD). */
+	long getRotationsDD();
+
+	/** Returns the number of double rotations to the left (rotazioneSD). */
+	long getRotationsSD();
+
+	/** Returns the number of double rotations to the right (rotazioneDS). */
+	long getRotationsDS();
+
+	/** Returns the number of nodes allocated. */
+	long getNodeAllocations();
+
+	/** Returns the current number of elements of the tree. */
+	long getSize();
+
+	/** Returns the current height of the tree. */
+	int getHeight();
+
+	/** Sets all the counters to zero, the size and the height are kept. */
+	void reset();
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Checks the operation counters of the trees: the size must match the
+ * collection also for the elements inserted before the metrics were enabled,
+ * and the sets, the multisets and the maps must count in the same way.
+ */
+public class AVLTreeMetricsTest extends TestSupport {
+
+	public static void main(String[] args) {
+		AVLTree.mySortedSet<Integer> set = new AVLTree.mySortedSet<Integer>();
+		for (int i = 0; i < 100; i++)
+			set.add(i);
+		AVLTreeMetrics m = set.enableMetrics("AVLTreeMetricsTest.set");
+		verifica(m.getSize() == 100, "size of the elements already present");
+		for (int i = 100; i < 150; i++)
+			set.add(i);
+		for (int i = 0; i < 30; i++)
+			set.remove(i);
+		set.pollFirst();
+		set.pollLast();
+		verifica(m.getSize() == set.size(), "set size");
+		verifica(m.getInserts() == 50 && m.getRemoves() == 32, "set counters");
+		set.enableLazyDeletion(0.9);
+		for (int i = 40; i < 60; i++)
+			set.remove(i);
+		verifica(m.getSize() == set.size() && m.getRemoves() == 52, "lazy deletion");
+		set.clear();
+		verifica(m.getSize() == 0, "clear");
+		set.disableMetrics();
+
+		AVLTree.mySortedMultiset<Integer> multiset = new AVLTree.mySortedMultiset<Integer>();
+		multiset.add(1);
+		m = multiset.enableMetrics("AVLTreeMetricsTest.multiset");
+		for (int i = 0; i < 10; i++)
+			multiset.add(i % 3);
+		verifica(m.getSize() == 11 && m.getInserts() == 10, "multiset add");
+		multiset.remove(0);
+		multiset.remove(1);
+		multiset.remove(7);
+		verifica(m.getSize() == multiset.size() && m.getRemoves() == 2 && m.getMisses() == 1, "multiset remove");
+		multiset.disableMetrics();
+
+		AVLTree.AVLTreeMap<Integer, String> map = new AVLTree.AVLTreeMap<Integer, String>();
+		map.put(1, "a");
+		m = map.enableMetrics("AVLTreeMetricsTest.map");
+		map.put(2, "b");
+		map.put(2, "c");
+		map.merge(3, "d", String::concat);
+		map.remove(1);
+		map.remove(9);
+		verifica(m.getSize() == map.size() && m.getInserts() == 2, "map size");
+		verifica(m.getRemoves() == 1 && m.getMisses() == 1, "map counters");
+		map.pollFirstEntry();
+		verifica(m.getSize() == map.size() && m.getRemoves() == 2, "map poll");
+		map.disableMetrics();
+		System.out.println("AVLTreeMetricsTest OK");
+	}
+
+}
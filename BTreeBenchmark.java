@@ -0,0 +1,68 @@
+import java.util.SortedSet;
+import java.util.SplittableRandom;
+
+/**
+ * Compares the AVL tree and the B+ tree backends of the sorted set: random
+ * inserts, lookups (about half of them are misses) and a full ordered scan.
+ * The sizes can be passed as arguments, by default 1M, 10M and 100M keys are
+ * used (the biggest sizes need a large heap, e.g. -Xmx16g).
+ *
+ * Usage: java BTreeBenchmark [size...]
+ */
+public class BTreeBenchmark {
+
+	public static void main(String[] args) {
+		int[] sizes = { 1_000_000, 10_000_000, 100_000_000 };
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i].replace("_", ""));
+		}
+
+		System.out.printf("%-6s %12s %14s %14s %14s%n", "set", "keys", "insert ns/op", "lookup ns/op", "scan ns/el");
+		for (int n : sizes) {
+			for (BTreeSortedSet.Backend backend : BTreeSortedSet.Backend.values()) {
+				run(backend, n);
+			}
+		}
+	}
+
+	/**
+	 * Runs the three measures on a set with the specified backend.
+	 *
+	 * @param backend
+	 *            the data structure of the set.
+	 * @param n
+	 *            number of keys to insert.
+	 */
+	private static void run(BTreeSortedSet.Backend backend, int n) {
+		SortedSet<Integer> set = backend.newSet();
+		// Keys are taken in [0, 2n), so half of the lookups are misses.
+		SplittableRandom random = new SplittableRandom(42);
+		int bound = n > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : 2 * n;
+
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			set.add(random.nextInt(bound));
+		long insert = System.nanoTime() - start;
+
+		random = new SplittableRandom(7);
+		int found = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			if (set.contains(random.nextInt(bound)))
+				found++;
+		}
+		long lookup = System.nanoTime() - start;
+
+		long sum = 0;
+		start = System.nanoTime();
+		for (Integer el : set)
+			sum += el;
+		long scan = System.nanoTime() - start;
+
+		System.out.printf("%-6s %12d %14.1f %14.1f %14.2f   (found=%d, checksum=%d)%n", backend, set.size(),
+				(double) insert / n, (double) lookup / n, (double) scan / Math.max(1, set.size()), found, sum);
+	}
+
+}
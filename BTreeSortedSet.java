@@ -0,0 +1,713 @@
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * Sorted set that uses a B+ tree as data structure. Every node holds many
+ * sorted keys (32 to 128) that are searched with a binary search, so a lookup
+ * visits only a few nodes, each one stored in contiguous memory; the leaves
+ * are linked to allow the ordered visit of the elements. It offers the same
+ * operations of {@link AVLTree.mySortedSet}, with the natural ordering of the
+ * elements or the ordering of a comparator.
+ */
+public class BTreeSortedSet<T extends Comparable<T>> extends AbstractSet<T> implements SortedSet<T> {
+
+	/** Minimum number of keys of a node that can be chosen. */
+	public static final int MIN_ORDER = 32;
+	/** Maximum number of keys of a node that can be chosen. */
+	public static final int MAX_ORDER = 128;
+	/** Number of keys of a node used by default. */
+	public static final int DEFAULT_ORDER = 64;
+
+	/**
+	 * Data structure behind a sorted set, to choose between the two at
+	 * construction.
+	 */
+	public enum Backend {
+		/** Binary AVL tree, see {@link AVLTree.mySortedSet}. */
+		AVL,
+		/** Wide-node B+ tree, see {@link BTreeSortedSet}. */
+		BTREE;
+
+		/**
+		 * Creates an empty sorted set with this data structure.
+		 *
+		 * @return a new empty sorted set.
+		 */
+		public <T extends Comparable<T>> SortedSet<T> newSet() {
+			return newSet(null);
+		}
+
+		/**
+		 * Creates an empty sorted set with this data structure, ordered by
+		 * the specified comparator.
+		 *
+		 * @param comparator
+		 *            the ordering of the elements, null for the natural
+		 *            ordering.
+		 * @return a new empty sorted set.
+		 */
+		public <T extends Comparable<T>> SortedSet<T> newSet(Comparator<? super T> comparator) {
+			if (this == AVL)
+				return new AVLTree.mySortedSet<T>(comparator);
+			return new BTreeSortedSet<T>(DEFAULT_ORDER, comparator);
+		}
+	}
+
+	/** Node of the tree: it contains n sorted keys. */
+	private abstract static class BNode {
+		/** Keys of the node, one more than the maximum to allow the split. */
+		Object[] keys;
+		/** Number of keys inside the node. */
+		int n;
+	}
+
+	/** Leaf of the tree: it contains the elements of the set. */
+	private static final class Leaf extends BNode {
+		/** Next leaf in order, null if this is the last one. */
+		Leaf next;
+
+		Leaf(int order) {
+			keys = new Object[order + 1];
+		}
+	}
+
+	/**
+	 * Internal node of the tree: the keys separate the children, so the
+	 * i-th key is less or equal than every element of the (i+1)-th child.
+	 */
+	private static final class Inner extends BNode {
+		/** Children of the node, one more than the keys. */
+		BNode[] children;
+
+		Inner(int order) {
+			keys = new Object[order + 1];
+			children = new BNode[order + 2];
+		}
+	}
+
+	/** Maximum number of keys inside a node. */
+	private final int order;
+	/** Ordering of the elements, null for the natural ordering. */
+	private final Comparator<? super T> comparator;
+	/** Minimum number of keys inside a node different from the root. */
+	private final int minKeys;
+	/** Root of the tree */
+	private BNode root;
+	/** Number of the elements inside the set. */
+	private int size;
+
+	/**
+	 * Separator produced by the last split, it has to be inserted inside the
+	 * parent of the split node.
+	 */
+	private Object splitKey;
+	/** Node produced by the last split, null if no split happened. */
+	private BNode splitNode;
+
+	/** Constructs an empty set with nodes of the default size. */
+	public BTreeSortedSet() {
+		this(DEFAULT_ORDER);
+	}
+
+	/**
+	 * Constructs an empty set.
+	 *
+	 * @param order
+	 *            maximum number of keys inside a node.
+	 * @throws IllegalArgumentException
+	 *             if order is not between MIN_ORDER and MAX_ORDER.
+	 */
+	public BTreeSortedSet(int order) {
+		this(order, null);
+	}
+
+	/**
+	 * Constructs an empty set with nodes of the default size, ordered by the
+	 * specified comparator.
+	 *
+	 * @param comparator
+	 *            the ordering of the elements, null for the natural ordering.
+	 */
+	public BTreeSortedSet(Comparator<? super T> comparator) {
+		this(DEFAULT_ORDER, comparator);
+	}
+
+	/**
+	 * Constructs an empty set ordered by the specified comparator.
+	 *
+	 * @param order
+	 *            maximum number of keys inside a node.
+	 * @param comparator
+	 *            the ordering of the elements, null for the natural ordering.
+	 * @throws IllegalArgumentException
+	 *             if order is not between MIN_ORDER and MAX_ORDER.
+	 */
+	public BTreeSortedSet(int order, Comparator<? super T> comparator) {
+		if (order < MIN_ORDER || order > MAX_ORDER)
+			throw new IllegalArgumentException(
+					"Error: the order must be between " + MIN_ORDER + " and " + MAX_ORDER);
+		this.order = order;
+		this.comparator = comparator;
+		this.minKeys = order / 2;
+		this.root = new Leaf(order);
+	}
+
+	/**
+	 * Compares two elements with the ordering of the set.
+	 *
+	 * @return a negative number, zero or a positive number if a is less
+	 *         than, equal to or greater than b.
+	 */
+	private int compara(T a, T b) {
+		return comparator == null ? a.compareTo(b) : comparator.compare(a, b);
+	}
+
+	/**
+	 * Searches a key inside a node with a binary search.
+	 *
+	 * @param node
+	 *            the node in which the key is searched.
+	 * @param key
+	 *            the key to search for.
+	 * @return the position of the key if it is present, (-(insertion point) -
+	 *         1) otherwise.
+	 */
+	@SuppressWarnings("unchecked")
+	private int cerca(BNode node, T key) {
+		int low = 0;
+		int high = node.n - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int x = compara((T) node.keys[mid], key);
+			if (x < 0)
+				low = mid + 1;
+			else if (x > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Returns the index of the child of an internal node in which the key
+	 * has to be searched.
+	 *
+	 * @param node
+	 *            internal node.
+	 * @param key
+	 *            the key to search for.
+	 * @return the index of the child.
+	 */
+	private int figlio(BNode node, T key) {
+		int i = cerca(node, key);
+		// A key equal to a separator is inside the right child.
+		return i >= 0 ? i + 1 : -(i + 1);
+	}
+
+	/**
+	 * Searches for the specified element.
+	 *
+	 * @param o
+	 *            the element to search.
+	 * @return true if the element was found, false otherwise.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean contains(Object o) {
+		if (o == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		T key = (T) o;
+		BNode node = root;
+		while (node instanceof Inner)
+			node = ((Inner) node).children[figlio(node, key)];
+		return cerca(node, key) >= 0;
+	}
+
+	/**
+	 * Insert an element inside the sorted set.
+	 *
+	 * @param el
+	 *            the element to add.
+	 * @return true if the element was successfully added, false if it was
+	 *         already present.
+	 */
+	@Override
+	public boolean add(T el) {
+		if (el == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		splitNode = null;
+		if (!inserisci(root, el))
+			return false;
+		// If the root has been split the tree grows by one level.
+		if (splitNode != null) {
+			Inner newRoot = new Inner(order);
+			newRoot.keys[0] = splitKey;
+			newRoot.children[0] = root;
+			newRoot.children[1] = splitNode;
+			newRoot.n = 1;
+			root = newRoot;
+			splitNode = null;
+			splitKey = null;
+		}
+		size++;
+		return true;
+	}
+
+	/**
+	 * Add an element inside the subtree with node as root. If the node
+	 * overflows it is split and the new node is left in splitNode.
+	 *
+	 * @param node
+	 *            the root of the subtree.
+	 * @param el
+	 *            the element to add.
+	 * @return true if the element has been added, false if already present.
+	 */
+	private boolean inserisci(BNode node, T el) {
+		if (node instanceof Leaf) {
+			int i = cerca(node, el);
+			if (i >= 0)
+				return false;
+			i = -(i + 1);
+			System.arraycopy(node.keys, i, node.keys, i + 1, node.n - i);
+			node.keys[i] = el;
+			node.n++;
+			if (node.n > order)
+				dividiFoglia((Leaf) node);
+			return true;
+		}
+		Inner inner = (Inner) node;
+		int c = figlio(inner, el);
+		if (!inserisci(inner.children[c], el))
+			return false;
+		if (splitNode != null) {
+			// The child has been split: the new separator goes at position c.
+			System.arraycopy(inner.keys, c, inner.keys, c + 1, inner.n - c);
+			System.arraycopy(inner.children, c + 1, inner.children, c + 2, inner.n - c);
+			inner.keys[c] = splitKey;
+			inner.children[c + 1] = splitNode;
+			inner.n++;
+			splitNode = null;
+			splitKey = null;
+			if (inner.n > order)
+				dividiInterno(inner);
+		}
+		return true;
+	}
+
+	/**
+	 * Splits a full leaf in two halves.
+	 *
+	 * @param leaf
+	 *            the leaf to split.
+	 */
+	private void dividiFoglia(Leaf leaf) {
+		Leaf right = new Leaf(order);
+		int mid = leaf.n / 2;
+		right.n = leaf.n - mid;
+		System.arraycopy(leaf.keys, mid, right.keys, 0, right.n);
+		Arrays.fill(leaf.keys, mid, leaf.n, null);
+		leaf.n = mid;
+		right.next = leaf.next;
+		leaf.next = right;
+		splitKey = right.keys[0];
+		splitNode = right;
+	}
+
+	/**
+	 * Splits a full internal node in two halves, the middle key goes up to
+	 * the parent.
+	 *
+	 * @param node
+	 *            the node to split.
+	 */
+	private void dividiInterno(Inner node) {
+		Inner right = new Inner(order);
+		int mid = node.n / 2;
+		right.n = node.n - mid - 1;
+		System.arraycopy(node.keys, mid + 1, right.keys, 0, right.n);
+		System.arraycopy(node.children, mid + 1, right.children, 0, right.n + 1);
+		splitKey = node.keys[mid];
+		Arrays.fill(node.keys, mid, node.n, null);
+		Arrays.fill(node.children, mid + 1, node.n + 1, null);
+		node.n = mid;
+		splitNode = right;
+	}
+
+	/**
+	 * Remove an object inside the collection
+	 *
+	 * @param o
+	 *            the element to remove
+	 * @return true if the element was successfully removed, false otherwise
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean remove(Object o) {
+		if (o == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		if (!estrai(root, (T) o))
+			return false;
+		// If the root is an internal node without keys the tree shrinks.
+		if (root instanceof Inner && root.n == 0)
+			root = ((Inner) root).children[0];
+		size--;
+		return true;
+	}
+
+	/**
+	 * Removes an element from the subtree with node as root, fixing the
+	 * children that have too few keys.
+	 *
+	 * @param node
+	 *            the root of the subtree.
+	 * @param el
+	 *            the element to remove.
+	 * @return true if the element has been removed, false if not present.
+	 */
+	private boolean estrai(BNode node, T el) {
+		if (node instanceof Leaf) {
+			int i = cerca(node, el);
+			if (i < 0)
+				return false;
+			System.arraycopy(node.keys, i + 1, node.keys, i, node.n - i - 1);
+			node.keys[--node.n] = null;
+			return true;
+		}
+		Inner inner = (Inner) node;
+		int c = figlio(inner, el);
+		if (!estrai(inner.children[c], el))
+			return false;
+		if (inner.children[c].n < minKeys)
+			ripara(inner, c);
+		return true;
+	}
+
+	/**
+	 * Fixes a child with too few keys borrowing a key from a sibling or
+	 * merging it with a sibling.
+	 *
+	 * @param parent
+	 *            the parent of the child.
+	 * @param c
+	 *            the index of the child.
+	 */
+	private void ripara(Inner parent, int c) {
+		BNode child = parent.children[c];
+		BNode left = c > 0 ? parent.children[c - 1] : null;
+		BNode right = c < parent.n ? parent.children[c + 1] : null;
+
+		if (left != null && left.n > minKeys) {
+			// Borrows the last key of the left sibling.
+			System.arraycopy(child.keys, 0, child.keys, 1, child.n);
+			if (child instanceof Leaf) {
+				child.keys[0] = left.keys[left.n - 1];
+				parent.keys[c - 1] = child.keys[0];
+			} else {
+				Inner ch = (Inner) child;
+				Inner l = (Inner) left;
+				System.arraycopy(ch.children, 0, ch.children, 1, ch.n + 1);
+				ch.keys[0] = parent.keys[c - 1];
+				ch.children[0] = l.children[l.n];
+				l.children[l.n] = null;
+				parent.keys[c - 1] = l.keys[l.n - 1];
+			}
+			left.keys[--left.n] = null;
+			child.n++;
+		} else if (right != null && right.n > minKeys) {
+			// Borrows the first key of the right sibling.
+			if (child instanceof Leaf) {
+				child.keys[child.n] = right.keys[0];
+				System.arraycopy(right.keys, 1, right.keys, 0, right.n - 1);
+				right.keys[--right.n] = null;
+				parent.keys[c] = right.keys[0];
+			} else {
+				Inner ch = (Inner) child;
+				Inner r = (Inner) right;
+				ch.keys[ch.n] = parent.keys[c];
+				ch.children[ch.n + 1] = r.children[0];
+				parent.keys[c] = r.keys[0];
+				System.arraycopy(r.keys, 1, r.keys, 0, r.n - 1);
+				System.arraycopy(r.children, 1, r.children, 0, r.n);
+				r.children[r.n] = null;
+				r.keys[--r.n] = null;
+			}
+			child.n++;
+		} else if (left != null) {
+			unisci(parent, c - 1);
+		} else {
+			unisci(parent, c);
+		}
+	}
+
+	/**
+	 * Merges the child at position i with the following one.
+	 *
+	 * @param parent
+	 *            the parent of the two children.
+	 * @param i
+	 *            the index of the left child.
+	 */
+	private void unisci(Inner parent, int i) {
+		BNode left = parent.children[i];
+		BNode right = parent.children[i + 1];
+		if (left instanceof Leaf) {
+			System.arraycopy(right.keys, 0, left.keys, left.n, right.n);
+			left.n += right.n;
+			((Leaf) left).next = ((Leaf) right).next;
+		} else {
+			Inner l = (Inner) left;
+			Inner r = (Inner) right;
+			// The separator goes down between the keys of the two nodes.
+			l.keys[l.n] = parent.keys[i];
+			System.arraycopy(r.keys, 0, l.keys, l.n + 1, r.n);
+			System.arraycopy(r.children, 0, l.children, l.n + 1, r.n + 1);
+			l.n += r.n + 1;
+		}
+		System.arraycopy(parent.keys, i + 1, parent.keys, i, parent.n - i - 1);
+		System.arraycopy(parent.children, i + 2, parent.children, i + 1, parent.n - i - 1);
+		parent.n--;
+		parent.keys[parent.n] = null;
+		parent.children[parent.n + 1] = null;
+	}
+
+	/** Removes all the elements from this set. */
+	@Override
+	public void clear() {
+		root = new Leaf(order);
+		size = 0;
+	}
+
+	/** Returns the cardinality of this set. */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/** Returns the first leaf of the tree. */
+	private Leaf primaFoglia() {
+		BNode node = root;
+		while (node instanceof Inner)
+			node = ((Inner) node).children[0];
+		return (Leaf) node;
+	}
+
+	/**
+	 * Returns the leaf in which the first element greater or equal than the
+	 * specified one has to be searched.
+	 *
+	 * @param el
+	 *            the lower bound.
+	 * @return the leaf that contains (or would contain) the element.
+	 */
+	private Leaf cercaFoglia(T el) {
+		BNode node = root;
+		while (node instanceof Inner)
+			node = ((Inner) node).children[figlio(node, el)];
+		return (Leaf) node;
+	}
+
+	/** Define an iterator to run(in order) the objects in the collection */
+	@Override
+	public Iterator<T> iterator() {
+		return new LeafIterator(primaFoglia(), 0, null);
+	}
+
+	/** Iterator that follows the linked leaves. */
+	private class LeafIterator implements Iterator<T> {
+		/** Current leaf. */
+		private Leaf leaf;
+		/** Index of the next element inside the current leaf. */
+		private int index;
+		/** High endpoint (exclusive) of the iteration, null if not bounded. */
+		private final T toElement;
+		/** Last element returned by next(), null if it can't be removed. */
+		private T last;
+
+		LeafIterator(Leaf leaf, int index, T toElement) {
+			this.leaf = leaf;
+			this.index = index;
+			this.toElement = toElement;
+			avanza();
+		}
+
+		/** Moves to the next leaf when the current one is over. */
+		private void avanza() {
+			while (leaf != null && index >= leaf.n) {
+				leaf = leaf.next;
+				index = 0;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public boolean hasNext() {
+			return leaf != null && (toElement == null || compara((T) leaf.keys[index], toElement) < 0);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public T next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			T el = (T) leaf.keys[index++];
+			avanza();
+			last = el;
+			return el;
+		}
+
+		/**
+		 * Removes the last element returned by next(). The removal can merge
+		 * or rebalance the leaves, so the iteration restarts from the leaf
+		 * that now contains the elements after the removed one.
+		 */
+		@Override
+		public void remove() {
+			if (last == null)
+				throw new IllegalStateException();
+			BTreeSortedSet.this.remove(last);
+			leaf = cercaFoglia(last);
+			int i = cerca(leaf, last);
+			index = -(i + 1);
+			last = null;
+			avanza();
+		}
+	}
+
+	/**
+	 * Returns an iterator over the elements from fromElement (inclusive) to
+	 * toElement (exclusive).
+	 *
+	 * @param fromElement
+	 *            low endpoint, null if not bounded.
+	 * @param toElement
+	 *            high endpoint, null if not bounded.
+	 * @return an iterator over the range.
+	 */
+	private Iterator<T> rangeIterator(T fromElement, T toElement) {
+		if (fromElement == null)
+			return new LeafIterator(primaFoglia(), 0, toElement);
+		Leaf leaf = cercaFoglia(fromElement);
+		int i = cerca(leaf, fromElement);
+		return new LeafIterator(leaf, i >= 0 ? i : -(i + 1), toElement);
+	}
+
+	/**
+	 * Copies a range of this set in a new set.
+	 *
+	 * @param fromElement
+	 *            low endpoint (inclusive), null if not bounded.
+	 * @param toElement
+	 *            high endpoint (exclusive), null if not bounded.
+	 * @return a new set with the elements of the range.
+	 */
+	private SortedSet<T> copiaRange(T fromElement, T toElement) {
+		BTreeSortedSet<T> set = new BTreeSortedSet<T>(order, comparator);
+		Iterator<T> iterator = rangeIterator(fromElement, toElement);
+		while (iterator.hasNext())
+			set.add(iterator.next());
+		return set;
+	}
+
+	/**
+	 * Returns the comparator used in this set, null if it uses the natural
+	 * ordering of the elements.
+	 */
+	@Override
+	public Comparator<? super T> comparator() {
+		return comparator;
+	}
+
+	/**
+	 * Returns the first (lowest) element currently in this set.
+	 *
+	 * @return Returns the first (lowest) element currently in this set.
+	 * @throws NoSuchElementException
+	 *             if this set is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public T first() {
+		if (size == 0)
+			throw new NoSuchElementException("The set is empty");
+		return (T) primaFoglia().keys[0];
+	}
+
+	/**
+	 * Returns the last (highest) element currently in this set.
+	 *
+	 * @return Returns the last (highest) element currently in this set.
+	 * @throws NoSuchElementException
+	 *             if this set is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public T last() {
+		if (size == 0)
+			throw new NoSuchElementException("The set is empty");
+		BNode node = root;
+		while (node instanceof Inner)
+			node = ((Inner) node).children[node.n];
+		return (T) node.keys[node.n - 1];
+	}
+
+	/**
+	 * Returns the portion of this set whose elements are strictly less than
+	 * toElement. Note: as in mySortedSet, the returned set is not backed by
+	 * this set.
+	 *
+	 * @param toElement
+	 *            high endpoint (exclusive) of the returned set.
+	 * @return a new set with the elements strictly less than toElement.
+	 */
+	@Override
+	public SortedSet<T> headSet(T toElement) {
+		if (toElement == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		return copiaRange(null, toElement);
+	}
+
+	/**
+	 * Returns the portion of this set whose elements range from fromElement,
+	 * inclusive, to toElement, exclusive. Note: as in mySortedSet, the
+	 * returned set is not backed by this set.
+	 *
+	 * @param fromElement
+	 *            low endpoint (inclusive) of the returned set.
+	 * @param toElement
+	 *            high endpoint (exclusive) of the returned set.
+	 * @return a new set with the elements of the range.
+	 */
+	@Override
+	public SortedSet<T> subSet(T fromElement, T toElement) {
+		if (fromElement == null || toElement == null)
+			throw new NullPointerException("Null elements not allowed!!!");
+		if (compara(fromElement, toElement) > 0)
+			throw new IllegalArgumentException(
+					"Invalid values: the left value of the parameter must be lower than the right one");
+		return copiaRange(fromElement, toElement);
+	}
+
+	/**
+	 * Returns the portion of this set whose elements are greater than or
+	 * equal to fromElement. Note: as in mySortedSet, the returned set is not
+	 * backed by this set.
+	 *
+	 * @param fromElement
+	 *            low endpoint (inclusive) of the returned set.
+	 * @return a new set with the elements greater or equal than fromElement.
+	 */
+	@Override
+	public SortedSet<T> tailSet(T fromElement) {
+		if (fromElement == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		return copiaRange(fromElement, null);
+	}
+
+}
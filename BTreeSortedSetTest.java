@@ -0,0 +1,76 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks the B+ tree set against a TreeSet with random insertions, removals,
+ * ranges and removals through the iterator.
+ */
+public class BTreeSortedSetTest extends TestSupport {
+
+	public static void main(String[] args) {
+		Random rnd = new Random(27);
+		BTreeSortedSet<Integer> set = new BTreeSortedSet<Integer>(BTreeSortedSet.MIN_ORDER);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int op = 0; op < 20000; op++) {
+			Integer x = rnd.nextInt(5000);
+			if (rnd.nextInt(3) > 0)
+				verifica(set.add(x) == expected.add(x), "add " + x);
+			else
+				verifica(set.remove(x) == expected.remove(x), "remove " + x);
+			verifica(set.contains(x) == expected.contains(x), "contains " + x);
+		}
+		verifica(set.equals(expected) && set.size() == expected.size(), "content");
+		verifica(set.first().equals(expected.first()) && set.last().equals(expected.last()), "first/last");
+		verifica(set.subSet(1000, 2000).equals(expected.subSet(1000, 2000)), "subSet");
+		verifica(set.headSet(700).equals(expected.headSet(700)), "headSet");
+		verifica(set.tailSet(4300).equals(expected.tailSet(4300)), "tailSet");
+
+		// Removals through the iterator, also of whole leaves.
+		Iterator<Integer> it = set.iterator();
+		while (it.hasNext()) {
+			Integer x = it.next();
+			if (x % 3 == 0 || (x > 2000 && x < 3000))
+				it.remove();
+		}
+		expected.removeIf(x -> x % 3 == 0 || (x > 2000 && x < 3000));
+		verifica(set.equals(expected) && set.size() == expected.size(), "iterator remove");
+		try {
+			set.iterator().remove();
+			verifica(false, "remove before next");
+		} catch (IllegalStateException e) {
+		}
+
+		List<Integer> some = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++)
+			some.add(rnd.nextInt(5000));
+		verifica(set.removeAll(some) == expected.removeAll(some), "removeAll");
+		verifica(set.equals(expected), "removeAll content");
+		some.clear();
+		for (int i = 0; i < 3000; i++)
+			some.add(rnd.nextInt(5000));
+		verifica(set.retainAll(some) == expected.retainAll(some), "retainAll");
+		verifica(set.equals(expected) && set.size() == expected.size(), "retainAll content");
+
+		// The same set ordered by a comparator.
+		BTreeSortedSet<Integer> reverse = new BTreeSortedSet<Integer>(Collections.<Integer>reverseOrder());
+		TreeSet<Integer> expectedReverse = new TreeSet<Integer>(Collections.<Integer>reverseOrder());
+		for (int op = 0; op < 20000; op++) {
+			Integer x = rnd.nextInt(5000);
+			if (rnd.nextInt(3) > 0)
+				verifica(reverse.add(x) == expectedReverse.add(x), "add " + x);
+			else
+				verifica(reverse.remove(x) == expectedReverse.remove(x), "remove " + x);
+		}
+		verifica(reverse.comparator() == expectedReverse.comparator(), "comparator");
+		verificaElementi(reverse, expectedReverse, "reverse order");
+		verifica(reverse.first().equals(expectedReverse.first()), "reverse first");
+		verifica(reverse.subSet(3000, 1000).equals(expectedReverse.subSet(3000, 1000)), "reverse subSet");
+		verifica(reverse.headSet(2500).equals(expectedReverse.headSet(2500)), "reverse headSet");
+		System.out.println("BTreeSortedSetTest OK");
+	}
+
+}
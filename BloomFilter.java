@@ -0,0 +1,104 @@
+
+/**
+ * Bloom filter used as an optional front of a sorted set. A Bloom filter can
+ * tell for sure that an element is NOT present, while a positive answer only
+ * means that the element may be present (false positives are possible, false
+ * negatives are not).
+ */
+public class BloomFilter {
+
+	/** Bits of the filter, packed in longs. */
+	private final long[] bits;
+	/** Number of bits of the filter. */
+	private final int numBits;
+	/** Number of hash functions used for every element. */
+	private final int numHashes;
+
+	/**
+	 * Creates a filter sized for the expected number of elements and the
+	 * desired false positive probability.
+	 *
+	 * @param expectedElements
+	 *            number of elements the filter is sized for.
+	 * @param falsePositiveProbability
+	 *            desired probability of false positives, between 0 and 1
+	 *            (exclusive).
+	 * @throws IllegalArgumentException
+	 *             if the parameters are not valid.
+	 */
+	public BloomFilter(int expectedElements, double falsePositiveProbability) {
+		if (expectedElements <= 0)
+			throw new IllegalArgumentException("Error: the expected number of elements must be positive");
+		if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1)
+			throw new IllegalArgumentException("Error: the false positive probability must be between 0 and 1");
+		/*
+		 * Optimal number of bits: m = -n ln(p) / (ln 2)^2, optimal number of
+		 * hash functions: k = m / n ln 2.
+		 */
+		long m = (long) Math.ceil(-expectedElements * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+		if (m > Integer.MAX_VALUE - 63)
+			m = Integer.MAX_VALUE - 63;
+		numBits = (int) Math.max(64, m);
+		numHashes = (int) Math.max(1, Math.round((double) numBits / expectedElements * Math.log(2)));
+		bits = new long[(numBits + 63) >>> 6];
+	}
+
+	/**
+	 * Adds an element to the filter.
+	 *
+	 * @param el
+	 *            the element to add.
+	 */
+	public void put(Object el) {
+		long h = mix(el.hashCode());
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32) | 1;
+		// Double hashing: the i-th probe is h1 + i * h2 (h2 is forced odd so
+		// the probes do not degenerate to a single bit).
+		for (int i = 0; i < numHashes; i++) {
+			int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+			bits[bit >>> 6] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * Checks if an element may be present inside the filter.
+	 *
+	 * @param el
+	 *            the element to search for.
+	 * @return false if the element is surely not present, true if it may be
+	 *         present.
+	 */
+	public boolean mightContain(Object el) {
+		long h = mix(el.hashCode());
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32) | 1;
+		for (int i = 0; i < numHashes; i++) {
+			int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+			if ((bits[bit >>> 6] & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/** It makes the filter empty. */
+	public void clear() {
+		java.util.Arrays.fill(bits, 0L);
+	}
+
+	/**
+	 * Spreads the bits of the hash code of an element over a long, so that
+	 * the two halves can be used as independent hashes.
+	 *
+	 * @param hash
+	 *            the hash code of the element.
+	 * @return the mixed hash.
+	 */
+	private static long mix(int hash) {
+		long z = hash * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+}
@@ -0,0 +1,75 @@
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks the Bloom filter in front of mySortedSet: no element may be missed,
+ * also when compareTo() looks only at a part of the element, and the false
+ * positives must stay bounded when the set grows past the expected elements.
+ */
+public class BloomSetTest extends TestSupport {
+
+	/* An element ordered only by its key: compareTo is not consistent with equals. */
+	static class Voce implements Comparable<Voce> {
+		final int key;
+		final String value;
+
+		Voce(int key, String value) {
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public int compareTo(Voce o) {
+			return Integer.compare(key, o.key);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Voce && ((Voce) o).key == key && ((Voce) o).value.equals(value);
+		}
+
+		@Override
+		public int hashCode() {
+			return key * 31 + value.hashCode();
+		}
+	}
+
+	public static void main(String[] args) {
+		AVLTree.mySortedSet<Voce> voci = new AVLTree.mySortedSet<Voce>(100, 0.01);
+		for (int i = 0; i < 100; i++)
+			voci.add(new Voce(i, "a"));
+		for (int i = 0; i < 100; i++)
+			verifica(voci.contains(new Voce(i, "b")), "missed " + i);
+
+		// A comparator may find equal strings that have different hashes.
+		AVLTree.mySortedSet<String> nomi = new AVLTree.mySortedSet<String>(String.CASE_INSENSITIVE_ORDER, 100, 0.01,
+				false);
+		for (int i = 0; i < 100; i++)
+			nomi.add("nome" + i);
+		for (int i = 0; i < 100; i++)
+			verifica(nomi.contains("NOME" + i), "missed NOME" + i);
+
+		// The set grows ten times past the elements the filter is sized for.
+		Random rnd = new Random(26);
+		AVLTree.mySortedSet<Integer> set = new AVLTree.mySortedSet<Integer>(1000, 0.01);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int i = 0; i < 10000; i++) {
+			int x = rnd.nextInt(1 << 30);
+			set.add(x);
+			expected.add(x);
+		}
+		for (int i = 0; i < 500; i++) {
+			Integer x = expected.pollFirst();
+			verifica(set.remove(x), "remove " + x);
+		}
+		for (Integer x : expected)
+			verifica(set.contains(x), "missed " + x);
+		for (int i = 0; i < 20000; i++) {
+			int x = rnd.nextInt(1 << 30);
+			verifica(set.contains(x) == expected.contains(x), "contains " + x);
+		}
+		verifica(set.bloomFalsePositiveRate() < 0.05, "false positive rate " + set.bloomFalsePositiveRate());
+		System.out.println("BloomSetTest OK");
+	}
+
+}
@@ -0,0 +1,78 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks the bounded set against a TreeSet trimmed by hand to the same
+ * capacity, evicting from both sides, with the natural ordering and with a
+ * comparator.
+ */
+public class BoundedSortedSetTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(() -> {
+			Random rnd = new Random(49);
+			for (AVLTree.BoundedSortedSet.Evict evict : AVLTree.BoundedSortedSet.Evict.values())
+				prova(evict, rnd);
+
+			// With the reversed ordering MAX evicts the lowest strings.
+			AVLTree.BoundedSortedSet<String> reversed = new AVLTree.BoundedSortedSet<String>(3,
+					AVLTree.BoundedSortedSet.Evict.MAX, Collections.reverseOrder());
+			for (String x : "d a c b e f".split(" "))
+				reversed.add(x);
+			verificaElementi(reversed, Arrays.asList("f", "e", "d"), "reversed ordering");
+		});
+		System.out.println("BoundedSortedSetTest OK");
+	}
+
+	private static void prova(AVLTree.BoundedSortedSet.Evict evict, Random rnd) {
+		int capacity = 100;
+		boolean min = evict == AVLTree.BoundedSortedSet.Evict.MIN;
+		AVLTree.BoundedSortedSet<Integer> set = new AVLTree.BoundedSortedSet<Integer>(capacity, evict);
+		verifica(set.capacity() == capacity && set.evict() == evict, "capacity and evict");
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int op = 0; op < 300000; op++) {
+			Integer x = rnd.nextInt(100000);
+			boolean added;
+			if (expected.size() >= capacity && (min ? x <= expected.first() : x >= expected.last())) {
+				// it would be evicted at once
+				added = false;
+			} else {
+				added = expected.add(x);
+				if (expected.size() > capacity) {
+					if (min)
+						expected.pollFirst();
+					else
+						expected.pollLast();
+				}
+			}
+			verifica(set.add(x) == added, evict + " add " + x);
+			verifica(set.size() == expected.size(), evict + " size");
+			if (op % 1000 == 0 && rnd.nextInt(4) == 0) {
+				Integer y = expected.first();
+				verifica(set.remove(y) && expected.remove(y), evict + " remove");
+			}
+		}
+		verificaElementi(set, expected, evict + " content");
+		verifica(set.hashCode() == expected.hashCode(), evict + " hashCode");
+
+		// addAll goes through the same eviction.
+		ArrayList<Integer> more = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++)
+			more.add(rnd.nextInt(200000));
+		set.addAll(more);
+		for (Integer x : more) {
+			expected.add(x);
+			if (expected.size() > capacity) {
+				if (min)
+					expected.pollFirst();
+				else
+					expected.pollLast();
+			}
+		}
+		verificaElementi(set, expected, evict + " addAll");
+	}
+
+}
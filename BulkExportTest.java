@@ -0,0 +1,69 @@
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks the bulk exports of the sorted set (toArray, the primitive arrays,
+ * the streams and writeTo) against the same elements taken from a TreeSet.
+ */
+public class BulkExportTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(BulkExportTest::prova);
+		System.out.println("BulkExportTest OK");
+	}
+
+	private static void prova() {
+		Random rnd = new Random(38);
+		AVLTree.mySortedSet<Integer> set = new AVLTree.mySortedSet<Integer>();
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int i = 0; i < 3000; i++) {
+			Integer x = rnd.nextInt(50000) - 100;
+			set.add(x);
+			expected.add(x);
+		}
+
+		verifica(Arrays.equals(set.toArray(), expected.toArray()), "toArray");
+		verifica(Arrays.equals(set.toArray(new Integer[0]), expected.toArray(new Integer[0])), "toArray(T[])");
+		// A bigger array is reused and the element after the last one is set to null.
+		Integer[] big = new Integer[expected.size() + 3];
+		Arrays.fill(big, 7);
+		verifica(set.toArray(big) == big, "toArray(T[]) reuses the array");
+		verifica(big[expected.size()] == null && big[expected.size() + 1] == 7, "toArray(T[]) null terminator");
+		try {
+			set.toArray(new String[0]);
+			verifica(false, "toArray with the wrong type");
+		} catch (ArrayStoreException e) {
+		}
+
+		int[] ints = expected.stream().mapToInt(x -> x).toArray();
+		verifica(Arrays.equals(set.toIntArray(), ints), "toIntArray");
+		verifica(Arrays.equals(set.intStream().toArray(), ints), "intStream");
+		long[] longs = expected.stream().mapToLong(x -> x).toArray();
+		verifica(Arrays.equals(set.toLongArray(), longs), "toLongArray");
+		verifica(Arrays.equals(set.longStream().toArray(), longs), "longStream");
+
+		ByteBuffer buffer = ByteBuffer.allocate(ints.length * 4);
+		verifica(set.writeTo(buffer) == ints.length, "writeTo");
+		buffer.flip();
+		for (int x : ints)
+			verifica(buffer.getInt() == x, "writeTo content");
+		try {
+			set.writeTo(ByteBuffer.allocate(10));
+			verifica(false, "writeTo on a small buffer");
+		} catch (BufferOverflowException e) {
+		}
+
+		// The repeated elements of a multiset are exported once for each occurrence.
+		AVLTree.mySortedMultiset<Long> multiset = new AVLTree.mySortedMultiset<Long>();
+		multiset.add(3L);
+		multiset.add(3L);
+		multiset.add(1L);
+		verifica(Arrays.equals(multiset.toLongArray(), new long[] { 1, 3, 3 }), "multiset toLongArray");
+		verifica(multiset.longStream().count() == 3, "multiset longStream");
+		verifica(Arrays.equals(multiset.toArray(), new Object[] { 1L, 3L, 3L }), "multiset toArray");
+	}
+
+}
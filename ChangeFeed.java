@@ -0,0 +1,333 @@
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Subscription to the changes of a sorted set, created by
+ * {@link AVLTree.mySortedSet#subscribe(Listener, int, Backpressure)}. Every
+ * insertion, removal and clear() of the set is written in a bounded ring
+ * buffer, and a thread of the subscription delivers the changes to the
+ * listener in batches. The set writes in the buffer without locks and
+ * without allocations (only the thread that modifies the set may write), so
+ * a subscription adds a few nanoseconds to each modification. When the
+ * buffer is full the backpressure policy decides what happens.
+ */
+public class ChangeFeed<T> implements Closeable {
+
+	/** What the set does when the buffer of a subscription is full. */
+	public enum Backpressure {
+		/** The modification of the set waits for the listener. */
+		BLOCK,
+		/** The change is lost and counted in dropped(). */
+		DROP,
+		/**
+		 * The changes are merged by element, only the last change of every
+		 * element is delivered (a clear() replaces all of them).
+		 */
+		COALESCE
+	}
+
+	/** Receives the changes of a set. */
+	public interface Listener<T> {
+
+		/**
+		 * Receives a batch of changes, in the order they happened (the
+		 * coalesced changes after the others).
+		 *
+		 * @param batch
+		 *            the changes, the list is not modifiable.
+		 */
+		void onChanges(List<Change<T>> batch);
+	}
+
+	/** A change of the set. */
+	public static final class Change<T> {
+
+		/** Type of a change. */
+		public enum Type {
+			INSERT, REMOVE, CLEAR
+		}
+
+		private static final Type[] TYPES = Type.values();
+
+		/** Type of the change. */
+		private final Type type;
+		/** Element inserted or removed, null for CLEAR. */
+		private final T element;
+
+		Change(Type type, T element) {
+			this.type = type;
+			this.element = element;
+		}
+
+		/** Returns the type of the change. */
+		public Type getType() {
+			return type;
+		}
+
+		/**
+		 * Returns the element inserted or removed, null for CLEAR. A removal
+		 * gives the element kept by the set, not the argument of remove().
+		 */
+		public T getElement() {
+			return element;
+		}
+
+		@Override
+		public String toString() {
+			return type == Type.CLEAR ? "CLEAR" : type + " " + element;
+		}
+	}
+
+	/** Maximum number of changes delivered in a batch. */
+	private static final int MAX_BATCH = 1024;
+	/** Key of a clear() in the coalesced changes. */
+	private static final Object CLEAR_KEY = new Object();
+	/** Number of the subscriptions created, used to name the threads. */
+	private static final AtomicLong created = new AtomicLong();
+
+	/** The set that is followed. */
+	private final AVLTree.mySortedSet<?> set;
+	/** Receives the changes. */
+	private final Listener<T> listener;
+	/** Policy used when the buffer is full. */
+	private final Backpressure policy;
+
+	/** Elements of the changes in the buffer. */
+	private final Object[] elements;
+	/** Types of the changes in the buffer (ordinal of Change.Type). */
+	private final byte[] types;
+	/** Capacity of the buffer - 1, the capacity is a power of two. */
+	private final int mask;
+	/** Position of the next change to write, read by the listener thread. */
+	private final AtomicLong tail = new AtomicLong();
+	/** Position of the next change to read, read by the writer. */
+	private final AtomicLong head = new AtomicLong();
+	/** Copy of tail owned by the writer. */
+	private long writePos;
+	/** Last value of head read by the writer. */
+	private long headCache;
+
+	/**
+	 * Changes merged by element when the buffer was full (COALESCE only),
+	 * in the order of their last change; guarded by itself.
+	 */
+	private final Map<Object, Change.Type> coalesced = new LinkedHashMap<Object, Change.Type>();
+	/** True while coalesced is not empty. */
+	private volatile boolean coalescing;
+
+	/** Number of changes lost with the DROP policy. */
+	private volatile long dropped;
+	/** Number of batches whose listener threw an exception. */
+	private volatile long errors;
+	/** True after close(). */
+	private volatile boolean closed;
+
+	/** Thread that delivers the changes. */
+	private final Thread deliverer;
+
+	/**
+	 * Creates a subscription and starts its thread.
+	 *
+	 * @param set
+	 *            the set that is followed.
+	 * @param listener
+	 *            receives the changes.
+	 * @param capacity
+	 *            the minimum capacity of the buffer, rounded up to a power
+	 *            of two.
+	 * @param policy
+	 *            what happens when the buffer is full.
+	 */
+	ChangeFeed(AVLTree.mySortedSet<?> set, Listener<T> listener, int capacity, Backpressure policy) {
+		if (set == null || listener == null || policy == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		if (capacity < 1 || capacity > 1 << 30)
+			throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		this.set = set;
+		this.listener = listener;
+		this.policy = policy;
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		this.elements = new Object[size];
+		this.types = new byte[size];
+		this.mask = size - 1;
+		this.deliverer = new Thread(new Runnable() {
+			public void run() {
+				consegna();
+			}
+		}, "ChangeFeed-" + created.incrementAndGet());
+		this.deliverer.setDaemon(true);
+		this.deliverer.start();
+	}
+
+	/**
+	 * Records a change; called by the set after every modification, always
+	 * from the same thread.
+	 *
+	 * @param type
+	 *            the type of the change.
+	 * @param el
+	 *            the element inserted or removed, null for CLEAR.
+	 */
+	void publish(Change.Type type, Object el) {
+		if (closed)
+			return;
+		if (coalescing) {
+			coalesce(type, el);
+			return;
+		}
+		long t = writePos;
+		if (t - headCache > mask) {
+			headCache = head.get();
+			if (t - headCache > mask) {
+				pieno(type, el);
+				return;
+			}
+		}
+		int i = (int) t & mask;
+		elements[i] = el;
+		types[i] = (byte) type.ordinal();
+		writePos = t + 1;
+		// Ordered store: the slot is visible before the new tail.
+		tail.lazySet(t + 1);
+	}
+
+	/** Applies the backpressure policy to a change that doesn't fit. */
+	private void pieno(Change.Type type, Object el) {
+		switch (policy) {
+		case DROP:
+			dropped++;
+			return;
+		case COALESCE:
+			coalesce(type, el);
+			return;
+		default:
+			// BLOCK: waits until the listener thread frees a slot.
+			while (writePos - head.get() > mask) {
+				if (closed || !deliverer.isAlive())
+					return;
+				LockSupport.parkNanos(1000);
+			}
+			headCache = head.get();
+			publish(type, el);
+		}
+	}
+
+	/** Merges a change with the coalesced ones. */
+	private void coalesce(Change.Type type, Object el) {
+		synchronized (coalesced) {
+			if (type == Change.Type.CLEAR) {
+				coalesced.clear();
+				coalesced.put(CLEAR_KEY, type);
+			} else {
+				// The last change of the element goes to the end.
+				coalesced.remove(el);
+				coalesced.put(el, type);
+			}
+			coalescing = true;
+		}
+	}
+
+	/** Body of the listener thread: reads and delivers the batches. */
+	@SuppressWarnings("unchecked")
+	private void consegna() {
+		int idle = 0;
+		while (true) {
+			long h = head.get();
+			long t = tail.get();
+			List<Change<T>> batch = null;
+			if (t > h) {
+				int n = (int) Math.min(t - h, MAX_BATCH);
+				batch = new ArrayList<Change<T>>(n);
+				for (int k = 0; k < n; k++) {
+					int i = (int) (h + k) & mask;
+					batch.add(new Change<T>(Change.TYPES[types[i]], (T) elements[i]));
+					elements[i] = null;
+				}
+				head.lazySet(h + n);
+			} else if (coalescing) {
+				// The buffer is empty: now the coalesced changes can follow.
+				synchronized (coalesced) {
+					batch = new ArrayList<Change<T>>(coalesced.size());
+					for (Map.Entry<Object, Change.Type> e : coalesced.entrySet())
+						batch.add(new Change<T>(e.getValue(), e.getKey() == CLEAR_KEY ? null : (T) e.getKey()));
+					coalesced.clear();
+					coalescing = false;
+				}
+			}
+			if (batch != null) {
+				idle = 0;
+				try {
+					listener.onChanges(Collections.unmodifiableList(batch));
+				} catch (RuntimeException e) {
+					errors++;
+					System.err.println("ChangeFeed listener error: " + e);
+				}
+				continue;
+			}
+			if (closed)
+				return;
+			// Nothing to deliver: it waits longer and longer, up to 1 ms.
+			if (idle < 100)
+				Thread.yield();
+			else
+				LockSupport.parkNanos(Math.min(1000000L, 1000L << Math.min(idle - 100, 10)));
+			idle++;
+		}
+	}
+
+	/**
+	 * Returns the number of changes lost because the buffer was full (DROP
+	 * policy only).
+	 */
+	public long dropped() {
+		return dropped;
+	}
+
+	/** Returns the number of batches whose listener threw an exception. */
+	public long errors() {
+		return errors;
+	}
+
+	/**
+	 * Returns the number of changes written and not yet delivered, the
+	 * coalesced ones excluded.
+	 */
+	public long pending() {
+		return tail.get() - head.get();
+	}
+
+	/**
+	 * Ends the subscription: the set stops writing changes and the thread
+	 * ends after delivering the changes already written.
+	 */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		set.unsubscribe(this);
+	}
+
+	/**
+	 * Waits for the thread of the subscription, after close(), to deliver
+	 * the last changes.
+	 *
+	 * @param millis
+	 *            the maximum time to wait, 0 to wait forever.
+	 * @throws InterruptedException
+	 *             if the waiting thread is interrupted.
+	 */
+	public void awaitTermination(long millis) throws InterruptedException {
+		deliverer.join(millis);
+	}
+
+}
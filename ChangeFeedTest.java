@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks the change feed of the sorted set: with the BLOCK policy the
+ * listener must receive exactly the changes made, in order; with COALESCE
+ * the changes applied to a copy must give back the set; with DROP every
+ * change is either delivered or counted as dropped.
+ */
+public class ChangeFeedTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(() -> {
+			for (ChangeFeed.Backpressure policy : ChangeFeed.Backpressure.values())
+				prova(policy);
+			provaComparatore();
+		});
+		System.out.println("ChangeFeedTest OK");
+	}
+
+	private static void prova(ChangeFeed.Backpressure policy) throws InterruptedException {
+		AVLTree.mySortedSet<Integer> set = new AVLTree.mySortedSet<Integer>();
+		// The changes expected, written as strings.
+		List<String> expected = new ArrayList<String>();
+		// The changes received and a copy of the set built with them.
+		List<String> received = new ArrayList<String>();
+		TreeSet<Integer> copy = new TreeSet<Integer>();
+		ChangeFeed<Integer> feed = set.subscribe(batch -> {
+			for (ChangeFeed.Change<Integer> c : batch) {
+				received.add(c.getType() + " " + c.getElement());
+				switch (c.getType()) {
+				case INSERT:
+					copy.add(c.getElement());
+					break;
+				case REMOVE:
+					copy.remove(c.getElement());
+					break;
+				default:
+					copy.clear();
+				}
+			}
+			try {
+				// a slow listener fills the buffer
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, 64, policy);
+
+		Random rnd = new Random(41);
+		for (int op = 0; op < 3000; op++) {
+			Integer x = rnd.nextInt(400);
+			switch (rnd.nextInt(8)) {
+			case 0:
+				if (set.remove(x))
+					expected.add("REMOVE " + x);
+				break;
+			case 1:
+				if (set.removeAndGet(x) != null)
+					expected.add("REMOVE " + x);
+				break;
+			case 2:
+				if (!set.isEmpty())
+					expected.add("REMOVE " + set.pollFirst());
+				break;
+			case 3:
+				if (op == 1500) {
+					set.clear();
+					expected.add("CLEAR null");
+				} else if (op % 500 == 0) {
+					List<Integer> c = Arrays.asList(x, x + 1, x + 2);
+					for (Integer y : c)
+						if (set.contains(y))
+							expected.add("REMOVE " + y);
+					set.removeAll(c);
+				}
+				break;
+			default:
+				if (set.add(x))
+					expected.add("INSERT " + x);
+			}
+		}
+		feed.close();
+		feed.awaitTermination(10000);
+
+		switch (policy) {
+		case BLOCK:
+			verifica(received.equals(expected), "BLOCK changes");
+			verifica(feed.dropped() == 0, "BLOCK dropped");
+			break;
+		case DROP:
+			verifica(feed.dropped() > 0, "DROP with a slow listener");
+			verifica(received.size() + feed.dropped() == expected.size(), "DROP changes");
+			break;
+		default:
+			verifica(copy.equals(new TreeSet<Integer>(set)), "COALESCE copy");
+		}
+		verifica(feed.errors() == 0 && feed.pending() == 0, policy + " errors or pending");
+		if (policy != ChangeFeed.Backpressure.DROP)
+			verifica(copy.equals(new TreeSet<Integer>(set)), policy + " copy");
+
+		// After close() the set no longer writes changes.
+		int before = received.size();
+		set.add(-1);
+		Thread.sleep(20);
+		verifica(received.size() == before, policy + " change after close");
+	}
+
+	/** The removals carry the element kept by the set, not the argument. */
+	private static void provaComparatore() throws InterruptedException {
+		AVLTree.mySortedSet<String> set = new AVLTree.mySortedSet<String>(String.CASE_INSENSITIVE_ORDER);
+		List<String> received = new ArrayList<String>();
+		ChangeFeed<String> feed = set.subscribe(batch -> {
+			for (ChangeFeed.Change<String> c : batch)
+				received.add(c.getType() + " " + c.getElement());
+		}, 64, ChangeFeed.Backpressure.BLOCK);
+		set.add("abc");
+		set.remove("ABC");
+		set.add("def");
+		set.removeAndGet("DEF");
+		set.add("ghi");
+		set.enableLazyDeletion(0.5);
+		set.remove("GHI");
+		feed.close();
+		feed.awaitTermination(10000);
+		verifica(received.equals(Arrays.asList("INSERT abc", "REMOVE abc", "INSERT def", "REMOVE def", "INSERT ghi",
+				"REMOVE ghi")), "changes with a comparator " + received);
+	}
+
+}
@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/*
+ * Checks the sorted set, the multiset and the map with the natural ordering
+ * and with custom comparators against a TreeSet and a TreeMap with the same
+ * comparator, for the key types with a specialized comparison.
+ */
+public class ComparatorTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(() -> {
+			Random rnd = new Random(45);
+			List<Integer> ints = new ArrayList<Integer>();
+			for (int i = -2000; i < 2000; i++)
+				ints.add(i * 7919 % 4001);
+			List<Long> longs = new ArrayList<Long>();
+			for (long i = 0; i < 4000; i++)
+				longs.add(i * 0x9E3779B97F4A7C15L);
+			List<String> strings = new ArrayList<String>();
+			for (int i = 0; i < 3000; i++) {
+				StringBuilder b = new StringBuilder();
+				for (int n = 1 + rnd.nextInt(4); n > 0; n--)
+					b.append((char) ((rnd.nextBoolean() ? 'a' : 'A') + rnd.nextInt(3)));
+				strings.add(b.toString());
+			}
+			List<Double> doubles = new ArrayList<Double>();
+			for (int i = 0; i < 3000; i++)
+				doubles.add(rnd.nextGaussian());
+
+			prova(null, ints, rnd);
+			prova(Collections.<Integer>reverseOrder(), ints, rnd);
+			prova(null, longs, rnd);
+			prova(null, strings, rnd);
+			prova(String.CASE_INSENSITIVE_ORDER, strings, rnd);
+			prova(null, doubles, rnd);
+			prova(Comparator.<Double>reverseOrder(), doubles, rnd);
+
+			AVLTree.AVLTreeMap<String, Integer> map = new AVLTree.AVLTreeMap<String, Integer>(
+					String.CASE_INSENSITIVE_ORDER);
+			TreeMap<String, Integer> expected = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+			for (int i = 0; i < 5000; i++) {
+				String k = strings.get(rnd.nextInt(strings.size()));
+				map.put(k, i);
+				expected.put(k, i);
+			}
+			verifica(map.equals(expected), "map with a comparator");
+			verificaElementi(map.keySet(), expected.keySet(), "map keys");
+			verifica(map.headMap("b").equals(expected.headMap("b")), "map headMap");
+			verificaElementi(map.descendingMap().keySet(), expected.descendingMap().keySet(), "map descendingMap");
+
+			AVLTree.mySortedMultiset<Integer> multiset = new AVLTree.mySortedMultiset<Integer>(
+					Collections.<Integer>reverseOrder());
+			multiset.add(1);
+			multiset.add(3);
+			multiset.add(3);
+			multiset.add(2);
+			verificaElementi(multiset, Arrays.asList(3, 3, 2, 1), "multiset with a comparator");
+		});
+		System.out.println("ComparatorTest OK");
+	}
+
+	private static <T extends Comparable<T>> void prova(Comparator<? super T> comparator, List<T> values, Random rnd) {
+		String name = values.get(0).getClass().getSimpleName() + " " + comparator;
+		AVLTree.mySortedSet<T> set = new AVLTree.mySortedSet<T>(comparator);
+		TreeSet<T> expected = new TreeSet<T>(comparator);
+		verifica(set.comparator() == comparator, name + " comparator");
+		for (int op = 0; op < 40000; op++) {
+			T x = values.get(rnd.nextInt(values.size()));
+			switch (rnd.nextInt(4)) {
+			case 0:
+			case 1:
+				verifica(set.add(x) == expected.add(x), name + " add " + x);
+				break;
+			case 2:
+				// remove and contains throw an exception on an empty set
+				if (!expected.isEmpty())
+					verifica(set.remove(x) == expected.remove(x), name + " remove " + x);
+				break;
+			default:
+				if (!expected.isEmpty())
+					verifica(set.contains(x) == expected.contains(x), name + " contains " + x);
+			}
+		}
+		verificaElementi(set, expected, name + " content");
+		verifica(set.first().equals(expected.first()) && set.last().equals(expected.last()), name + " first and last");
+
+		T lo = values.get(3), hi = values.get(7);
+		if (expected.comparator() == null ? lo.compareTo(hi) > 0 : comparator.compare(lo, hi) > 0) {
+			T z = lo;
+			lo = hi;
+			hi = z;
+		}
+		verificaElementi(set.subSet(lo, hi), expected.subSet(lo, hi), name + " subSet");
+		verificaElementi(set.headSet(hi), expected.headSet(hi), name + " headSet");
+
+		AVLTree.mySortedSet<T> copy = new AVLTree.mySortedSet<T>(comparator);
+		for (T x : expected)
+			copy.add(x);
+		verifica(set.equals(copy) && set.equals(expected), name + " equals");
+	}
+
+}
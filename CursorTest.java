@@ -0,0 +1,76 @@
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks the cursor against the navigation methods of a TreeSet: seek is
+ * ceiling, next is higher and prev is lower. The same cursor is used for
+ * all the seeks.
+ */
+public class CursorTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(CursorTest::prova);
+		System.out.println("CursorTest OK");
+	}
+
+	private static void prova() {
+		Random rnd = new Random(37);
+		AVLTree.mySortedSet<Integer> set = new AVLTree.mySortedSet<Integer>();
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		AVLTree<Integer>.Cursor cursor = set.cursor();
+		verifica(!cursor.valid(), "cursor on an empty set");
+		try {
+			cursor.current();
+			verifica(false, "current out of the tree");
+		} catch (NoSuchElementException e) {
+		}
+
+		for (int i = 0; i < 3000; i++) {
+			Integer x = rnd.nextInt(5000);
+			set.add(x);
+			expected.add(x);
+		}
+		cursor.reset();
+		verifica(cursor.current().equals(expected.first()), "reset");
+
+		for (int q = 0; q < 2000; q++) {
+			Integer x = rnd.nextInt(5200) - 100;
+			Integer ceiling = expected.ceiling(x);
+			verifica(cursor.seek(x) == (ceiling != null), "seek " + x);
+			if (ceiling == null) {
+				verifica(!cursor.valid(), "valid after the last");
+				continue;
+			}
+			verifica(cursor.current().equals(ceiling), "seek " + x);
+			for (int j = 0; j < 5; j++) {
+				Integer higher = expected.higher(cursor.current());
+				verifica(cursor.next() == (higher != null), "next");
+				if (higher == null)
+					break;
+				verifica(cursor.current().equals(higher), "next");
+			}
+			if (cursor.valid()) {
+				Integer lower = expected.lower(cursor.current());
+				verifica(cursor.prev() == (lower != null), "prev");
+				verifica(lower == null || cursor.current().equals(lower), "prev");
+			}
+		}
+
+		// A full scan and a full scan backwards.
+		cursor.reset();
+		int n = 0;
+		do
+			n++;
+		while (cursor.next());
+		verifica(n == expected.size(), "forward scan");
+		verifica(!cursor.next() && !cursor.valid(), "after the last");
+		cursor.seek(expected.last());
+		n = 0;
+		do
+			n++;
+		while (cursor.prev());
+		verifica(n == expected.size(), "backward scan");
+	}
+
+}
@@ -0,0 +1,93 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks the diff of two digest sets against the set differences computed
+ * with two TreeSets, and that the digests don't depend on the shape of the
+ * trees. The remote replica is wrapped to count the calls.
+ */
+public class DigestSetTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(() -> {
+			for (int differences : new int[] { 0, 1, 40, 2000 })
+				prova(new Random(40 + differences), differences);
+		});
+		System.out.println("DigestSetTest OK");
+	}
+
+	private static void prova(Random rnd, int differences) {
+		AVLTree.DigestSet<Integer> here = new AVLTree.DigestSet<Integer>();
+		AVLTree.DigestSet<Integer> there = new AVLTree.DigestSet<Integer>();
+		TreeSet<Integer> expectedHere = new TreeSet<Integer>(), expectedThere = new TreeSet<Integer>();
+		for (int i = 0; i < 4000; i++) {
+			Integer x = rnd.nextInt(1000000);
+			if (expectedHere.add(x))
+				here.add(x);
+			if (expectedThere.add(x))
+				there.add(x);
+		}
+		for (int i = 0; i < differences; i++) {
+			Integer x = rnd.nextInt(1000000);
+			TreeSet<Integer> expected = rnd.nextBoolean() ? expectedHere : expectedThere;
+			AVLTree.DigestSet<Integer> set = expected == expectedHere ? here : there;
+			if (expected.remove(x))
+				set.remove(x);
+			else if (expected.add(x))
+				set.add(x);
+		}
+
+		int[] calls = { 0 };
+		DigestSource<Integer> remote = new DigestSource<Integer>() {
+			public long rangeDigest(Integer lo, Integer hi) {
+				calls[0]++;
+				return there.rangeDigest(lo, hi);
+			}
+
+			public int rangeSize(Integer lo, Integer hi) {
+				calls[0]++;
+				return there.rangeSize(lo, hi);
+			}
+
+			public Integer median(Integer lo, Integer hi) {
+				calls[0]++;
+				return there.median(lo, hi);
+			}
+
+			public List<Integer> elements(Integer lo, Integer hi) {
+				calls[0]++;
+				return there.elements(lo, hi);
+			}
+		};
+		List<Integer> onlyHere = new ArrayList<Integer>(), onlyThere = new ArrayList<Integer>();
+		here.diff(remote, onlyHere::add, onlyThere::add);
+		TreeSet<Integer> missingThere = new TreeSet<Integer>(expectedHere);
+		missingThere.removeAll(expectedThere);
+		TreeSet<Integer> missingHere = new TreeSet<Integer>(expectedThere);
+		missingHere.removeAll(expectedHere);
+		verifica(onlyHere.size() == missingThere.size() && new TreeSet<Integer>(onlyHere).equals(missingThere),
+				"elements only here");
+		verifica(onlyThere.size() == missingHere.size() && new TreeSet<Integer>(onlyThere).equals(missingHere),
+				"elements only there");
+		if (differences == 0)
+			verifica(calls[0] == 2, "equal replicas compare only the size and the digest, calls " + calls[0]);
+
+		verifica(here.rangeSize(null, null) == expectedHere.size(), "rangeSize");
+		verifica(here.median(100, 50) == null, "median of an empty range");
+		Integer lo = rnd.nextInt(500000), hi = lo + rnd.nextInt(500000);
+		verificaElementi(here.elements(lo, hi), expectedHere.subSet(lo, hi), "elements");
+
+		// The same elements inserted in another order give the same digests.
+		AVLTree.DigestSet<Integer> shuffled = new AVLTree.DigestSet<Integer>();
+		List<Integer> elements = new ArrayList<Integer>(expectedHere);
+		Collections.shuffle(elements, rnd);
+		for (Integer x : elements)
+			shuffled.add(x);
+		verifica(shuffled.rootDigest() == here.rootDigest(), "rootDigest depends on the shape");
+		verifica(shuffled.rangeDigest(lo, hi) == here.rangeDigest(lo, hi), "rangeDigest depends on the shape");
+	}
+
+}
@@ -0,0 +1,61 @@
+
+import java.util.List;
+
+/**
+ * Source of the digests of the ranges of a sorted set, used by
+ * {@link AVLTree.DigestSet#diff(DigestSource, java.util.function.Consumer, java.util.function.Consumer)}
+ * to find the differences between two replicas. The digest of a range
+ * depends only on its elements and not on the shape of the tree that keeps
+ * them, so two replicas with the same elements in a range have the same
+ * digest. A remote replica implements this interface sending each call over
+ * the network: the diff makes only O(d log n) calls for d differences.
+ * In every method a null bound means that the range is not bounded on that
+ * side; lo is inclusive and hi is exclusive.
+ */
+public interface DigestSource<T> {
+
+	/**
+	 * Returns the digest of the elements between lo and hi.
+	 *
+	 * @param lo
+	 *            low endpoint (inclusive), null if not bounded.
+	 * @param hi
+	 *            high endpoint (exclusive), null if not bounded.
+	 * @return the digest of the range, 0 if the range is empty.
+	 */
+	long rangeDigest(T lo, T hi);
+
+	/**
+	 * Returns the number of elements between lo and hi.
+	 *
+	 * @param lo
+	 *            low endpoint (inclusive), null if not bounded.
+	 * @param hi
+	 *            high endpoint (exclusive), null if not bounded.
+	 * @return the number of elements of the range.
+	 */
+	int rangeSize(T lo, T hi);
+
+	/**
+	 * Returns the median element between lo and hi, used to split the range.
+	 *
+	 * @param lo
+	 *            low endpoint (inclusive), null if not bounded.
+	 * @param hi
+	 *            high endpoint (exclusive), null if not bounded.
+	 * @return the median of the range, null if the range is empty.
+	 */
+	T median(T lo, T hi);
+
+	/**
+	 * Returns the elements between lo and hi, in ascending order.
+	 *
+	 * @param lo
+	 *            low endpoint (inclusive), null if not bounded.
+	 * @param hi
+	 *            high endpoint (exclusive), null if not bounded.
+	 * @return a new list with the elements of the range.
+	 */
+	List<T> elements(T lo, T hi);
+
+}
@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * Checks equals and the hash code kept up to date by the sorted set
+ * against a TreeSet, after every kind of modification.
+ */
+public class EqualsHashCodeTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(EqualsHashCodeTest::prova);
+		System.out.println("EqualsHashCodeTest OK");
+	}
+
+	private static void prova() {
+		Random rnd = new Random(39);
+		AVLTree.mySortedSet<Integer> set = new AVLTree.mySortedSet<Integer>();
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int op = 0; op < 20000; op++) {
+			Integer x = rnd.nextInt(2000);
+			switch (rnd.nextInt(6)) {
+			case 0:
+				verifica(set.remove(x) == expected.remove(x), "remove " + x);
+				break;
+			case 1:
+				verifica((set.removeAndGet(x) != null) == expected.remove(x), "removeAndGet " + x);
+				break;
+			case 2:
+				if (!expected.isEmpty())
+					verifica(set.pollFirst().equals(expected.pollFirst()), "pollFirst");
+				break;
+			default:
+				verifica(set.add(x) == expected.add(x), "add " + x);
+			}
+			verifica(set.hashCode() == expected.hashCode(), "hashCode after " + op + " operations");
+		}
+		verifica(set.equals(expected) && expected.equals(set), "equals to a TreeSet");
+
+		// The same elements inserted in another order.
+		AVLTree.mySortedSet<Integer> other = new AVLTree.mySortedSet<Integer>();
+		List<Integer> shuffled = new ArrayList<Integer>(expected);
+		Collections.shuffle(shuffled, rnd);
+		for (Integer x : shuffled)
+			other.add(x);
+		verifica(set.equals(other) && other.equals(set), "equals to another set");
+		verifica(set.hashCode() == other.hashCode(), "hashCode of another set");
+
+		Integer last = expected.last();
+		other.remove(last);
+		verifica(!set.equals(other) && !other.equals(set), "equals after a removal");
+		other.add(last);
+		verifica(set.equals(other), "equals after the insertion");
+
+		// Sets with the same size but different elements.
+		Set<Integer> hash = new HashSet<Integer>(expected);
+		hash.remove(last);
+		hash.add(-5);
+		verifica(!set.equals(hash), "equals to a different HashSet");
+		Set<Object> strings = new HashSet<Object>();
+		for (int i = 0; i < expected.size(); i++)
+			strings.add("a" + i);
+		verifica(!set.equals(strings), "equals to a set of another type");
+		verifica(!set.equals(new AVLTree.mySortedSet<String>()), "equals to an empty set");
+
+		set.retainAll(new HashSet<Integer>(shuffled.subList(0, shuffled.size() / 2)));
+		expected.retainAll(new HashSet<Integer>(shuffled.subList(0, shuffled.size() / 2)));
+		verifica(set.hashCode() == expected.hashCode(), "hashCode after retainAll");
+
+		set.enableLazyDeletion(0.3);
+		for (Integer x : shuffled.subList(0, shuffled.size() / 4)) {
+			set.remove(x);
+			expected.remove(x);
+		}
+		verifica(set.hashCode() == expected.hashCode() && set.equals(expected), "lazy deletion");
+
+		set.clear();
+		verifica(set.hashCode() == 0, "hashCode of an empty set");
+
+		// The hash code counts the elements kept by the set, not the arguments.
+		AVLTree.mySortedSet<String> names = new AVLTree.mySortedSet<String>(String.CASE_INSENSITIVE_ORDER);
+		names.add("abc");
+		names.remove("ABC");
+		verifica(names.isEmpty() && names.hashCode() == 0, "hashCode after remove with a comparator");
+		names.add("abc");
+		names.add("def");
+		names.enableLazyDeletion(0.5);
+		names.remove("DEF");
+		verifica(names.hashCode() == "abc".hashCode(), "hashCode after a lazy remove with a comparator");
+		verifica(names.removeAndGet("ABC").equals("abc") && names.hashCode() == 0, "hashCode after removeAndGet");
+		names.addAll(Arrays.asList("ghi", "jkl", "mno"));
+		names.remove("ghi");
+		names.add("GHI");
+		names.remove("ghi");
+		verifica(names.hashCode() == "jkl".hashCode() + "mno".hashCode(), "hashCode after the return of a tombstone");
+
+		AVLTree.mySortedSet<Integer> single = new AVLTree.mySortedSet<Integer>(5);
+		verifica(single.equals(Collections.singleton(5)) && single.hashCode() == Integer.valueOf(5).hashCode(),
+				"hashCode of a set built with an element");
+	}
+
+}
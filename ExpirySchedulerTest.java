@@ -0,0 +1,61 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/*
+ * Checks the expiry scheduler against a TreeMap ordered by deadline and then
+ * by scheduling order: timers with the same deadline expire in the order
+ * they were scheduled.
+ */
+public class ExpirySchedulerTest extends TestSupport {
+
+	public static void main(String[] args) {
+		Random rnd = new Random(48);
+		AVLTree.ExpiryScheduler<Integer> scheduler = new AVLTree.ExpiryScheduler<Integer>();
+		verifica(scheduler.pollExpired(Long.MAX_VALUE, 10).isEmpty(), "poll on an empty scheduler");
+		verifica(scheduler.nextDeadline() == Long.MAX_VALUE, "nextDeadline of an empty scheduler");
+		// The keys are { deadline, scheduling order }.
+		TreeMap<long[], Integer> expected = new TreeMap<long[], Integer>(
+				(x, y) -> x[0] != y[0] ? Long.compare(x[0], y[0]) : Long.compare(x[1], y[1]));
+		List<AVLTree.ExpiryScheduler.Timer<Integer>> timers = new ArrayList<AVLTree.ExpiryScheduler.Timer<Integer>>();
+		Map<AVLTree.ExpiryScheduler.Timer<Integer>, long[]> keys = new HashMap<AVLTree.ExpiryScheduler.Timer<Integer>, long[]>();
+		long now = 0, order = 0;
+		for (int op = 0; op < 200000; op++) {
+			int kind = rnd.nextInt(10);
+			if (kind < 5) {
+				long deadline = now + rnd.nextInt(1000);
+				AVLTree.ExpiryScheduler.Timer<Integer> timer = scheduler.schedule(deadline, op);
+				long[] key = { deadline, order++ };
+				expected.put(key, op);
+				timers.add(timer);
+				keys.put(timer, key);
+			} else if (kind < 8 && !timers.isEmpty()) {
+				// the timer may have expired already
+				AVLTree.ExpiryScheduler.Timer<Integer> timer = timers.remove(rnd.nextInt(timers.size()));
+				long[] key = keys.remove(timer);
+				verifica(scheduler.cancel(timer) == (expected.remove(key) != null), "cancel");
+				verifica(!scheduler.cancel(timer), "cancel of a cancelled timer");
+			} else {
+				now += rnd.nextInt(50);
+				int maxBatch = rnd.nextInt(20);
+				List<Integer> expired = new ArrayList<Integer>();
+				while (expired.size() < maxBatch && !expected.isEmpty() && expected.firstKey()[0] <= now)
+					expired.add(expected.pollFirstEntry().getValue());
+				verifica(scheduler.pollExpired(now, maxBatch).equals(expired), "pollExpired at " + now);
+			}
+			verifica(scheduler.size() == expected.size(), "size");
+			verifica(scheduler.nextDeadline() == (expected.isEmpty() ? Long.MAX_VALUE : expected.firstKey()[0]),
+					"nextDeadline");
+		}
+
+		// Everything expires at the end of time.
+		List<Integer> all = new ArrayList<Integer>(expected.values());
+		verifica(scheduler.pollExpired(Long.MAX_VALUE, Integer.MAX_VALUE).equals(all), "pollExpired of everything");
+		verifica(scheduler.size() == 0, "empty at the end");
+		System.out.println("ExpirySchedulerTest OK");
+	}
+
+}
@@ -0,0 +1,421 @@
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * Read-only snapshot of a sorted set, created by
+ * {@link AVLTree.mySortedSet#freeze()}. The elements are stored in a flat
+ * array in Eytzinger (BFS) order: the children of the element in position k
+ * are in positions 2k and 2k+1, so a lookup goes down the array without
+ * pointers and without unpredictable branches, and the first levels of the
+ * tree share the same cache lines. The set can't be modified. It keeps the
+ * ordering of the set it was created from, natural or by comparator.
+ */
+public class FrozenSortedSet<T extends Comparable<T>> extends AbstractSet<T> implements SortedSet<T> {
+
+	/** Elements in Eytzinger order, position 0 is not used. */
+	private final Object[] elements;
+	/** Number of the elements inside the set. */
+	private final int size;
+	/** Ordering of the elements, null for the natural ordering. */
+	private final Comparator<? super T> comparator;
+
+	/**
+	 * Constructs the snapshot from the elements in ascending order.
+	 *
+	 * @param sorted
+	 *            the elements in ascending order, without duplicates.
+	 * @param size
+	 *            number of elements to take from the array.
+	 * @param comparator
+	 *            the ordering of the elements, null for the natural ordering.
+	 */
+	FrozenSortedSet(Object[] sorted, int size, Comparator<? super T> comparator) {
+		this.size = size;
+		this.comparator = comparator;
+		this.elements = new Object[size + 1];
+		costruisci(sorted, 0, 1);
+	}
+
+	/**
+	 * Compares two elements with the ordering of the set.
+	 *
+	 * @return a negative number, zero or a positive number if a is less
+	 *         than, equal to or greater than b.
+	 */
+	private int compara(T a, T b) {
+		return comparator == null ? a.compareTo(b) : comparator.compare(a, b);
+	}
+
+	/**
+	 * Fills the Eytzinger array with an in-order visit of the implicit tree.
+	 *
+	 * @param sorted
+	 *            the elements in ascending order.
+	 * @param i
+	 *            index of the next element of sorted to place.
+	 * @param k
+	 *            position of the implicit tree to fill.
+	 * @return the index of the next element of sorted to place.
+	 */
+	private int costruisci(Object[] sorted, int i, int k) {
+		if (k <= size) {
+			i = costruisci(sorted, i, 2 * k);
+			elements[k] = sorted[i++];
+			i = costruisci(sorted, i, 2 * k + 1);
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the position of the first element greater or equal (or
+	 * strictly greater) than the specified one.
+	 *
+	 * @param el
+	 *            the element to compare.
+	 * @param strict
+	 *            true to search for the first element strictly greater.
+	 * @return the position of the element, 0 if there isn't any.
+	 */
+	@SuppressWarnings("unchecked")
+	private int cerca(T el, boolean strict) {
+		int limit = strict ? 1 : 0;
+		int k = 1;
+		/*
+		 * Goes down the implicit tree: to the right child (2k+1) if the
+		 * element in position k is too small, to the left one (2k) otherwise;
+		 * the choice is an arithmetic expression instead of a branch.
+		 */
+		while (k <= size)
+			k = 2 * k + (compara((T) elements[k], el) < limit ? 1 : 0);
+		/*
+		 * The answer is the last node from which it went to the left: it
+		 * removes the trailing ones (the right turns) and the last left turn.
+		 */
+		return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+	}
+
+	/**
+	 * Returns the position of the element that precedes, in order, the one
+	 * in position k.
+	 *
+	 * @param k
+	 *            a position, 0 to get the last element.
+	 * @return the position of the predecessor, 0 if there isn't any.
+	 */
+	private int precedente(int k) {
+		if (k == 0)
+			return ultimo();
+		if (2 * k <= size) {
+			k = 2 * k;
+			while (2 * k + 1 <= size)
+				k = 2 * k + 1;
+			return k;
+		}
+		// Climbs while k is a left child.
+		while ((k & 1) == 0)
+			k >>>= 1;
+		return k >>> 1;
+	}
+
+	/**
+	 * Returns the position of the element that follows, in order, the one
+	 * in position k.
+	 *
+	 * @param k
+	 *            a position.
+	 * @return the position of the successor, 0 if there isn't any.
+	 */
+	private int successivo(int k) {
+		if (2 * k + 1 <= size) {
+			k = 2 * k + 1;
+			while (2 * k <= size)
+				k = 2 * k;
+			return k;
+		}
+		// Climbs while k is a right child.
+		while ((k & 1) == 1)
+			k >>>= 1;
+		return k >>> 1;
+	}
+
+	/** Returns the position of the lowest element, 0 if the set is empty. */
+	private int primo() {
+		if (size == 0)
+			return 0;
+		int k = 1;
+		while (2 * k <= size)
+			k = 2 * k;
+		return k;
+	}
+
+	/** Returns the position of the highest element, 0 if the set is empty. */
+	private int ultimo() {
+		if (size == 0)
+			return 0;
+		int k = 1;
+		while (2 * k + 1 <= size)
+			k = 2 * k + 1;
+		return k;
+	}
+
+	/**
+	 * Returns the element in position k.
+	 *
+	 * @param k
+	 *            a position.
+	 * @return the element, null if k is 0.
+	 */
+	@SuppressWarnings("unchecked")
+	private T elemento(int k) {
+		return (T) elements[k];
+	}
+
+	/**
+	 * Searches for the specified element.
+	 *
+	 * @param o
+	 *            the element to search.
+	 * @return true if the element was found, false otherwise.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean contains(Object o) {
+		if (o == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		int k = cerca((T) o, false);
+		return k != 0 && compara(elemento(k), (T) o) == 0;
+	}
+
+	/**
+	 * Returns the least element greater than or equal to the specified one.
+	 *
+	 * @param el
+	 *            the element to compare.
+	 * @return the ceiling of el, null if there isn't any.
+	 */
+	public T ceiling(T el) {
+		return elemento(cerca(el, false));
+	}
+
+	/**
+	 * Returns the least element strictly greater than the specified one.
+	 *
+	 * @param el
+	 *            the element to compare.
+	 * @return the element, null if there isn't any.
+	 */
+	public T higher(T el) {
+		return elemento(cerca(el, true));
+	}
+
+	/**
+	 * Returns the greatest element less than or equal to the specified one.
+	 *
+	 * @param el
+	 *            the element to compare.
+	 * @return the floor of el, null if there isn't any.
+	 */
+	public T floor(T el) {
+		return elemento(precedente(cerca(el, true)));
+	}
+
+	/**
+	 * Returns the greatest element strictly less than the specified one.
+	 *
+	 * @param el
+	 *            the element to compare.
+	 * @return the element, null if there isn't any.
+	 */
+	public T lower(T el) {
+		return elemento(precedente(cerca(el, false)));
+	}
+
+	/** Returns the cardinality of this set. */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the first (lowest) element currently in this set.
+	 *
+	 * @return Returns the first (lowest) element currently in this set.
+	 * @throws NoSuchElementException
+	 *             if this set is empty.
+	 */
+	@Override
+	public T first() {
+		if (size == 0)
+			throw new NoSuchElementException("The set is empty");
+		return elemento(primo());
+	}
+
+	/**
+	 * Returns the last (highest) element currently in this set.
+	 *
+	 * @return Returns the last (highest) element currently in this set.
+	 * @throws NoSuchElementException
+	 *             if this set is empty.
+	 */
+	@Override
+	public T last() {
+		if (size == 0)
+			throw new NoSuchElementException("The set is empty");
+		return elemento(ultimo());
+	}
+
+	/**
+	 * Returns the comparator used in this set, null if it uses the natural
+	 * ordering of the elements.
+	 */
+	@Override
+	public Comparator<? super T> comparator() {
+		return comparator;
+	}
+
+	/** Define an iterator to run(in order) the objects in the collection */
+	@Override
+	public Iterator<T> iterator() {
+		return new EytzingerIterator(primo(), 0);
+	}
+
+	/** Iterator that visits the implicit tree in order. */
+	private class EytzingerIterator implements Iterator<T> {
+		/** Position of the next element, 0 at the end. */
+		private int next;
+		/** Position at which the iteration stops, 0 if not bounded. */
+		private final int stop;
+
+		EytzingerIterator(int start, int stop) {
+			this.next = start == stop ? 0 : start;
+			this.stop = stop;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != 0;
+		}
+
+		@Override
+		public T next() {
+			if (next == 0)
+				throw new NoSuchElementException();
+			T el = elemento(next);
+			next = successivo(next);
+			if (next == stop)
+				next = 0;
+			return el;
+		}
+
+		/** Remove an element from the iterator. */
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("The set is frozen");
+		}
+	}
+
+	/**
+	 * Copies the elements between two positions in a new frozen set.
+	 *
+	 * @param start
+	 *            position of the first element (inclusive).
+	 * @param stop
+	 *            position of the last element (exclusive), 0 if not bounded.
+	 * @return a new frozen set.
+	 */
+	private SortedSet<T> copiaRange(int start, int stop) {
+		Object[] sorted = new Object[size];
+		int n = 0;
+		Iterator<T> iterator = new EytzingerIterator(start, stop);
+		while (iterator.hasNext())
+			sorted[n++] = iterator.next();
+		return new FrozenSortedSet<T>(sorted, n, comparator);
+	}
+
+	/**
+	 * Returns the portion of this set whose elements are strictly less than
+	 * toElement, as a new frozen set.
+	 *
+	 * @param toElement
+	 *            high endpoint (exclusive) of the returned set.
+	 * @return a new frozen set with the elements less than toElement.
+	 */
+	@Override
+	public SortedSet<T> headSet(T toElement) {
+		if (toElement == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		return copiaRange(primo(), cerca(toElement, false));
+	}
+
+	/**
+	 * Returns the portion of this set whose elements range from fromElement,
+	 * inclusive, to toElement, exclusive, as a new frozen set.
+	 *
+	 * @param fromElement
+	 *            low endpoint (inclusive) of the returned set.
+	 * @param toElement
+	 *            high endpoint (exclusive) of the returned set.
+	 * @return a new frozen set with the elements of the range.
+	 */
+	@Override
+	public SortedSet<T> subSet(T fromElement, T toElement) {
+		if (fromElement == null || toElement == null)
+			throw new NullPointerException("Null elements not allowed!!!");
+		if (compara(fromElement, toElement) > 0)
+			throw new IllegalArgumentException(
+					"Invalid values: the left value of the parameter must be lower than the right one");
+		return copiaRange(cerca(fromElement, false), cerca(toElement, false));
+	}
+
+	/**
+	 * Returns the portion of this set whose elements are greater than or
+	 * equal to fromElement, as a new frozen set.
+	 *
+	 * @param fromElement
+	 *            low endpoint (inclusive) of the returned set.
+	 * @return a new frozen set with the elements greater or equal than
+	 *         fromElement.
+	 */
+	@Override
+	public SortedSet<T> tailSet(T fromElement) {
+		if (fromElement == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		return copiaRange(cerca(fromElement, false), 0);
+	}
+
+	@Override
+	public boolean add(T el) {
+		throw new UnsupportedOperationException("The set is frozen");
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		throw new UnsupportedOperationException("The set is frozen");
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends T> c) {
+		throw new UnsupportedOperationException("The set is frozen");
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		throw new UnsupportedOperationException("The set is frozen");
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		throw new UnsupportedOperationException("The set is frozen");
+	}
+
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("The set is frozen");
+	}
+
+}
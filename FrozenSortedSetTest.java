@@ -0,0 +1,58 @@
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks the frozen snapshot of a set against a TreeSet, with the natural
+ * ordering and with a comparator.
+ */
+public class FrozenSortedSetTest extends TestSupport {
+
+	public static void main(String[] args) {
+		prova(null);
+		prova(Collections.<Integer>reverseOrder());
+		prova(Comparator.comparing((Integer x) -> x % 1000).thenComparing(x -> x));
+		System.out.println("FrozenSortedSetTest OK");
+	}
+
+	private static void prova(Comparator<Integer> comparator) {
+		Random rnd = new Random(28);
+		for (int n = 0; n < 300; n += 1 + n / 4) {
+			AVLTree.mySortedSet<Integer> set = new AVLTree.mySortedSet<Integer>(comparator);
+			TreeSet<Integer> expected = new TreeSet<Integer>(comparator);
+			while (expected.size() < n) {
+				int x = rnd.nextInt(5000);
+				set.add(x);
+				expected.add(x);
+			}
+			FrozenSortedSet<Integer> frozen = set.freeze();
+			verifica(frozen.comparator() == comparator, "comparator");
+			verifica(frozen.size() == n, "size");
+			Iterator<Integer> a = frozen.iterator(), b = expected.iterator();
+			while (b.hasNext())
+				verifica(a.next().equals(b.next()), "order");
+			verifica(!a.hasNext(), "iterator end");
+			if (n > 0) {
+				verifica(frozen.first().equals(expected.first()), "first");
+				verifica(frozen.last().equals(expected.last()), "last");
+			}
+			for (int i = 0; i < 200; i++) {
+				Integer x = rnd.nextInt(5200) - 100;
+				verifica(frozen.contains(x) == expected.contains(x), "contains " + x);
+				verifica(eq(frozen.ceiling(x), expected.ceiling(x)), "ceiling " + x);
+				verifica(eq(frozen.floor(x), expected.floor(x)), "floor " + x);
+				verifica(eq(frozen.higher(x), expected.higher(x)), "higher " + x);
+				verifica(eq(frozen.lower(x), expected.lower(x)), "lower " + x);
+				verifica(frozen.headSet(x).equals(expected.headSet(x)), "headSet " + x);
+				verifica(frozen.tailSet(x).equals(expected.tailSet(x)), "tailSet " + x);
+			}
+		}
+	}
+
+	private static boolean eq(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+}
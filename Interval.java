@@ -0,0 +1,95 @@
+
+/**
+ * Closed interval [start, end] of comparable points, for example a time
+ * reservation. The intervals are ordered by start and then by end, which is
+ * the order of {@link AVLTree.IntervalTree}.
+ */
+public final class Interval<P extends Comparable<P>> implements Comparable<Interval<P>> {
+
+	/** First point of the interval. */
+	private final P start;
+	/** Last point of the interval. */
+	private final P end;
+
+	/**
+	 * Creates the interval [start, end].
+	 *
+	 * @param start
+	 *            the first point of the interval.
+	 * @param end
+	 *            the last point of the interval.
+	 * @throws IllegalArgumentException
+	 *             if a point is null or start is greater than end.
+	 */
+	public Interval(P start, P end) {
+		if (start == null || end == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		if (start.compareTo(end) > 0)
+			throw new IllegalArgumentException(
+					"Invalid values: the left value of the parameter must be lower than the right one");
+		this.start = start;
+		this.end = end;
+	}
+
+	/** Returns the first point of the interval. */
+	public P getStart() {
+		return start;
+	}
+
+	/** Returns the last point of the interval. */
+	public P getEnd() {
+		return end;
+	}
+
+	/**
+	 * Checks if the interval contains a point.
+	 *
+	 * @param point
+	 *            the point to check.
+	 * @return true if start &lt;= point &lt;= end.
+	 */
+	public boolean contains(P point) {
+		return start.compareTo(point) <= 0 && end.compareTo(point) >= 0;
+	}
+
+	/**
+	 * Checks if the interval has at least a point in common with [lo, hi].
+	 *
+	 * @param lo
+	 *            the first point of the other interval.
+	 * @param hi
+	 *            the last point of the other interval.
+	 * @return true if the intervals overlap.
+	 */
+	public boolean overlaps(P lo, P hi) {
+		return start.compareTo(hi) <= 0 && end.compareTo(lo) >= 0;
+	}
+
+	/** Compares the intervals by start and then by end. */
+	@Override
+	public int compareTo(Interval<P> o) {
+		int x = start.compareTo(o.start);
+		return x != 0 ? x : end.compareTo(o.end);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this)
+			return true;
+		if (!(o instanceof Interval))
+			return false;
+		Interval<?> i = (Interval<?>) o;
+		return start.equals(i.start) && end.equals(i.end);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * start.hashCode() + end.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "[" + start + ", " + end + "]";
+	}
+
+}
@@ -0,0 +1,55 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Checks the overlap queries of the interval tree against a brute force
+ * scan of the same intervals, with and without the lazy deletion.
+ */
+public class IntervalTreeTest extends TestSupport {
+
+	public static void main(String[] args) {
+		// The case of the lazy deletion: the removed interval must disappear.
+		AVLTree.IntervalTree<Integer> it = new AVLTree.IntervalTree<Integer>();
+		it.enableLazyDeletion(0.9);
+		for (int i = 0; i < 10; i++)
+			it.add(i, i + 5);
+		it.remove(new Interval<Integer>(3, 8));
+		verifica(!it.overlapping(4).contains(new Interval<Integer>(3, 8)), "removed interval returned");
+		it.remove(new Interval<Integer>(9, 14));
+		verifica(it.maxEnd() == 13, "maxEnd counts a removed interval");
+
+		for (int lazy = 0; lazy < 2; lazy++) {
+			Random rnd = new Random(35 + lazy);
+			AVLTree.IntervalTree<Integer> tree = new AVLTree.IntervalTree<Integer>();
+			if (lazy == 1)
+				tree.enableLazyDeletion(0.5);
+			List<Interval<Integer>> all = new ArrayList<Interval<Integer>>();
+			for (int op = 0; op < 5000; op++) {
+				int start = rnd.nextInt(1000);
+				Interval<Integer> x = new Interval<Integer>(start, start + rnd.nextInt(50));
+				if (rnd.nextInt(3) > 0) {
+					if (tree.add(x))
+						all.add(x);
+				} else if (!all.isEmpty()) {
+					x = all.remove(rnd.nextInt(all.size()));
+					verifica(tree.remove(x), "remove " + x);
+				}
+				int lo = rnd.nextInt(1100), hi = lo + rnd.nextInt(30);
+				List<Interval<Integer>> expected = new ArrayList<Interval<Integer>>();
+				for (Interval<Integer> i : all)
+					if (i.overlaps(lo, hi))
+						expected.add(i);
+				expected.sort(null);
+				verifica(tree.overlapping(lo, hi).equals(expected), "overlapping " + lo + " " + hi);
+				Integer max = null;
+				for (Interval<Integer> i : all)
+					if (max == null || i.getEnd() > max)
+						max = i.getEnd();
+				verifica(max == null ? tree.maxEnd() == null : max.equals(tree.maxEnd()), "maxEnd");
+			}
+		}
+		System.out.println("IntervalTreeTest OK");
+	}
+
+}
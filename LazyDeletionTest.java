@@ -0,0 +1,70 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks the lazy deletion of the sorted set against a TreeSet: the
+ * tombstones must never be visible, their number must stay under the
+ * bound and the purge must give back a balanced tree.
+ */
+public class LazyDeletionTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(LazyDeletionTest::prova);
+		System.out.println("LazyDeletionTest OK");
+	}
+
+	private static void prova() {
+		Random rnd = new Random(42);
+		AVLTree.mySortedSet<Integer> set = new AVLTree.mySortedSet<Integer>(AVLTree.Monoid.<Integer>longSum());
+		set.enableLazyDeletion(0.3);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int op = 0; op < 20000; op++) {
+			Integer x = rnd.nextInt(1500);
+			switch (rnd.nextInt(5)) {
+			case 0:
+				verifica(set.remove(x) == expected.remove(x), "remove " + x);
+				break;
+			case 1:
+				Integer removed = set.removeAndGet(x);
+				verifica(removed == null ? !expected.remove(x) : removed.equals(x) && expected.remove(x),
+						"removeAndGet " + x);
+				break;
+			default:
+				verifica(set.add(x) == expected.add(x), "add " + x);
+			}
+			verifica(set.size() == expected.size() && set.isEmpty() == expected.isEmpty(), "size");
+			verifica(set.tombstones() <= 0.3 * (set.size() + set.tombstones()) + 1, "tombstones bound");
+			if (op % 100 == 0) {
+				verificaElementi(set, expected, "iterator");
+				verifica(Arrays.equals(set.toArray(), expected.toArray()), "toArray");
+				if (!expected.isEmpty())
+					verifica(set.first().equals(expected.first()) && set.last().equals(expected.last()), "first/last");
+				int lo = rnd.nextInt(1500), hi = lo + rnd.nextInt(400);
+				verifica(set.rangeCount(lo, hi) == expected.subSet(lo, hi).size(), "rangeCount");
+				long sum = 0;
+				for (int i : expected.subSet(lo, hi))
+					sum += i;
+				verifica((Long) set.rangeAggregate(lo, hi) == sum, "rangeAggregate");
+				verificaElementi(set.subSet(lo, hi), expected.subSet(lo, hi), "subSet");
+				verifica(set.contains(lo) == expected.contains(lo), "contains " + lo);
+			}
+		}
+		set.purge();
+		verifica(set.tombstones() == 0, "purge");
+		verificaElementi(set, expected, "purge content");
+		verifica(set.height() <= 1.45 * Math.log(expected.size() + 2) / Math.log(2), "purge height");
+		for (Integer x : new ArrayList<Integer>(expected))
+			verifica(set.remove(x), "remove " + x);
+		verifica(set.isEmpty() && set.size() == 0, "empty");
+
+		// The minimum removed lazily stays as a tombstone that addAll restores.
+		AVLTree.mySortedSet<Integer> small = new AVLTree.mySortedSet<Integer>();
+		small.enableLazyDeletion(0.5);
+		small.addAll(Arrays.asList(1, 2, 3));
+		small.remove(1);
+		verifica(small.addAll(Arrays.asList(1)) && small.contains(1) && small.size() == 3, "addAll of a tombstone");
+	}
+
+}
@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/*
+ * Checks the multiset against a TreeMap from the elements to their number
+ * of occurrences: counts, sizes, iteration with the repeated elements and
+ * the range counts.
+ */
+public class MultisetTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(() -> {
+			prova(new AVLTree.mySortedMultiset<Integer>(), new TreeMap<Integer, Integer>(), new Random(33));
+			prova(new AVLTree.mySortedMultiset<Integer>(Collections.reverseOrder()),
+					new TreeMap<Integer, Integer>(Collections.reverseOrder()), new Random(34));
+		});
+		System.out.println("MultisetTest OK");
+	}
+
+	private static void prova(AVLTree.mySortedMultiset<Integer> set, TreeMap<Integer, Integer> expected, Random rnd) {
+		for (int op = 0; op < 20000; op++) {
+			Integer x = rnd.nextInt(200);
+			int kind = rnd.nextInt(50);
+			if (kind == 0) {
+				// every occurrence goes away
+				List<Integer> c = Collections.singletonList(x);
+				verifica(set.removeAll(c) == (expected.remove(x) != null), "removeAll " + x);
+			} else if (kind < 16) {
+				boolean present = expected.containsKey(x);
+				verifica(set.remove(x) == present, "remove " + x);
+				if (present && expected.merge(x, -1, Integer::sum) == 0)
+					expected.remove(x);
+			} else {
+				verifica(set.add(x), "add " + x);
+				expected.merge(x, 1, Integer::sum);
+			}
+			verifica(set.count(x) == expected.getOrDefault(x, 0), "count " + x);
+			if (op % 250 == 0)
+				confronta(set, expected, rnd);
+		}
+		confronta(set, expected, rnd);
+	}
+
+	private static void confronta(AVLTree.mySortedMultiset<Integer> set, TreeMap<Integer, Integer> expected,
+			Random rnd) {
+		List<Integer> elements = new ArrayList<Integer>();
+		for (Map.Entry<Integer, Integer> e : expected.entrySet())
+			for (int i = 0; i < e.getValue(); i++)
+				elements.add(e.getKey());
+		verifica(set.size() == elements.size(), "size");
+		verifica(set.distinctSize() == expected.size(), "distinctSize");
+		List<Integer> visited = new ArrayList<Integer>();
+		for (Integer x : set)
+			visited.add(x);
+		verifica(visited.equals(elements), "iteration");
+		Comparator<? super Integer> order = expected.comparator() == null ? Comparator.<Integer>naturalOrder()
+				: expected.comparator();
+		Integer lo = rnd.nextInt(200), hi = rnd.nextInt(200);
+		int inRange = 0;
+		for (Integer x : elements)
+			if (order.compare(lo, x) <= 0 && order.compare(x, hi) < 0)
+				inRange++;
+		verifica(set.rangeCount(lo, hi) == inRange, "rangeCount " + lo + " " + hi);
+	}
+
+}
@@ -0,0 +1,92 @@
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks the links of the nodes after random insertions and removals: every
+ * child must point to its parent, the height kept in a byte must be the real
+ * one and the tree must stay balanced. The private fields of the nodes are
+ * read by reflection.
+ */
+public class NodeLayoutTest extends TestSupport {
+
+	private static Field root, parent, leftChild, rightChild, height, data;
+
+	public static void main(String[] args) throws Exception {
+		root = campo(AVLTree.class, "root");
+		parent = campo(AVLTree.Node.class, "parent");
+		leftChild = campo(AVLTree.Node.class, "leftChild");
+		rightChild = campo(AVLTree.Node.class, "rightChild");
+		height = campo(AVLTree.Node.class, "height");
+		data = campo(AVLTree.Node.class, "data");
+		silenzioso(NodeLayoutTest::prova);
+		System.out.println("NodeLayoutTest OK");
+	}
+
+	private static void prova() throws ReflectiveOperationException {
+		Random rnd = new Random(47);
+		AVLTree.mySortedSet<Integer> set = new AVLTree.mySortedSet<Integer>();
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int op = 0; op < 60000; op++) {
+			Integer x = rnd.nextInt(3000);
+			switch (rnd.nextInt(3)) {
+			case 0:
+				verifica(set.add(x) == expected.add(x), "add " + x);
+				break;
+			case 1:
+				if (!expected.isEmpty())
+					verifica(set.remove(x) == expected.remove(x), "remove " + x);
+				break;
+			default:
+				verifica((set.removeAndGet(x) != null) == expected.remove(x), "removeAndGet " + x);
+			}
+			if (op % 5000 == 0)
+				controlla(set, expected);
+		}
+		controlla(set, expected);
+
+		// Sequential insertions: the height stays logarithmic and fits a byte.
+		AVLTree.mySortedSet<Integer> big = new AVLTree.mySortedSet<Integer>();
+		for (int i = 0; i < 1 << 20; i++)
+			big.add(i);
+		verifica(big.height() <= 1.45 * 21, "height " + big.height());
+		for (int i = 0; i < 1 << 20; i += 2)
+			big.remove(i);
+		verifica(altezza(root.get(big), null, new ArrayList<Object>()) == big.height(), "height after the removals");
+	}
+
+	/** Compares the structure and the elements of the tree with the TreeSet. */
+	private static void controlla(AVLTree.mySortedSet<Integer> set, TreeSet<Integer> expected)
+			throws ReflectiveOperationException {
+		List<Object> elements = new ArrayList<Object>();
+		altezza(root.get(set), null, elements);
+		verificaElementi(elements, expected, "elements of the nodes");
+		verificaElementi(set, elements, "iteration");
+	}
+
+	/**
+	 * Visits the subtree in order checking the links of the nodes, and
+	 * returns its height (-1 if empty).
+	 */
+	private static int altezza(Object node, Object father, List<Object> elements) throws ReflectiveOperationException {
+		if (node == null)
+			return -1;
+		verifica(parent.get(node) == father, "parent of " + data.get(node));
+		int l = altezza(leftChild.get(node), node, elements);
+		elements.add(data.get(node));
+		int r = altezza(rightChild.get(node), node, elements);
+		verifica(Math.abs(l - r) <= 1, "unbalanced node " + data.get(node));
+		int h = Math.max(l, r) + 1;
+		verifica((Byte) height.get(node) == h, "height of " + data.get(node));
+		return h;
+	}
+
+	private static Field campo(Class<?> c, String name) throws NoSuchFieldException {
+		Field f = c.getDeclaredField(name);
+		f.setAccessible(true);
+		return f;
+	}
+
+}
@@ -0,0 +1,80 @@
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/*
+ * Checks first, last, pollFirst and pollLast of the sorted set and of the
+ * map against a TreeSet and a TreeMap, used as double-ended priority queues.
+ */
+public class PollTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(() -> {
+			Random rnd = new Random(44);
+			prova(rnd, false);
+			prova(rnd, true);
+			provaMappa(rnd);
+		});
+		System.out.println("PollTest OK");
+	}
+
+	private static void prova(Random rnd, boolean lazy) {
+		AVLTree.mySortedSet<Integer> set = new AVLTree.mySortedSet<Integer>();
+		if (lazy)
+			set.enableLazyDeletion(0.3);
+		verifica(set.pollFirst() == null && set.pollLast() == null, "poll on an empty set");
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int op = 0; op < 50000; op++) {
+			Integer x = rnd.nextInt(5000);
+			switch (rnd.nextInt(5)) {
+			case 0:
+				verifica(Objects.equals(set.pollFirst(), expected.pollFirst()), "pollFirst");
+				break;
+			case 1:
+				verifica(Objects.equals(set.pollLast(), expected.pollLast()), "pollLast");
+				break;
+			case 2:
+				// remove throws an exception on an empty set
+				if (!expected.isEmpty())
+					verifica(set.remove(x) == expected.remove(x), "remove " + x);
+				break;
+			default:
+				verifica(set.add(x) == expected.add(x), "add " + x);
+			}
+			verifica(set.size() == expected.size(), "size");
+			if (!expected.isEmpty()) {
+				verifica(set.first().equals(expected.first()), "first");
+				verifica(set.last().equals(expected.last()), "last");
+			}
+		}
+		verificaElementi(set, expected, "content");
+		while (!expected.isEmpty())
+			verifica(set.pollLast().equals(expected.pollLast()), "pollLast until empty");
+		verifica(set.isEmpty() && set.pollFirst() == null, "empty at the end");
+	}
+
+	private static void provaMappa(Random rnd) {
+		AVLTree.AVLTreeMap<Integer, String> map = new AVLTree.AVLTreeMap<Integer, String>();
+		TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+		for (int op = 0; op < 30000; op++) {
+			Integer x = rnd.nextInt(3000);
+			switch (rnd.nextInt(4)) {
+			case 0:
+				verifica(Objects.equals(map.pollFirstEntry(), expected.pollFirstEntry()), "pollFirstEntry");
+				break;
+			case 1:
+				verifica(Objects.equals(map.pollLastEntry(), expected.pollLastEntry()), "pollLastEntry");
+				break;
+			default:
+				verifica(Objects.equals(map.put(x, "v" + op), expected.put(x, "v" + op)), "put " + x);
+			}
+			if (!expected.isEmpty()) {
+				verifica(map.firstKey().equals(expected.firstKey()), "firstKey");
+				verifica(map.lastKey().equals(expected.lastKey()), "lastKey");
+			}
+		}
+		verifica(map.equals(expected), "map content");
+	}
+
+}
@@ -0,0 +1,54 @@
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks rangeCount() and rangeAggregate() against a TreeSet, on a set with
+ * a monoid, on a set without it and on a plain tree, whose nodes don't keep
+ * the sizes of the subtrees.
+ */
+public class RangeAggregateTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(RangeAggregateTest::prova);
+		System.out.println("RangeAggregateTest OK");
+	}
+
+	private static void prova() {
+		Random rnd = new Random(32);
+		AVLTree.mySortedSet<Integer> sum = new AVLTree.mySortedSet<Integer>(AVLTree.Monoid.<Integer>longSum());
+		AVLTree.mySortedSet<Integer> set = new AVLTree.mySortedSet<Integer>();
+		AVLTree<Integer> plain = new AVLTree<Integer>();
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int op = 0; op < 6000; op++) {
+			Integer x = rnd.nextInt(3000);
+			if (rnd.nextInt(3) > 0) {
+				boolean added = expected.add(x);
+				verifica(sum.add(x) == added && set.add(x) == added && plain.insert(x) == added, "add " + x);
+			} else if (!expected.isEmpty()) {
+				boolean removed = expected.remove(x);
+				verifica(sum.remove(x) == removed && set.remove(x) == removed, "remove " + x);
+				if (removed)
+					verifica(plain.removeAndGet(x).equals(x), "plain remove " + x);
+			}
+			if (op % 10 == 0) {
+				int lo = rnd.nextInt(3200) - 100, hi = rnd.nextInt(3200) - 100;
+				int count = lo < hi ? expected.subSet(lo, hi).size() : 0;
+				long total = 0;
+				if (lo < hi)
+					for (int i : expected.subSet(lo, hi))
+						total += i;
+				verifica(sum.rangeCount(lo, hi) == count, "rangeCount " + lo + " " + hi);
+				verifica(set.rangeCount(lo, hi) == count, "set rangeCount " + lo + " " + hi);
+				verifica(plain.rangeCount(lo, hi) == count, "plain rangeCount " + lo + " " + hi);
+				verifica(sum.<Long>rangeAggregate(lo, hi) == total, "rangeAggregate " + lo + " " + hi);
+			}
+		}
+		verifica(plain.isEmpty() == expected.isEmpty() && plain.toIntArray().length == expected.size(), "plain size");
+
+		AVLTree.mySortedSet<Integer> min = new AVLTree.mySortedSet<Integer>(AVLTree.Monoid.<Integer>min());
+		for (int i = 0; i < 100; i++)
+			min.add(i);
+		verifica(min.<Integer>rangeAggregate(17, 90) == 17, "min");
+	}
+
+}
@@ -0,0 +1,69 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks forEachInRange, forEachInRangeWhile and the range views built on
+ * them against the sub sets of a TreeSet, with every combination of
+ * inclusive and exclusive endpoints.
+ */
+public class RangeVisitTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(RangeVisitTest::prova);
+		System.out.println("RangeVisitTest OK");
+	}
+
+	private static void prova() {
+		Random rnd = new Random(36);
+		AVLTree.mySortedSet<Integer> set = new AVLTree.mySortedSet<Integer>();
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			Integer x = rnd.nextInt(2000);
+			set.add(x);
+			expected.add(x);
+		}
+		for (int q = 0; q < 300; q++) {
+			Integer lo = rnd.nextInt(2200) - 100, hi = lo + rnd.nextInt(150);
+			boolean loInclusive = rnd.nextBoolean(), hiInclusive = rnd.nextBoolean();
+			List<Integer> range = new ArrayList<Integer>(expected.subSet(lo, loInclusive, hi, hiInclusive));
+
+			List<Integer> visited = new ArrayList<Integer>();
+			set.forEachInRange(lo, loInclusive, hi, hiInclusive, visited::add);
+			verifica(visited.equals(range), "forEachInRange " + lo + " " + hi);
+
+			// the visit stops after five elements
+			List<Integer> first = new ArrayList<Integer>();
+			boolean all = set.forEachInRangeWhile(lo, loInclusive, hi, hiInclusive, x -> {
+				first.add(x);
+				return first.size() < 5;
+			});
+			verifica(first.equals(range.subList(0, Math.min(5, range.size()))), "forEachInRangeWhile");
+			verifica(all == range.size() < 5, "forEachInRangeWhile result");
+
+			verificaElementi(set.subSet(lo, hi), expected.subSet(lo, hi), "subSet");
+			verificaElementi(set.headSet(lo), expected.headSet(lo), "headSet");
+			verificaElementi(set.tailSet(hi), expected.tailSet(hi), "tailSet");
+		}
+
+		// An empty range and the unbounded one.
+		List<Integer> visited = new ArrayList<Integer>();
+		set.forEachInRange(7, false, 7, false, visited::add);
+		verifica(visited.isEmpty(), "empty range");
+		set.forEachInRange(null, false, null, false, visited::add);
+		verificaElementi(visited, expected, "unbounded range");
+
+		// In a multiset the repeated elements are visited once for each occurrence.
+		AVLTree.mySortedMultiset<Integer> multiset = new AVLTree.mySortedMultiset<Integer>();
+		multiset.add(1);
+		multiset.add(1);
+		multiset.add(2);
+		multiset.add(3);
+		visited.clear();
+		multiset.forEachInRange(1, true, 2, true, visited::add);
+		verifica(visited.equals(Arrays.asList(1, 1, 2)), "multiset range");
+	}
+
+}
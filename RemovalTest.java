@@ -0,0 +1,90 @@
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks the removals of the sorted set, getSuccessor() and the bulk
+ * operations that walk the tree from a node to its successor (containsAll,
+ * removeAll and retainAll) against a TreeSet, with and without the lazy
+ * deletion.
+ */
+public class RemovalTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(() -> {
+			for (int lazy = 0; lazy < 2; lazy++)
+				prova(new Random(43 + lazy), lazy == 1);
+		});
+		System.out.println("RemovalTest OK");
+	}
+
+	private static void prova(Random rnd, boolean lazy) {
+		AVLTree.mySortedSet<Integer> set = new AVLTree.mySortedSet<Integer>();
+		if (lazy)
+			set.enableLazyDeletion(0.3);
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		for (int op = 0; op < 30000; op++) {
+			Integer x = rnd.nextInt(2000);
+			switch (rnd.nextInt(3)) {
+			case 0:
+				verifica(set.add(x) == expected.add(x), "add " + x);
+				break;
+			case 1:
+				verifica(set.remove(x) == expected.remove(x), "remove " + x);
+				break;
+			default:
+				verifica((set.removeAndGet(x) != null) == expected.remove(x), "removeAndGet " + x);
+			}
+			verifica(set.size() == expected.size(), "size");
+		}
+		verificaElementi(set, expected, "content");
+		for (Integer x : expected) {
+			AVLTree.Node<Integer> succ = set.getSuccessor(x);
+			Integer next = expected.higher(x);
+			verifica(next == null ? succ == null : succ != null && contiene(succ, next), "getSuccessor " + x);
+		}
+		verifica(set.getSuccessor(-1) == null, "getSuccessor of a missing element");
+
+		for (int round = 0; round < 200; round++) {
+			while (set.size() < 500) {
+				Integer x = rnd.nextInt(2000);
+				set.add(x);
+				expected.add(x);
+			}
+			TreeSet<Integer> c = new TreeSet<Integer>();
+			int n = 1 + rnd.nextInt(50);
+			for (int i = 0; i < n; i++)
+				c.add(rnd.nextBoolean() ? rnd.nextInt(2100) : pesca(expected, rnd));
+			verifica(set.containsAll(c) == expected.containsAll(c), "containsAll " + c);
+			switch (rnd.nextInt(3)) {
+			case 0:
+				verifica(set.removeAll(c) == expected.removeAll(c), "removeAll " + c);
+				break;
+			case 1:
+				// retainAll keeps about half of the set
+				for (Integer y : expected)
+					if (rnd.nextBoolean())
+						c.add(y);
+				verifica(set.retainAll(c) == expected.retainAll(c), "retainAll");
+				break;
+			default:
+				TreeSet<Integer> presenti = new TreeSet<Integer>(expected.subSet(c.first(), c.first() + 100));
+				if (!presenti.isEmpty())
+					verifica(set.containsAll(presenti), "containsAll of a range");
+			}
+			verifica(set.size() == expected.size(), "size after round " + round);
+			verificaElementi(set, expected, "content after round " + round);
+		}
+	}
+
+	/** Tells if the node holds the element, read from its description. */
+	private static boolean contiene(AVLTree.Node<Integer> node, Integer el) {
+		return node.toString().startsWith("Node [data=" + el + " ");
+	}
+
+	/** Returns a random element of the set. */
+	private static Integer pesca(TreeSet<Integer> set, Random rnd) {
+		Integer x = set.ceiling(rnd.nextInt(2000));
+		return x == null ? set.first() : x;
+	}
+
+}
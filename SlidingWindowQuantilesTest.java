@@ -0,0 +1,72 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Checks the quantiles and the ranks of the sliding window against a brute
+ * force sort of the samples kept in a deque, evicting by count and by age.
+ */
+public class SlidingWindowQuantilesTest extends TestSupport {
+
+	public static void main(String[] args) {
+		Random rnd = new Random(50);
+		AVLTree.SlidingWindowQuantiles<Integer> window = new AVLTree.SlidingWindowQuantiles<Integer>(500, 1000,
+				TimeUnit.NANOSECONDS);
+		try {
+			window.quantile(0.5);
+			verifica(false, "quantile of an empty window");
+		} catch (NoSuchElementException e) {
+		}
+		// The samples as { value, time }, the oldest first.
+		ArrayDeque<long[]> expected = new ArrayDeque<long[]>();
+		long now = 0;
+		for (int op = 0; op < 50000; op++) {
+			now += rnd.nextInt(5);
+			if (rnd.nextInt(1000) == 0) {
+				// a pause longer than the window
+				now += 2000;
+				window.expire(now);
+				expected.clear();
+				verifica(window.size() == 0, "expire");
+			}
+			int x = rnd.nextInt(300);
+			window.add(x, now);
+			expected.addLast(new long[] { x, now });
+			while (expected.size() > 500 || now - expected.peekFirst()[1] > 1000)
+				expected.pollFirst();
+			verifica(window.size() == expected.size(), "size");
+
+			int[] sorted = new int[expected.size()];
+			int k = 0;
+			for (long[] e : expected)
+				sorted[k++] = (int) e[0];
+			Arrays.sort(sorted);
+			for (double q : new double[] { 0, 0.5, 0.95, 0.99, 1 }) {
+				int nearest = sorted[Math.max((int) Math.ceil(q * sorted.length) - 1, 0)];
+				verifica(window.quantile(q) == nearest, "quantile " + q + " after " + op + " samples");
+			}
+			int y = rnd.nextInt(300), rank = 0;
+			for (int v : sorted)
+				if (v < y)
+					rank++;
+			verifica(window.rank(y) == rank, "rank " + y);
+		}
+
+		// Only the number of samples bounds a window without a maximum age.
+		AVLTree.SlidingWindowQuantiles<Long> counted = new AVLTree.SlidingWindowQuantiles<Long>(3);
+		for (long i = 1; i <= 10; i++)
+			counted.add(i);
+		verifica(counted.size() == 3 && counted.quantile(0) == 8 && counted.quantile(1) == 10, "window by count");
+		counted.clear();
+		verifica(counted.size() == 0, "clear");
+		try {
+			counted.quantile(1.5);
+			verifica(false, "quantile out of range");
+		} catch (IllegalArgumentException e) {
+		}
+		System.out.println("SlidingWindowQuantilesTest OK");
+	}
+
+}
@@ -0,0 +1,64 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/*
+ * Checks the string set against a TreeSet with strings that share long
+ * prefixes and contain characters outside ASCII, and that the order of the
+ * cached prefixes never contradicts the order of the strings.
+ */
+public class StringSortedSetTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(StringSortedSetTest::prova);
+		System.out.println("StringSortedSetTest OK");
+	}
+
+	private static void prova() {
+		Random rnd = new Random(46);
+		String[] prefixes = { "", "h", "http://", "https://example.com/", "https://example.org/a/", "\u00e9t\u00e9",
+				"\u4e2d\u6587", "a\u0000", "\u00ff\u00fe", "\u0100x" };
+		char[] tails = { 'a', 'b', 'c', 'd', '\u00ff', '\u0101', '\u0000' };
+		List<String> values = new ArrayList<String>();
+		for (int i = 0; i < 5000; i++) {
+			StringBuilder b = new StringBuilder(prefixes[rnd.nextInt(prefixes.length)]);
+			for (int n = rnd.nextInt(6); n > 0; n--)
+				b.append(tails[rnd.nextInt(tails.length)]);
+			values.add(b.toString());
+		}
+
+		// Different prefixes must be in the same order of their strings.
+		for (int i = 0; i < 200000; i++) {
+			String x = values.get(rnd.nextInt(values.size())), y = values.get(rnd.nextInt(values.size()));
+			int c = Long.compareUnsigned(AVLTree.StringSortedSet.prefisso(x), AVLTree.StringSortedSet.prefisso(y));
+			verifica(c == 0 || Integer.signum(c) == Integer.signum(x.compareTo(y)), "prefix of " + x + " and " + y);
+		}
+
+		AVLTree.StringSortedSet set = new AVLTree.StringSortedSet();
+		TreeSet<String> expected = new TreeSet<String>();
+		for (int op = 0; op < 60000; op++) {
+			// a copy, so the strings are never the same object
+			String x = new String(values.get(rnd.nextInt(values.size())));
+			switch (rnd.nextInt(4)) {
+			case 0:
+			case 1:
+				verifica(set.add(x) == expected.add(x), "add " + x);
+				break;
+			case 2:
+				// remove and contains throw an exception on an empty set
+				if (!expected.isEmpty())
+					verifica(set.remove(x) == expected.remove(x), "remove " + x);
+				break;
+			default:
+				if (!expected.isEmpty())
+					verifica(set.contains(x) == expected.contains(x), "contains " + x);
+			}
+			verifica(set.size() == expected.size(), "size");
+		}
+		verificaElementi(set, expected, "content");
+		verificaElementi(set.subSet("h", "https://example.com/b"), expected.subSet("h", "https://example.com/b"), "subSet");
+		verifica(set.first().equals(expected.first()) && set.last().equals(expected.last()), "first and last");
+	}
+
+}
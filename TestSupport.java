@@ -0,0 +1,88 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Base of the tests. A test is a class with a main method that extends this
+ * class, checks its conditions with verifica() and prints "<Name> OK" when
+ * all of them hold; the first false condition stops it with an
+ * AssertionError.
+ */
+public abstract class TestSupport {
+
+	/** A part of a test, which may throw any exception. */
+	protected interface Action {
+		void run() throws Exception;
+	}
+
+	/**
+	 * Checks a condition of the test.
+	 *
+	 * @param condition
+	 *            the condition that must hold.
+	 * @param message
+	 *            what is checked, reported if the condition is false.
+	 * @throws AssertionError
+	 *             if the condition is false.
+	 */
+	protected static void verifica(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	/**
+	 * Checks that two collections have the same elements in the same order,
+	 * for example a set of the tree and the TreeSet used as reference.
+	 *
+	 * @param actual
+	 *            the elements to check.
+	 * @param expected
+	 *            the expected elements.
+	 * @param message
+	 *            what is checked, reported with the first difference.
+	 * @throws AssertionError
+	 *             if the elements are different.
+	 */
+	protected static void verificaElementi(Iterable<?> actual, Iterable<?> expected, String message) {
+		List<Object> a = new ArrayList<Object>(), e = new ArrayList<Object>();
+		actual.forEach(a::add);
+		expected.forEach(e::add);
+		if (a.equals(e))
+			return;
+		int i = 0;
+		while (i < a.size() && i < e.size() && a.get(i).equals(e.get(i)))
+			i++;
+		throw new AssertionError(message + ": " + a.size() + " elements instead of " + e.size() + ", position " + i
+				+ " has " + (i < a.size() ? a.get(i) : "nothing") + " instead of "
+				+ (i < e.size() ? e.get(i) : "nothing"));
+	}
+
+	/**
+	 * Runs a part of a test discarding what is printed on System.out and
+	 * System.err: the sets print the searches and the insertions of the
+	 * elements already present.
+	 *
+	 * @param action
+	 *            the part of the test.
+	 * @throws Exception
+	 *             the exception thrown by the action.
+	 */
+	protected static void silenzioso(Action action) throws Exception {
+		PrintStream out = System.out, err = System.err;
+		PrintStream none = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		});
+		System.setOut(none);
+		System.setErr(none);
+		try {
+			action.run();
+		} finally {
+			System.setOut(out);
+			System.setErr(err);
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.SortedSet;
+import java.util.function.ToLongFunction;
+
+/**
+ * Sorted set that records a trace of the operations made on it, to replay
+ * them later with {@link WorkloadReplay}. Every add, remove, contains,
+ * headSet, subSet and tailSet is written in a compact binary format: one byte
+ * for the operation, the time elapsed since the previous operation and the
+ * difference between the key and the previous key, both as variable-length
+ * integers. The elements are turned into keys by an encoder, so the trace can
+ * be replayed with any element type that can be rebuilt from a long.
+ */
+public class WorkloadRecorder<T extends Comparable<T>> extends AVLTree.mySortedSet<T> implements Closeable {
+
+	/** First bytes of a trace. */
+	static final int MAGIC = 0x41564C57; // "AVLW"
+	/** Version of the trace format. */
+	static final int VERSION = 1;
+
+	static final int ADD = 1;
+	static final int REMOVE = 2;
+	static final int CONTAINS = 3;
+	static final int HEAD_SET = 4;
+	static final int SUB_SET = 5;
+	static final int TAIL_SET = 6;
+
+	/** Stream the trace is written to. */
+	private final OutputStream out;
+	/** Turns an element into the key written in the trace. */
+	private final ToLongFunction<? super T> encoder;
+	/** Time of the previous operation. */
+	private long lastTime;
+	/** Key of the previous operation. */
+	private long lastKey;
+	/** Number of the operations recorded. */
+	private long recorded;
+
+	/**
+	 * Creates an empty set that records its operations.
+	 *
+	 * @param out
+	 *            the stream the trace is written to.
+	 * @param encoder
+	 *            turns an element into the key written in the trace.
+	 * @throws UncheckedIOException
+	 *             if the header of the trace can't be written.
+	 */
+	public WorkloadRecorder(OutputStream out, ToLongFunction<? super T> encoder) {
+		super();
+		if (out == null || encoder == null)
+			throw new IllegalArgumentException("Null elements not allowed!!!");
+		this.out = new BufferedOutputStream(out, 1 << 16);
+		this.encoder = encoder;
+		try {
+			scriviInt(MAGIC);
+			this.out.write(VERSION);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		lastTime = System.nanoTime();
+	}
+
+	/**
+	 * Writes an operation in the trace.
+	 *
+	 * @param op
+	 *            the code of the operation.
+	 * @param a
+	 *            the element of the operation.
+	 * @param b
+	 *            the second element (only for subSet), null otherwise.
+	 */
+	private synchronized void registra(int op, T a, T b) {
+		if (a == null)
+			return;
+		try {
+			long now = System.nanoTime();
+			out.write(op);
+			scriviVarLong(now - lastTime);
+			lastTime = now;
+			scriviChiave(encoder.applyAsLong(a));
+			if (b != null)
+				scriviChiave(encoder.applyAsLong(b));
+			recorded++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/** Writes a key as difference from the previous one. */
+	private void scriviChiave(long key) throws IOException {
+		long delta = key - lastKey;
+		lastKey = key;
+		// Zigzag encoding: small negative differences stay small.
+		scriviVarLong((delta << 1) ^ (delta >> 63));
+	}
+
+	/** Writes a non negative long with 7 bits per byte. */
+	private void scriviVarLong(long v) throws IOException {
+		while ((v & ~0x7FL) != 0) {
+			out.write((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.write((int) v);
+	}
+
+	/** Writes an int in big-endian order. */
+	private void scriviInt(int v) throws IOException {
+		out.write(v >>> 24);
+		out.write(v >>> 16);
+		out.write(v >>> 8);
+		out.write(v);
+	}
+
+	/**
+	 * Returns the number of the operations recorded.
+	 *
+	 * @return the number of the operations in the trace.
+	 */
+	public synchronized long recorded() {
+		return recorded;
+	}
+
+	@Override
+	public boolean add(T el) {
+		registra(ADD, el, null);
+		return super.add(el);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean remove(Object o) {
+		registra(REMOVE, (T) o, null);
+		return super.remove(o);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean contains(Object o) {
+		registra(CONTAINS, (T) o, null);
+		return super.contains(o);
+	}
+
+	@Override
+	public SortedSet<T> headSet(T toElement) {
+		registra(HEAD_SET, toElement, null);
+		return super.headSet(toElement);
+	}
+
+	@Override
+	public SortedSet<T> subSet(T fromElement, T toElement) {
+		registra(SUB_SET, fromElement, toElement);
+		return super.subSet(fromElement, toElement);
+	}
+
+	@Override
+	public SortedSet<T> tailSet(T fromElement) {
+		registra(TAIL_SET, fromElement, null);
+		return super.tailSet(fromElement);
+	}
+
+	/**
+	 * Writes the buffered operations and closes the trace.
+	 *
+	 * @throws IOException
+	 *             if the trace can't be written.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		out.close();
+	}
+
+}
@@ -0,0 +1,445 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SortedSet;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * Replays a trace recorded by {@link WorkloadRecorder} on a new sorted set,
+ * with a number of threads, and reports the latency percentiles and the
+ * throughput. The operations are dealt to the threads in round robin and they
+ * can be paced by a target rate or by the time gaps recorded in the trace;
+ * then the latency of an operation is measured from the time it should have
+ * started, so a slow operation also counts the delay it causes to the
+ * following ones. The sets are not thread safe, so with more than one thread
+ * the operations are serialized by a lock and the time spent waiting for it
+ * is part of the latency.
+ *
+ * Usage: java WorkloadReplay trace [threads] [operations per second |
+ * recorded [speed]]
+ */
+public class WorkloadReplay {
+
+	/** Operations of the trace. */
+	private final byte[] ops;
+	/** First key of every operation. */
+	private final long[] keys;
+	/** Second key of every operation (only for subSet). */
+	private final long[] keys2;
+	/**
+	 * Time of every operation in nanoseconds from the start of the
+	 * recording, the sum of the recorded gaps.
+	 */
+	private final long[] times;
+	/** Number of the operations of the trace. */
+	private final int size;
+
+	private WorkloadReplay(byte[] ops, long[] keys, long[] keys2, long[] times, int size) {
+		this.ops = ops;
+		this.keys = keys;
+		this.keys2 = keys2;
+		this.times = times;
+		this.size = size;
+	}
+
+	/**
+	 * Reads a trace.
+	 *
+	 * @param in
+	 *            the stream the trace is read from.
+	 * @return the trace, ready to be replayed.
+	 * @throws IOException
+	 *             if the stream can't be read or it is not a valid trace.
+	 */
+	public static WorkloadReplay load(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+		if (data.readInt() != WorkloadRecorder.MAGIC)
+			throw new IOException("Error: the stream is not a workload trace");
+		int version = data.read();
+		if (version != WorkloadRecorder.VERSION)
+			throw new IOException("Error: unsupported trace version " + version);
+
+		byte[] ops = new byte[1024];
+		long[] keys = new long[1024];
+		long[] keys2 = new long[1024];
+		long[] times = new long[1024];
+		int n = 0;
+		long lastKey = 0;
+		long lastTime = 0;
+		int op;
+		while ((op = data.read()) != -1) {
+			if (n == ops.length) {
+				ops = Arrays.copyOf(ops, 2 * n);
+				keys = Arrays.copyOf(keys, 2 * n);
+				keys2 = Arrays.copyOf(keys2, 2 * n);
+				times = Arrays.copyOf(times, 2 * n);
+			}
+			lastTime += leggiVarLong(data);
+			times[n] = lastTime;
+			lastKey += zigzag(leggiVarLong(data));
+			keys[n] = lastKey;
+			if (op == WorkloadRecorder.SUB_SET) {
+				lastKey += zigzag(leggiVarLong(data));
+				keys2[n] = lastKey;
+			} else if (op < WorkloadRecorder.ADD || op > WorkloadRecorder.TAIL_SET) {
+				throw new IOException("Error: unknown operation " + op);
+			}
+			ops[n++] = (byte) op;
+		}
+		return new WorkloadReplay(ops, keys, keys2, times, n);
+	}
+
+	/** Reads a long written with 7 bits per byte. */
+	private static long leggiVarLong(DataInputStream in) throws IOException {
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b == -1)
+				throw new EOFException("Error: truncated trace");
+			v |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+		throw new IOException("Error: malformed trace");
+	}
+
+	/** Decodes a zigzag encoded long. */
+	private static long zigzag(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * Returns the number of the operations of the trace.
+	 *
+	 * @return the number of the operations.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Replays the trace on a new set.
+	 *
+	 * @param factory
+	 *            creates the set the trace is replayed on.
+	 * @param decoder
+	 *            turns a key of the trace into an element.
+	 * @param threads
+	 *            number of the threads that replay the trace.
+	 * @param rate
+	 *            target rate in operations per second of all the threads
+	 *            together, 0 to replay as fast as possible.
+	 * @return the latencies and the throughput of the replay.
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting for the
+	 *             replay.
+	 */
+	public <T extends Comparable<T>> Report replay(Supplier<? extends SortedSet<T>> factory, LongFunction<T> decoder,
+			int threads, double rate) throws InterruptedException {
+		// Interval between two operations of the same thread.
+		return riproduci(factory, decoder, threads, rate > 0 ? (long) (threads * 1e9 / rate) : 0, 0);
+	}
+
+	/**
+	 * Replays the trace on a new set, starting every operation after the
+	 * time gap recorded before it, so the bursts and the pauses of the
+	 * recorded workload are kept.
+	 *
+	 * @param factory
+	 *            creates the set the trace is replayed on.
+	 * @param decoder
+	 *            turns a key of the trace into an element.
+	 * @param threads
+	 *            number of the threads that replay the trace.
+	 * @param speed
+	 *            how many times faster than recorded the trace is replayed,
+	 *            1 for the recorded speed.
+	 * @return the latencies and the throughput of the replay.
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting for the
+	 *             replay.
+	 */
+	public <T extends Comparable<T>> Report replayRecorded(Supplier<? extends SortedSet<T>> factory,
+			LongFunction<T> decoder, int threads, double speed) throws InterruptedException {
+		if (!(speed > 0))
+			throw new IllegalArgumentException("Error: the speed must be positive");
+		return riproduci(factory, decoder, threads, 0, speed);
+	}
+
+	/**
+	 * Replays the trace on a new set.
+	 *
+	 * @param interval
+	 *            interval in nanoseconds between two operations of the same
+	 *            thread, 0 if not paced by a rate.
+	 * @param speed
+	 *            speed of the recorded gaps, 0 if they are not used.
+	 */
+	private <T extends Comparable<T>> Report riproduci(Supplier<? extends SortedSet<T>> factory,
+			final LongFunction<T> decoder, final int threads, final long interval, final double speed)
+			throws InterruptedException {
+		if (threads < 1)
+			throw new IllegalArgumentException("Error: at least one thread is needed");
+		final SortedSet<T> set = factory.get();
+		final ReentrantLock lock = new ReentrantLock();
+		final Report[] partial = new Report[threads];
+		Thread[] workers = new Thread[threads];
+		final long start = System.nanoTime();
+
+		for (int t = 0; t < threads; t++) {
+			final int id = t;
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					Report report = new Report();
+					long sink = 0;
+					long intended = start;
+					for (int i = id; i < size; i += threads) {
+						long begin = System.nanoTime();
+						if (interval > 0 || speed > 0) {
+							if (speed > 0)
+								intended = start + (long) (times[i] / speed);
+							else
+								intended += interval;
+							// Waits until the planned time of the operation.
+							while (begin < intended) {
+								LockSupport.parkNanos(intended - begin);
+								begin = System.nanoTime();
+							}
+							begin = intended;
+						}
+						T a = decoder.apply(keys[i]);
+						if (threads > 1)
+							lock.lock();
+						T b = ops[i] == WorkloadRecorder.SUB_SET ? decoder.apply(keys2[i]) : null;
+						try {
+							sink += esegui(set, ops[i], a, b);
+						} catch (RuntimeException e) {
+							// The operation failed on the new set: it is counted
+							// and the replay goes on.
+							report.errors++;
+						} finally {
+							if (threads > 1)
+								lock.unlock();
+						}
+						report.registra(ops[i], System.nanoTime() - begin);
+					}
+					report.sink = sink;
+					partial[id] = report;
+				}
+			}, "replay-" + t);
+			workers[t].start();
+		}
+		for (Thread w : workers)
+			w.join();
+
+		Report total = new Report();
+		total.elapsed = System.nanoTime() - start;
+		for (Report r : partial)
+			total.aggiungi(r);
+		return total;
+	}
+
+	/**
+	 * Runs an operation on the set.
+	 *
+	 * @return a value that depends on the result, so that the JIT can't
+	 *         remove the operation.
+	 */
+	private static <T extends Comparable<T>> int esegui(SortedSet<T> set, byte op, T a, T b) {
+		switch (op) {
+		case WorkloadRecorder.ADD:
+			return set.add(a) ? 1 : 0;
+		case WorkloadRecorder.REMOVE:
+			// mySortedSet throws an exception when it is empty.
+			return !set.isEmpty() && set.remove(a) ? 1 : 0;
+		case WorkloadRecorder.CONTAINS:
+			return !set.isEmpty() && set.contains(a) ? 1 : 0;
+		case WorkloadRecorder.HEAD_SET:
+			return set.isEmpty() ? 0 : set.headSet(a).size();
+		case WorkloadRecorder.SUB_SET:
+			return set.isEmpty() ? 0 : set.subSet(a, b).size();
+		default:
+			return set.isEmpty() ? 0 : set.tailSet(a).size();
+		}
+	}
+
+	/** Latencies and throughput of a replay. */
+	public static class Report {
+		/** Latencies of all the operations. */
+		private final LatencyHistogram all = new LatencyHistogram();
+		/** Latencies of every type of operation. */
+		private final LatencyHistogram[] byOp = new LatencyHistogram[WorkloadRecorder.TAIL_SET + 1];
+		/** Duration of the replay in nanoseconds. */
+		private long elapsed;
+		/** Number of the operations that threw an exception. */
+		private long errors;
+		private long sink;
+
+		private void registra(int op, long nanos) {
+			all.record(nanos);
+			if (byOp[op] == null)
+				byOp[op] = new LatencyHistogram();
+			byOp[op].record(nanos);
+		}
+
+		private void aggiungi(Report r) {
+			all.add(r.all);
+			for (int i = 0; i < byOp.length; i++) {
+				if (r.byOp[i] == null)
+					continue;
+				if (byOp[i] == null)
+					byOp[i] = new LatencyHistogram();
+				byOp[i].add(r.byOp[i]);
+			}
+			errors += r.errors;
+			sink += r.sink;
+		}
+
+		/** Returns the number of the operations that threw an exception. */
+		public long errors() {
+			return errors;
+		}
+
+		/** Returns the latencies of all the operations. */
+		public LatencyHistogram latencies() {
+			return all;
+		}
+
+		/** Returns the throughput in operations per second. */
+		public double throughput() {
+			return elapsed == 0 ? 0 : all.count() * 1e9 / elapsed;
+		}
+
+		@Override
+		public String toString() {
+			String[] names = { "", "add", "remove", "contains", "headSet", "subSet", "tailSet" };
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format(Locale.ROOT, "%-9s %10s %10s %10s %10s %10s%n", "op", "count", "p50 us",
+					"p99 us", "p99.9 us", "max us"));
+			for (int i = 1; i < byOp.length; i++) {
+				if (byOp[i] != null)
+					riga(sb, names[i], byOp[i]);
+			}
+			riga(sb, "all", all);
+			sb.append(String.format(Locale.ROOT, "throughput: %.0f ops/s, errors: %d (sink %d)%n", throughput(), errors,
+					sink));
+			return sb.toString();
+		}
+
+		private static void riga(StringBuilder sb, String name, LatencyHistogram h) {
+			sb.append(String.format(Locale.ROOT, "%-9s %10d %10.2f %10.2f %10.2f %10.2f%n", name, h.count(),
+					h.percentile(50) / 1e3, h.percentile(99) / 1e3, h.percentile(99.9) / 1e3, h.max() / 1e3));
+		}
+	}
+
+	/**
+	 * Histogram of latencies in nanoseconds with logarithmic buckets: every
+	 * power of two is split in 32 buckets, so a percentile has an error of
+	 * about 3%.
+	 */
+	public static class LatencyHistogram {
+		/** Number of buckets of every power of two (as power of two). */
+		private static final int SUB_BITS = 5;
+		private static final int SUB = 1 << SUB_BITS;
+
+		private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB];
+		private long count;
+		private long max;
+
+		/** Records a latency. */
+		public void record(long nanos) {
+			if (nanos < 0)
+				nanos = 0;
+			counts[indice(nanos)]++;
+			count++;
+			if (nanos > max)
+				max = nanos;
+		}
+
+		/** Adds the latencies of another histogram to this one. */
+		public void add(LatencyHistogram other) {
+			for (int i = 0; i < counts.length; i++)
+				counts[i] += other.counts[i];
+			count += other.count;
+			max = Math.max(max, other.max);
+		}
+
+		/** Returns the bucket of a value. */
+		private static int indice(long v) {
+			if (v < SUB)
+				return (int) v;
+			// v >>> exp is between SUB and 2 * SUB - 1.
+			int exp = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+			return exp * SUB + (int) (v >>> exp);
+		}
+
+		/** Returns the highest value of a bucket. */
+		private static long limite(int i) {
+			if (i < SUB)
+				return i;
+			int exp = i / SUB - 1;
+			long base = (long) (i % SUB + SUB) << exp;
+			return base + (1L << exp) - 1;
+		}
+
+		/** Returns the number of the recorded latencies. */
+		public long count() {
+			return count;
+		}
+
+		/** Returns the highest recorded latency. */
+		public long max() {
+			return max;
+		}
+
+		/**
+		 * Returns a percentile of the latencies.
+		 *
+		 * @param p
+		 *            the percentile, between 0 and 100.
+		 * @return the latency in nanoseconds under which there is p percent
+		 *         of the operations.
+		 */
+		public long percentile(double p) {
+			if (count == 0)
+				return 0;
+			long rank = (long) Math.ceil(p / 100 * count);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank && counts[i] > 0)
+					return Math.min(limite(i), max);
+			}
+			return max;
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1) {
+			System.err.println("Usage: java WorkloadReplay trace [threads] [operations per second | recorded [speed]]");
+			return;
+		}
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		boolean recorded = args.length > 2 && args[2].equals("recorded");
+		double rate = args.length > 2 && !recorded ? Double.parseDouble(args[2]) : 0;
+		double speed = recorded && args.length > 3 ? Double.parseDouble(args[3]) : 1;
+		WorkloadReplay trace;
+		try (InputStream in = new FileInputStream(args[0])) {
+			trace = load(in);
+		}
+		System.out.println("Replaying " + trace.size() + " operations with " + threads + " threads");
+		Report report = recorded
+				? trace.replayRecorded(() -> new AVLTree.mySortedSet<Long>(), Long::valueOf, threads, speed)
+				: trace.replay(() -> new AVLTree.mySortedSet<Long>(), Long::valueOf, threads, rate);
+		System.out.print(report);
+	}
+
+}
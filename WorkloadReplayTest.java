@@ -0,0 +1,53 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.TreeSet;
+
+/*
+ * Records a workload with a pause in the middle and replays it: the trace
+ * must give back every operation, and the replay with the recorded gaps
+ * must keep the pause, scaled by the speed.
+ */
+public class WorkloadReplayTest extends TestSupport {
+
+	public static void main(String[] args) throws Exception {
+		silenzioso(WorkloadReplayTest::prova);
+		System.out.println("WorkloadReplayTest OK");
+	}
+
+	private static void prova() throws IOException, InterruptedException {
+		ByteArrayOutputStream trace = new ByteArrayOutputStream();
+		WorkloadRecorder<Long> recorder = new WorkloadRecorder<Long>(trace, Long::longValue);
+		for (long i = 0; i < 100; i++)
+			recorder.add(i * 7 % 100);
+		Thread.sleep(300);
+		for (long i = 0; i < 50; i++)
+			recorder.remove(i);
+		recorder.contains(70L);
+		recorder.subSet(10L, 90L);
+		recorder.headSet(80L);
+		recorder.tailSet(20L);
+		recorder.close();
+		verifica(recorder.recorded() == 154, "recorded " + recorder.recorded());
+
+		WorkloadReplay replay = WorkloadReplay.load(new ByteArrayInputStream(trace.toByteArray()));
+		verifica(replay.size() == 154, "loaded " + replay.size());
+		final TreeSet<Long> replayed = new TreeSet<Long>();
+		WorkloadReplay.Report report = replay.replay(() -> replayed, Long::valueOf, 1, 0);
+		verifica(report.latencies().count() == 154 && report.errors() == 0, "replay");
+		TreeSet<Long> expected = new TreeSet<Long>();
+		for (long i = 50; i < 100; i++)
+			expected.add(i);
+		verifica(replayed.equals(expected), "replayed content");
+
+		// The pause of 300 ms is kept, a quarter of it at four times the speed.
+		for (double speed : new double[] { 1, 4 }) {
+			long start = System.nanoTime();
+			report = replay.replayRecorded(() -> new AVLTree.mySortedSet<Long>(), Long::valueOf, 2, speed);
+			long elapsed = System.nanoTime() - start;
+			verifica(report.latencies().count() == 154, "replayRecorded count");
+			verifica(elapsed >= 300e6 / speed, "replayRecorded at speed " + speed + " took " + elapsed + " ns");
+		}
+	}
+
+}